@@ -0,0 +1,43 @@
+package com.gordon.reuven;
+/**
+ * Direction enum
+ * The direction of a floor call, a lift motor or a lift. NONE is a lift instruction (which has no direction) or a stopped lift/motor.
+ * The labels are the strings used in the instructions files and the GUI.
+ * Don't reorder: the ordinal is the direction code in a packed instruction (see Instruction.pack()).
+ */
+public enum Direction {
+
+    NONE(""), UP("UP"), DOWN("DOWN");
+
+    //Instance variables
+    private final String label;
+
+    /**
+     * Constructor
+     */
+    Direction(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Getter: the direction as it is written in the instructions files, eg "UP"
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @return the direction with the given label
+     */
+    public static Direction fromLabel(String label) {
+        //the labels are normally the shared constants, so check for them first
+        if (label == UP.label) return UP;
+        if (label == DOWN.label) return DOWN;
+        if (label == NONE.label) return NONE;
+        for (Direction d : values()) {
+            if (d.label.equals(label)) return d;
+        }
+        System.out.printf("Direction: %s is invalid\n", label);
+        throw new IllegalArgumentException("direction invalid");
+    }
+}
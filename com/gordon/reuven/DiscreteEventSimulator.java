@@ -0,0 +1,482 @@
+package com.gordon.reuven;
+/**
+ * Discrete event simulator
+ * Drives a Lift Controller on a VirtualClock instead of spinning on wall-clock time.
+ * The simulator keeps a priority queue of future events (a call being issued, a lift arriving at a floor, a door opening/closing)
+ * and jumps the clock straight to the next one. The arrival time of a lift is calculated from its position and velocity,
+ * so a day of traffic runs in seconds and the same inputs always give the same results.
+ */
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+public class DiscreteEventSimulator {
+
+    //Instance variables
+    private static final long MILLIMULTIPLIER = 1000000;
+    private static final int NULL_FLOOR = -1;
+    private static final long NO_EVENT = -1;
+    private static final int STREAM_BATCH_SIZE = 16;
+
+    private LiftController lc;
+    private VirtualClock clock;
+    private PriorityQueue<SimEvent> events;
+    private long sequence;               //tie-breaker so that events at the same time are handled in the order they were scheduled
+    private long eventsProcessed;
+    private long[] liftTokens;           //token of the latest lift event (arrival/door) for each lift. Lift events with an older token are stale and ignored
+    private int[] scheduledFloor;        //the floor each lift's latest arrival event is for (NULL_FLOOR if none)
+    private Direction[] scheduledDirection; //the direction the lift was going when its latest arrival event was scheduled
+    private long[] scheduledDoorTime;    //the time of each lift's latest door event (NO_EVENT if none)
+    private SimulationStatistics stats;  //KPIs of the run
+    private InstructionCursor stream;    //timed instructions still to be scheduled (null if none). Its current instruction is the one streamEvent is for
+    private SimEvent streamEvent;        //the call event of the stream's current instruction. The stream is only moved on once it has been issued
+    private long[] streamBatch;          //the stream's instructions (packed) for the current time, issued to the LC together
+    private TrafficGenerator traffic;    //the passengers who get in the lifts as they stop for floor calls (null if none)
+    private List<Instruction> boarding;  //the lift calls of the passengers getting in a lift
+
+    /**
+     * The types of event that the simulator handles: a call being issued, a lift arriving at a floor, a lift door finishing opening/dwelling/closing
+     */
+    private enum EventType { CALL, ARRIVAL, DOOR }
+
+    /**
+     * Inner class for an event in the future event queue
+     */
+    private static class SimEvent implements Comparable<SimEvent> {
+
+        //instance variables
+        private long time;               //in ns
+        private long sequence;
+        private EventType type;
+        private int liftNumber;
+        private int floor;
+        private long token;
+        private Instruction instruction;
+        private List<Instruction> instructions;  //a batch of instructions issued together (null unless the event is for a batch)
+
+        /**
+         * Constructor
+         */
+        public SimEvent(long time, long sequence, EventType type, int liftNumber, int floor, long token, Instruction instruction) {
+            this.time = time;
+            this.sequence = sequence;
+            this.type = type;
+            this.liftNumber = liftNumber;
+            this.floor = floor;
+            this.token = token;
+            this.instruction = instruction;
+        }
+
+        @Override
+        public int compareTo(SimEvent other) {
+            if (time != other.time) return time < other.time ? -1 : 1;
+            if (sequence != other.sequence) return sequence < other.sequence ? -1 : 1;
+            return 0;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param lc the Lift Controller to drive. It must have been built with a VirtualClock
+     */
+    public DiscreteEventSimulator(LiftController lc) {
+
+        //Input checking
+        if (!(lc.getClock() instanceof VirtualClock)) {
+            System.out.printf("The lift controller must be built with a VirtualClock to run a discrete event simulation\n");
+            throw new IllegalArgumentException("lift controller clock is not a VirtualClock");
+        }
+
+        this.lc = lc;
+        this.clock = (VirtualClock) lc.getClock();
+        events = new PriorityQueue<SimEvent>();
+        streamBatch = new long[STREAM_BATCH_SIZE];
+        boarding = new ArrayList<Instruction>();
+        sequence = 0;
+        eventsProcessed = 0;
+
+        int numberOfLifts = lc.getnumberOfLifts();
+        liftTokens = new long[numberOfLifts + 1];
+        scheduledFloor = new int[numberOfLifts + 1];
+        scheduledDirection = new Direction[numberOfLifts + 1];
+        scheduledDoorTime = new long[numberOfLifts + 1];
+        stats = new SimulationStatistics(lc.getnumberOfFloors(), numberOfLifts);
+        for (int i = 1; i <= numberOfLifts; i++) {
+            invalidateLiftEvent(i);
+        }
+    }
+
+    /**
+     * Schedule an instruction to be issued to the Lift Controller at a given time
+     * @param timeMillis the time (from the start of the simulation) to issue the instruction in ms
+     * @param ins the instruction
+     */
+    public void scheduleInstruction(long timeMillis, Instruction ins) {
+        scheduleCall(timeMillis, ins);
+    }
+
+    /**
+     * Schedule a batch of instructions to be issued to the Lift Controller together at a given time (see LiftController.executeInstructions())
+     * @param timeMillis the time (from the start of the simulation) to issue the instructions in ms
+     * @param instructions the instructions, in the order to issue them
+     */
+    public void scheduleInstructionBatch(long timeMillis, Iterable<Instruction> instructions) {
+        List<Instruction> batch = new ArrayList<Instruction>();
+        for (Instruction ins : instructions) {
+            batch.add(ins);
+        }
+        if (!batch.isEmpty()) {
+            scheduleCall(timeMillis, null).instructions = batch;
+        }
+    }
+
+    /**
+     * Schedule a stream of timed instructions (eg from an InstructionTraceReader), each to be issued at its own time.
+     * The instructions must be in time order. Only one instruction is held in the event queue at a time and the cursor is moved on
+     * when it is issued, so the stream can be far longer than would fit in memory. The instructions are read packed, so nothing is
+     * allocated for them. Instructions with the same time are issued to the LC as a batch.
+     * The cursor isn't closed: the caller closes it once the simulation has run
+     * @param instructions the instructions, with their times in ms from the start of the simulation
+     */
+    public void scheduleInstructions(InstructionCursor instructions) {
+        if (stream != null) {
+            System.out.printf("cannot schedule a second instruction stream until the first has finished\n");
+            throw new IllegalArgumentException("instruction stream already scheduled");
+        }
+        stream = instructions;
+        if (advanceStream()) {
+            streamEvent = scheduleCall(stream.getTime(), null);
+        }
+    }
+
+    /**
+     * As above, for an Iterator of instructions (eg a TrafficGenerator), read through an InstructionIteratorCursor
+     */
+    public void scheduleInstructions(Iterator<Instruction> instructions) {
+        scheduleInstructions(new InstructionIteratorCursor(instructions));
+    }
+
+    /**
+     * Schedule synthetic traffic: the generator's floor calls as a stream (see scheduleInstructions()), and whenever a lift stops for a
+     * floor call the passengers waiting for it get in and select their destinations (see TrafficGenerator.board())
+     * @param traffic the traffic generator
+     */
+    public void scheduleTraffic(TrafficGenerator traffic) {
+        scheduleInstructions(traffic);
+        this.traffic = traffic;
+    }
+
+    /**
+     * helper method: move the stream on to its next instruction. At the end of the stream it is dropped
+     * @return false if there are none left
+     */
+    private boolean advanceStream() {
+        try {
+            if (stream.advance()) {
+                return true;
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        stream = null;
+        streamEvent = null;
+        return false;
+    }
+
+    /**
+     * helper method: issue the stream's instructions for the current time together, then schedule its next instruction
+     */
+    private void issueFromStream() {
+        long time = stream.getTime();
+        int count = 0;
+        boolean more;
+        do {
+            if (count == streamBatch.length) {
+                streamBatch = Arrays.copyOf(streamBatch, count * 2);
+            }
+            long packed = stream.getPacked();
+            streamBatch[count++] = packed;
+            stats.instructionIssued(packed, clock.nanoTime());
+        } while ((more = advanceStream()) && stream.getTime() == time);
+
+        if (count == 1) {
+            lc.executeInstruction(streamBatch[0]);
+        }
+        else lc.executeInstructions(streamBatch, count);
+
+        if (more) {
+            streamEvent = scheduleCall(stream.getTime(), null);
+        }
+    }
+
+    /**
+     * helper method to add a call event to the queue
+     */
+    private SimEvent scheduleCall(long timeMillis, Instruction ins) {
+        long time = timeMillis * MILLIMULTIPLIER;
+        if (time < clock.nanoTime()) {
+            System.out.printf("cannot schedule an instruction at %dms, it is in the past\n", timeMillis);
+            throw new IllegalArgumentException("timeMillis is in the past");
+        }
+        return schedule(time, EventType.CALL, 0, NULL_FLOOR, 0, ins);
+    }
+
+    /**
+     * Run the simulation until there are no events left, ie all calls have been issued and served
+     * @return the simulation time at the end of the run in ns
+     */
+    public long run() {
+        return runUntil(Long.MAX_VALUE);
+    }
+
+    /**
+     * Run the simulation until there are no events left or until the next event is after the given time
+     * @param endTime the time to stop at in ns
+     * @return the simulation time at the end of the run in ns
+     */
+    public long runUntil(long endTime) {
+
+        while (!events.isEmpty() && events.peek().time <= endTime) {
+            SimEvent e = events.poll();
+
+            //ignore a lift event that has been superseded since it was scheduled
+            if (e.type != EventType.CALL) {
+                if (e.token != liftTokens[e.liftNumber]) {
+                    continue;
+                }
+                invalidateLiftEvent(e.liftNumber);
+            }
+
+            //jump to the time of the event and move every lift up to that time
+            clock.advanceTo(e.time);
+            for (int i = 1; i <= lc.getnumberOfLifts(); i++) {
+                lc.updateLift(lc.getLift(i));
+            }
+
+            handleEvent(e);
+            eventsProcessed++;
+
+            //now that the event has been handled, work out what each lift does next. A lift getting to a floor or closing its doors
+            //can change the plans of the lifts before it (eg a floor call is given to another lift), so go round until the plans settle.
+            //A lift changes the plans at most once per event (when its doors close and its call is unselected), so if they haven't settled
+            //after a pass per lift and one more to check, they never will
+            int numberOfLifts = lc.getnumberOfLifts();
+            int passes = 0;
+            long planVersion;
+            do {
+                if (++passes > numberOfLifts + 1) {
+                    System.out.printf("the plans haven't settled after %d passes over the lifts at %.3fs\n", numberOfLifts + 1, e.time / 1e9);
+                    throw new IllegalStateException("plans not settling");
+                }
+                planVersion = lc.getPlanVersion();
+                for (int i = 1; i <= numberOfLifts; i++) {
+                    scheduleNext(lc.getLift(i));
+                }
+            } while (lc.getPlanVersion() != planVersion);
+            lc.notifyObservers();
+        }
+        return clock.nanoTime();
+    }
+
+    /**
+     * Stop the Lift Controller once the simulation is over (see LiftController.stopLiftController()). This closes its instruction log, so
+     * that any instructions it has spilled to disk are written out
+     */
+    public void stop() {
+        lc.stopLiftController();
+    }
+
+    /**
+     * Handle a single event
+     */
+    private void handleEvent(SimEvent e) {
+
+        switch (e.type) {
+            case CALL: {
+                if (e.instructions != null) {
+                    issue(e.instructions);
+                }
+                else if (e == streamEvent) {
+                    issueFromStream();
+                }
+                else {
+                    stats.instructionIssued(e.instruction, clock.nanoTime());
+                    lc.executeInstruction(e.instruction);
+                }
+                if (traffic != null) {
+                    boardOpenLifts();
+                }
+                break;
+            }
+            case ARRIVAL: {
+                //the lift has reached the floor it was heading for
+                lc.getLift(e.liftNumber).settleAtFloor(e.floor);
+                break;
+            }
+            case DOOR: {
+                //nothing to do here- the doors are moved on when the lift's next event is worked out
+                break;
+            }
+        }
+    }
+
+    /**
+     * helper method: issue instructions to the LC, as a batch if there is more than one
+     */
+    private void issue(List<Instruction> instructions) {
+        for (Instruction ins : instructions) {
+            stats.instructionIssued(ins, clock.nanoTime());
+        }
+        if (instructions.size() == 1) {
+            lc.executeInstruction(instructions.get(0));
+        }
+        else lc.executeInstructions(instructions);
+    }
+
+    /**
+     * Work out the next event for a lift: it is either at a floor with its doors moving (schedule the next door change),
+     * at a floor it wants to visit (commence arrival procedures) or moving towards one (schedule its arrival)
+     */
+    private void scheduleNext(Lift l) {
+
+        int liftNumber = l.getLiftNumber();
+
+        //the lift is busy with its doors
+        if (lc.updateDoors(l)) {
+            scheduleDoorEvent(l);
+            return;
+        }
+
+        //steer the lift. if it's at the floor it wants, start the arrival procedures and open the doors (unless a re-plan has taken the stop
+        //away in the meantime, when the lift has been steered by its new plan instead)
+        if (lc.steerLift(l) && lc.arrivalProcedures(l)) {
+            Node node = lc.getNodeBeingServed(liftNumber);
+            if (node != null) {
+                stats.nodeVisited(liftNumber, node, clock.nanoTime());
+                if (traffic != null) {
+                    board(liftNumber, node);
+                }
+            }
+            scheduleDoorEvent(l);
+            return;
+        }
+
+        LiftState lState = l.getState();
+        if (lState.isStationary()) {
+            invalidateLiftEvent(liftNumber);
+            return;
+        }
+
+        //the lift is moving. if it's still heading for the same floor in the same direction, its arrival time hasn't changed
+        int floorToVisit = lc.getNextFloorToVisit(liftNumber);
+        if (floorToVisit == scheduledFloor[liftNumber] && lState.getDirection() == scheduledDirection[liftNumber]) {
+            return;
+        }
+        invalidateLiftEvent(liftNumber);
+        scheduledFloor[liftNumber] = floorToVisit;
+        scheduledDirection[liftNumber] = lState.getDirection();
+        schedule(clock.nanoTime() + l.timeToReachFloor(floorToVisit), EventType.ARRIVAL, liftNumber, floorToVisit, liftTokens[liftNumber], null);
+    }
+
+    /**
+     * helper method: the passengers waiting for the floor call a lift has stopped for get in, and their lift calls are issued to the LC
+     */
+    private void board(int liftNumber, Node node) {
+        long time = clock.nanoTime() / MILLIMULTIPLIER;
+        if (node.getfromFloorUP()) {
+            traffic.board(liftNumber, node.getFloor(), Direction.UP, time, boarding);
+        }
+        if (node.getfromFloorDOWN()) {
+            traffic.board(liftNumber, node.getFloor(), Direction.DOWN, time, boarding);
+        }
+        if (!boarding.isEmpty()) {
+            issue(boarding);
+            boarding.clear();
+        }
+    }
+
+    /**
+     * helper method: passengers who call a lift that is already at their floor for their call (its doors open or opening) get straight in.
+     * The call is already selected, so the LC doesn't plan another stop for it
+     */
+    private void boardOpenLifts() {
+        for (int i = 1; i <= lc.getnumberOfLifts(); i++) {
+            Node node = lc.getNodeBeingServed(i);
+            if (node != null) {
+                board(i, node);
+            }
+        }
+    }
+
+    /**
+     * Schedule an event for when the doors of a lift next change state (unless it is already scheduled)
+     */
+    private void scheduleDoorEvent(Lift l) {
+        int liftNumber = l.getLiftNumber();
+        long time = l.getDoorNextTransitionTime();
+        if (time == scheduledDoorTime[liftNumber]) {
+            return;
+        }
+        invalidateLiftEvent(liftNumber);
+        scheduledDoorTime[liftNumber] = time;
+        schedule(time, EventType.DOOR, liftNumber, NULL_FLOOR, liftTokens[liftNumber], null);
+    }
+
+    /**
+     * Make any lift event already scheduled for the lift stale
+     */
+    private void invalidateLiftEvent(int liftNumber) {
+        liftTokens[liftNumber]++;
+        scheduledFloor[liftNumber] = NULL_FLOOR;
+        scheduledDirection[liftNumber] = null;
+        scheduledDoorTime[liftNumber] = NO_EVENT;
+    }
+
+    /**
+     * helper method to add an event to the queue
+     */
+    private SimEvent schedule(long time, EventType type, int liftNumber, int floor, long token, Instruction ins) {
+        SimEvent e = new SimEvent(time, sequence++, type, liftNumber, floor, token, ins);
+        events.add(e);
+        return e;
+    }
+
+    /**
+     * Getter: the current simulation time in ns
+     */
+    public long getTime() {
+        return clock.nanoTime();
+    }
+
+    /**
+     * Getter: the number of events handled so far (stale arrivals are not counted)
+     */
+    public long getEventsProcessed() {
+        return eventsProcessed;
+    }
+
+    /**
+     * Getter: the KPIs collected so far
+     */
+    public SimulationStatistics getStatistics() {
+        return stats;
+    }
+
+    /**
+     * Getter: true if there are no more events to handle
+     */
+    public boolean isFinished() {
+        return events.isEmpty();
+    }
+
+    /**
+     * Getter: the Lift Controller being simulated
+     */
+    public LiftController getLiftController() {
+        return lc;
+    }
+}
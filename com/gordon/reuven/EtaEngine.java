@@ -0,0 +1,227 @@
+package com.gordon.reuven;
+/**
+ * EtaEngine class
+ * When each lift will get to each floor: following its plan (see LiftPlan) from where it is, at the lifts' speed, with a door cycle at
+ * every stop. For every (lift, floor) pair it knows
+ * 		the ETA:		when the lift first gets to the floor (stopping there or passing it), or, if its plan doesn't take it there, when it could
+ * 						get there once it has finished its plan
+ * 		the stop ETA:	when the lift stops at the floor to open its doors (NO_STOP if its plan doesn't stop there)
+ * Each lift has a row of them, worked out from its plan when the plan changes, when the lift gets to (or leaves) a floor or its doors
+ * close (see update()). In between, the lift does what the row expects, so the row holds the times from when it was worked out and
+ * the queries take off the time since then: nothing is recomputed as time passes, and a change to one lift only recomputes its row.
+ * A lift with nowhere to go and its doors closed has an idle row, which doesn't count down.
+ * The rows are immutable and published by reference, so the queries (eg from the floor displays on the GUI thread) never lock.
+ * The LC updates a lift's row from the lift's own thread (see LiftController.updateLift()) and when it publishes a new plan for it. If the
+ * two race, the row left may be from the older plan or position, and isStale() picks that up the next time the lift updates
+ */
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class EtaEngine {
+
+    //Instance variables
+    public static final double NO_STOP = -1;
+    private static final double NANOMULTIPLIER = 1e9;
+    private static final long IDLE = Long.MIN_VALUE;
+    private static final long NO_TRANSITION = -1;
+
+    private int numberOfLifts;
+    private int numberOfFloors;
+    private SimulationClock clock;
+    private volatile TravelTimeModel travelTimes = TravelTimeModel.UNIT;    //how long the lifts take between floors and at each stop
+    private AtomicReferenceArray<Row> rows;
+
+    /**
+     * The ETAs of one lift
+     */
+    private static final class Row {
+
+        private final LiftPlan plan;        //the plan the row was worked out from
+        private final boolean doorsBusy;    //whether the lift was at a floor with its doors open (or opening or closing)
+        private final long start;           //when the row was worked out [ns], or IDLE
+        private final double[] arrival;     //the ETA of each floor from start [s]
+        private final double[] stop;        //the stop ETA of each floor from start [s], or NO_STOP
+
+        private Row(LiftPlan plan, boolean doorsBusy, long start, double[] arrival, double[] stop) {
+            this.plan = plan;
+            this.doorsBusy = doorsBusy;
+            this.start = start;
+            this.arrival = arrival;
+            this.stop = stop;
+        }
+    }
+
+    /**
+     * Constructor: every lift idle at the start floor
+     */
+    public EtaEngine(int numberOfLifts, int numberOfFloors, int liftStartFloor, SimulationClock clock) {
+
+        //Input parameter validation
+        if (numberOfLifts <= 0 || numberOfFloors <= 0) {
+            System.out.printf("numberOfLifts = %d, numberOfFloors = %d\n", numberOfLifts, numberOfFloors);
+            throw new IllegalArgumentException("numberOfLifts or numberOfFloors invalid");
+        }
+        if (liftStartFloor < 1 || liftStartFloor > numberOfFloors) {
+            System.out.printf("liftStartFloor %d invalid\n", liftStartFloor);
+            throw new IllegalArgumentException("liftStartFloor < 1 OR liftStartFloor > numberOfFloors");
+        }
+
+        this.numberOfLifts = numberOfLifts;
+        this.numberOfFloors = numberOfFloors;
+        this.clock = clock;
+        rows = new AtomicReferenceArray<Row>(numberOfLifts + 1);
+        for (int i = 1; i <= numberOfLifts; i++) {
+            rows.set(i, buildRow(LiftPlan.EMPTY, liftStartFloor, NO_TRANSITION, clock.nanoTime()));
+        }
+    }
+
+    /**
+     * Setter: how long the lifts take between floors and at each stop (see OptimiserAlgo.setTravelTimeModel()). The rows pick it up as they are updated
+     */
+    public void setTravelTimeModel(TravelTimeModel travelTimes) {
+        if (travelTimes == null) {
+            System.out.printf("travelTimes is null\n");
+            throw new IllegalArgumentException("travelTimes is null");
+        }
+        this.travelTimes = travelTimes;
+    }
+
+    /**
+     * @return true if a lift's row is out of date: it has a new plan, or its doors have started or finished a cycle
+     * (the caller knows when it gets to or leaves a floor)
+     */
+    public boolean isStale(int lift, LiftPlan plan, long doorsClosedTime) {
+        Row row = rows.get(lift);
+        return row.plan != plan || row.doorsBusy != (doorsClosedTime != NO_TRANSITION);
+    }
+
+    /**
+     * Work out a lift's row again
+     * @param plan the stops the lift has left to visit
+     * @param position where the lift is, as a floor number (see FleetState.getPositionInFloors())
+     * @param doorsClosedTime when the doors of a lift at a floor will be closed again [ns] (see Lift.getDoorClosedTime()), or -1 if they are closed
+     */
+    public void update(int lift, LiftPlan plan, double position, long doorsClosedTime) {
+        rows.set(lift, buildRow(plan, position, doorsClosedTime, clock.nanoTime()));
+    }
+
+    /**
+     * helper method: follow a plan from where the lift is, noting when it gets to each floor and when it stops at them
+     */
+    private Row buildRow(LiftPlan plan, double position, long doorsClosedTime, long now) {
+
+        TravelTimeModel times = travelTimes;
+        double[] arrival = new double[numberOfFloors + 1];
+        double[] stop = new double[numberOfFloors + 1];
+        Arrays.fill(arrival, Double.NaN);
+        Arrays.fill(stop, NO_STOP);
+        boolean doorsBusy = doorsClosedTime != NO_TRANSITION;
+        double time = 0;
+        double at = position;
+
+        //a lift at a floor with its doors open is there now, and sets off once they have closed
+        if (doorsBusy) {
+            int floor = (int) Math.round(position);
+            arrival[floor] = 0;
+            stop[floor] = 0;
+            time = Math.max(0, doorsClosedTime - now) / NANOMULTIPLIER;
+        }
+
+        for (Node node : plan.getStops()) {
+            int floor = node.getFloor();
+            reach(arrival, times, at, floor, time);
+            time += times.getFlightTime(at, floor);
+            at = floor;
+            if (stop[floor] == NO_STOP) {
+                stop[floor] = time;
+            }
+            time += times.getStopTime();
+        }
+
+        //and the floors it doesn't get to, from the end of the plan
+        for (int j = 1; j <= numberOfFloors; j++) {
+            if (Double.isNaN(arrival[j])) {
+                arrival[j] = time + times.getFlightTime(at, j);
+            }
+        }
+        return new Row(plan, doorsBusy, plan.isEmpty() && !doorsBusy ? IDLE : now, arrival, stop);
+    }
+
+    /**
+     * helper method: note the time the lift first gets to the floors from where it is to a floor it is travelling to (inclusive)
+     */
+    private void reach(double[] arrival, TravelTimeModel times, double from, int to, double time) {
+        int step = to >= from ? 1 : -1;
+        int first = step == 1 ? (int) Math.ceil(from) : (int) Math.floor(from);
+        for (int j = first; j != to + step; j += step) {
+            if (j >= 1 && j <= numberOfFloors && Double.isNaN(arrival[j])) {
+                arrival[j] = time + times.getFlightTime(from, j);
+            }
+        }
+    }
+
+    /**
+     * @return the time until a lift gets to a floor [s], stopping there or passing it (or going there once it has finished its plan)
+     */
+    public double getEta(int lift, int floor) {
+        Row row = rows.get(lift);
+        return Math.max(0, row.arrival[floor] - elapsed(row));
+    }
+
+    /**
+     * @return the time until a lift stops at a floor [s], or NO_STOP if its plan doesn't stop there
+     */
+    public double getStopEta(int lift, int floor) {
+        Row row = rows.get(lift);
+        if (row.stop[floor] == NO_STOP) {
+            return NO_STOP;
+        }
+        return Math.max(0, row.stop[floor] - elapsed(row));
+    }
+
+    /**
+     * @return the lift that will get to a floor soonest (the lowest numbered one if there is a tie)
+     */
+    public int getSoonestLift(int floor) {
+        int best = 1;
+        double bestEta = getEta(1, floor);
+        for (int i = 2; i <= numberOfLifts; i++) {
+            double eta = getEta(i, floor);
+            if (eta < bestEta) {
+                best = i;
+                bestEta = eta;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the stop ETA in whole seconds (rounded up) as a floor display shows it, or FleetState.ETA_STATIONARY if the lift isn't stopping there
+     */
+    public int getDisplayEta(int lift, int floor) {
+        double eta = getStopEta(lift, floor);
+        return eta == NO_STOP ? FleetState.ETA_STATIONARY : (int) Math.ceil(eta);
+    }
+
+    /**
+     * helper method: the time since a row was worked out [s] (0 for an idle row)
+     */
+    private double elapsed(Row row) {
+        return row.start == IDLE ? 0 : (clock.nanoTime() - row.start) / NANOMULTIPLIER;
+    }
+
+    /**
+     * Getters
+     */
+    public int getnumberOfLifts() {
+        return numberOfLifts;
+    }
+
+    public int getnumberOfFloors() {
+        return numberOfFloors;
+    }
+
+    public TravelTimeModel getTravelTimeModel() {
+        return travelTimes;
+    }
+}
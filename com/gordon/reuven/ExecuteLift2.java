@@ -1,12 +1,12 @@
 package com.gordon.reuven;
 /**
  * This is the class to execute the lift
+ * The instructions are streamed from the file as the lift runs, each one issued when its time arrives
+ * (instructions without a time are issued straight away). The instructions can be a text file or a binary trace (see InstructionTrace)
  */
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Queue;
 
@@ -20,53 +20,10 @@ public class ExecuteLift2 {
         String instructionLogInputs = args[1];
         
         /*** PARSE the LC inputs from an input text file ***/
-        //Store the values in this double array
-        ArrayList<Double> inputValues = new ArrayList<Double>();
+        LiftParams params = LiftParams.fromFile(lcInputs);
         
-        //Parse the input
-        try (BufferedReader br = new BufferedReader(new FileReader(lcInputs))) {
-            String line = null;
-            while ((line = br.readLine()) != null) {
-        	String[] field = line.split("="); 
-        	inputValues.add(Double.parseDouble(field[1]));
-            }
-        }
-        
-        //Now assign the values of the input file to the arguements of the LC 
-        int numberOfFloors = inputValues.get(0).intValue();
-        int numberOfLifts = inputValues.get(1).intValue();
-        double distanceBetweenFloors = inputValues.get(2);
-        double velocity = inputValues.get(3);
-        double maxDoorOpenDistance = inputValues.get(4);
-        int liftStartFloor = inputValues.get(5).intValue();
-        double doorOpenCloseThreshold = inputValues.get(6);
-        int doorOpenCloseTime = inputValues.get(7).intValue();
-        int matchingAlgorithm = inputValues.get(8).intValue();        
-        
-        /*** BUILD the instruction queue from the input text file  ***/        
-        Queue<Instruction> instructionLog = new LinkedList<Instruction>();
-        
-	// Parse the input
-	try (BufferedReader br = new BufferedReader(new FileReader(instructionLogInputs))) {
-	    String line = null;
-	    int cnt = 0;
-	    while ((line = br.readLine()) != null) {
-		String[] field = line.split(",");
-		// Ignore the first line
-		if (cnt > 0) {
-		    String methodOrigin = field[0];
-		    String instructionOrigin = field[1];
-		    int floorNumber = Integer.parseInt(field[2]);
-		    int liftNumber = Integer.parseInt(field[3]);
-		    String direction = field[4];
-		    boolean selection = Boolean.parseBoolean(field[5]);
-
-		    // Create a new instruction object and add it to the queue
-		    instructionLog.add(new Instruction(methodOrigin, instructionOrigin, floorNumber, liftNumber, direction, selection));
-		}
-		cnt++;
-	    }
-	}
+        /*** STREAM the instructions from the input text file (the replay closes it once it has finished)  ***/        
+        InstructionCursor instructionLog = openInstructions(instructionLogInputs);
 
 //        //Build the GUI
 //        /*
@@ -77,10 +34,51 @@ public class ExecuteLift2 {
 //            }            
 //        });*/
         
-        new LiftGUI(numberOfFloors, numberOfLifts, distanceBetweenFloors, velocity, maxDoorOpenDistance, liftStartFloor, doorOpenCloseThreshold, doorOpenCloseTime, matchingAlgorithm, instructionLog);         
+        new LiftGUI(params, instructionLog);         
 		//Queue<Instruction> instructionLog = new LinkedList<Instruction>();	    		
     	//new LiftGUI(10, 3, 3, 3, 1.5, 1, .1, 2000, 1, instructionLog);
     }
+    
+    /**
+     * Open an instructions file to stream it through a cursor: a binary trace if the name ends in .bin, otherwise a text instructions file.
+     * The caller closes it
+     * @param instructionLogInputs the name of the instructions file
+     */
+    public static InstructionCursor openInstructions(String instructionLogInputs) throws IOException {
+        if (InstructionTrace.isTrace(instructionLogInputs)) {
+            return new InstructionTraceReader(instructionLogInputs);
+        }
+        return new InstructionReader(instructionLogInputs);
+    }
+    
+    /**
+     * As above, as an Iterator of Instructions (both readers are their own iterators), for convenience: it makes an Instruction for every
+     * instruction read. Both readers are Closeable, and the caller closes it
+     * @param instructionLogInputs the name of the instructions file
+     */
+    public static Iterator<Instruction> streamInstructions(String instructionLogInputs) throws IOException {
+        if (InstructionTrace.isTrace(instructionLogInputs)) {
+            return new InstructionTraceReader(instructionLogInputs);
+        }
+        return new InstructionReader(instructionLogInputs);
+    }
+    
+    /**
+     * Build the instruction queue from an instructions text file
+     * The first line is a header and is ignored. Loads the whole file: use an InstructionReader to stream it instead
+     * @param instructionLogInputs the name of the instructions file
+     */
+    public static Queue<Instruction> readInstructions(String instructionLogInputs) throws FileNotFoundException, IOException {
+        
+        Queue<Instruction> instructionLog = new LinkedList<Instruction>();
+        
+        try (InstructionCursor reader = openInstructions(instructionLogInputs)) {
+            while (reader.advance()) {
+                instructionLog.add(Instruction.unpack(reader.getPacked(), reader.getTime()));
+            }
+        }
+        return instructionLog;
+    }
 }
     
     
@@ -0,0 +1,187 @@
+package com.gordon.reuven;
+/**
+ * FleetState class
+ * The state of every lift that the floor displays (and the GUI) show, held by the LC as one primitive array per field, indexed by lift
+ * (element 0 unused): position, direction code, heading, current floor, next floor and ETA.
+ * The floors don't keep copies of any of it- a FloorDisplay is just a view of one lift in here, so the memory grows with the number of
+ * lifts rather than with lifts x floors.
+ * Each lift's thread only writes its own elements. A change to what the floor displays show ends with a write to the version, and every
+ * read starts with a read of it, so a reader on another thread (eg the GUI) sees the change. The position and next floor change on every
+ * tick without that, so another thread may see them a tick late.
+ * The ETA of a lift to each floor comes from the LC's EtaEngine once it has been given one (see setEtaEngine()). Until then there is
+ * one ETA per lift, for its next floor, set by setEta().
+ */
+import java.util.concurrent.atomic.AtomicLong;
+
+public class FleetState {
+
+    //Instance variables
+    public static final int ETA_STATIONARY = -1;
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private int numberOfLifts;
+    private double distanceBetweenFloors;
+    private double[] position;      //position of the lift above the ground [m]
+    private byte[] direction;       //Direction ordinal of the lift
+    private byte[] heading;         //Direction ordinal the lift last moved in. Kept whilst it is stopped (NONE if it hasn't moved yet)
+    private int[] currentFloor;     //where the lift currently is, or the next floor it will move past (Lift.getCurrentFloor())
+    private int[] nextFloor;        //the next floor the lift will get to if it is moving, else its current floor (Lift.getNextFloor())
+    private int[] eta;              //seconds for the lift to get to its next floor to visit. -1 if stationary (or not known)
+    private AtomicLong version;     //the number of changes to what the floor displays show
+    private volatile EtaEngine etas; //when each lift gets to each floor (null if the ETAs are set by setEta())
+
+    /**
+     * Constructor: all the lifts stationary at the start floor
+     */
+    public FleetState(int numberOfLifts, int liftStartFloor, double distanceBetweenFloors) {
+
+        //Input parameter validation
+        if (numberOfLifts <= 0) {
+            System.out.printf("numberOfLifts = %d\n", numberOfLifts);
+            throw new IllegalArgumentException("numberOfLifts invalid");
+        }
+
+        this.numberOfLifts = numberOfLifts;
+        this.distanceBetweenFloors = distanceBetweenFloors;
+        position = new double[numberOfLifts + 1];
+        direction = new byte[numberOfLifts + 1];
+        heading = new byte[numberOfLifts + 1];
+        currentFloor = new int[numberOfLifts + 1];
+        nextFloor = new int[numberOfLifts + 1];
+        eta = new int[numberOfLifts + 1];
+        for (int i = 1; i <= numberOfLifts; i++) {
+            position[i] = (liftStartFloor - 1) * distanceBetweenFloors;
+            direction[i] = (byte) Direction.NONE.ordinal();
+            heading[i] = (byte) Direction.NONE.ordinal();
+            currentFloor[i] = liftStartFloor;
+            nextFloor[i] = liftStartFloor;
+            eta[i] = ETA_STATIONARY;
+        }
+        version = new AtomicLong();
+    }
+
+    /**
+     * Update the state of a lift (called by the LC from the lift's thread)
+     * @return true if anything the floor displays show (current floor or direction) has changed
+     */
+    public boolean update(int liftNumber, double position, Direction direction, int currentFloor, int nextFloor) {
+        boolean changed = this.currentFloor[liftNumber] != currentFloor || this.direction[liftNumber] != direction.ordinal();
+        this.position[liftNumber] = position;
+        this.direction[liftNumber] = (byte) direction.ordinal();
+        if (direction != Direction.NONE) {
+            heading[liftNumber] = (byte) direction.ordinal();
+        }
+        this.currentFloor[liftNumber] = currentFloor;
+        this.nextFloor[liftNumber] = nextFloor;
+        if (changed) {
+            version.incrementAndGet();
+        }
+        return changed;
+    }
+
+    /**
+     * Setters
+     */
+    public void setCurrentFloor(int liftNumber, int currentFloor) {
+        this.currentFloor[liftNumber] = currentFloor;
+        version.incrementAndGet();
+    }
+
+    public void setDirection(int liftNumber, Direction direction) {
+        this.direction[liftNumber] = (byte) direction.ordinal();
+        if (direction != Direction.NONE) {
+            heading[liftNumber] = (byte) direction.ordinal();
+        }
+        version.incrementAndGet();
+    }
+
+    /**
+     * Set the time for a lift to get to its next floor to visit [s] (ETA_STATIONARY if it isn't going anywhere)
+     */
+    public void setEta(int liftNumber, int eta) {
+        this.eta[liftNumber] = eta;
+        version.incrementAndGet();
+    }
+
+    /**
+     * Setter: take the ETAs from an ETA engine rather than from setEta()
+     */
+    public void setEtaEngine(EtaEngine etas) {
+        this.etas = etas;
+        version.incrementAndGet();
+    }
+
+    /**
+     * Getters
+     */
+    public int getnumberOfLifts() {
+        return numberOfLifts;
+    }
+
+    public double getdistanceBetweenFloors() {
+        return distanceBetweenFloors;
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    public double getPosition(int liftNumber) {
+        version.get();
+        return position[liftNumber];
+    }
+
+    /**
+     * @return the position of the lift as a floor number (1 at the ground floor, 2.5 half way between floors 2 and 3)
+     */
+    public double getPositionInFloors(int liftNumber) {
+        return getPosition(liftNumber) / distanceBetweenFloors + 1;
+    }
+
+    public Direction getDirection(int liftNumber) {
+        version.get();
+        return DIRECTIONS[direction[liftNumber]];
+    }
+
+    /**
+     * @return the direction the lift last moved in (it keeps it whilst stopped at a floor), or NONE if it hasn't moved yet
+     */
+    public Direction getHeading(int liftNumber) {
+        version.get();
+        return DIRECTIONS[heading[liftNumber]];
+    }
+
+    public int getCurrentFloor(int liftNumber) {
+        version.get();
+        return currentFloor[liftNumber];
+    }
+
+    public int getNextFloor(int liftNumber) {
+        version.get();
+        return nextFloor[liftNumber];
+    }
+
+    public int getEta(int liftNumber) {
+        version.get();
+        return eta[liftNumber];
+    }
+
+    /**
+     * @return the time for a lift to get to a floor to stop there [s] (rounded up), or ETA_STATIONARY if it isn't going to. Without an
+     * ETA engine only the lift's next floor has an ETA (see setEta())
+     */
+    public int getEta(int liftNumber, int floor) {
+        EtaEngine e = etas;
+        if (e != null) {
+            return e.getDisplayEta(liftNumber, floor);
+        }
+        if (getNextFloor(liftNumber) != floor) {
+            return ETA_STATIONARY;
+        }
+        return getEta(liftNumber);
+    }
+
+    public EtaEngine getEtaEngine() {
+        return etas;
+    }
+}
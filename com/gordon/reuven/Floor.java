@@ -1,14 +1,19 @@
 package com.gordon.reuven;
 /**
  * Floor class
- * Creates a list of information displays for each floor (for each lift)
+ * Shows the information displays for each lift on this floor. These are views of the LC's FleetState: the display methods here read and
+ * write the fleet directly, apart from the ETA of a lift to this floor, which is kept in the floor's FloorDisplay for the lift. A floor only
+ * keeps FloorDisplay objects for the lifts it has been asked for or given an ETA for (see getFloorDisplay())
  * Creates a button panel for each floor
- * There's not much to this class, it's really just a container for the floorDisplays array and the button panel
+ * There's not much to this class, it's really just a container for the button panel
  */
+import java.io.PrintStream;
+
 public class Floor {
     
     //Instance variables
-    private FloorDisplay[] floorDisplays;
+    private FleetState fleet;
+    private FloorDisplay[] displays;  //the views handed out by getFloorDisplay(), indexed by lift (element 0 unused). null until asked for
     private FloorButtonPanel panel;
     private int floorNumber;
     
@@ -20,6 +25,21 @@ public class Floor {
      * @param numberOfLifts int the number of lifts in the building
      */
     public Floor(int floorNumber, int numberOfFloors, int numberOfLifts, int liftStartFloor) {
+        this(floorNumber, numberOfFloors, new FleetState(Math.max(numberOfLifts, 1), liftStartFloor, 0));
+        if (numberOfLifts <= 0) {
+            System.out.printf("numberOfLifts = %d\n", numberOfLifts);
+            throw new IllegalArgumentException("numberOfLifts invalid");
+        }
+    }
+    
+    /**
+     * Constructor
+     * builds a button panel for the floor. The information displays for each lift show the fleet, which is shared with the other floors
+     * @param floorNumber int the floor number of this floor
+     * @param numberOfFloors int the number of floors in the building
+     * @param fleet the state of the lifts (owned by the LC)
+     */
+    public Floor(int floorNumber, int numberOfFloors, FleetState fleet) {
         
         //Input parameter validation
         if (floorNumber <= 0 || floorNumber > numberOfFloors) {
@@ -30,24 +50,23 @@ public class Floor {
             System.out.printf("numberOfFloors = %d\n", numberOfFloors);
             throw new IllegalArgumentException("numberOfFloors invalid");
         }
-        if (numberOfLifts <= 0) {
-            System.out.printf("numberOfLifts = %d\n", numberOfLifts);
-            throw new IllegalArgumentException("numberOfLifts invalid");
-        }
         
         //Initialise instance variables
         this.floorNumber = floorNumber;
-        
-        //Create an array of floor displays (one for each lift) on this floor
-        floorDisplays = new FloorDisplay[numberOfLifts + 1];
-        for (int i = 1; i <= numberOfLifts; i++) {
-            floorDisplays[i] = new FloorDisplay(floorNumber, i, liftStartFloor);
-        }
+        this.fleet = fleet;
         
         //Create a button panel for each floor
         panel = new FloorButtonPanel(floorNumber, numberOfFloors);        
     }
     
+    /**
+     * Set where the floor's button panel says what it is doing (see LiftController.setConsole())
+     * @param console the stream to print to, or null to print nothing
+     */
+    public void setConsole(PrintStream console) {
+        panel.setConsole(console);
+    }
+    
     /**
      * Allow the lift controller to select the button to go up
      */
@@ -77,33 +96,33 @@ public class Floor {
     }
     
     /**
-     * Update the display for a given lift
+     * Update the display for a given lift. The displays show the fleet, so this updates the display on every floor
      * The display will show the current floor that the lift is on (stationary) or heading to (moving)
      * @param liftNumber the given lift
      * @param currentFloorOfLift where the lift currently is or the next floor it will move past (from Lift.getNextFloor())
      */
     public void setFloorDisplayLiftFloor(int liftNumber, int currentFloorOfLift) {
-        floorDisplays[liftNumber].currentFloorOfLift(currentFloorOfLift);
+        fleet.setCurrentFloor(liftNumber, currentFloorOfLift);
     }
     
     /**
      * Update the display for a given lift
-     * The display will show the ETA for the lift to get to this floor
+     * The display will show the ETA for the lift to get to this floor, until the LC gives the fleet an ETA engine (see FloorDisplay.eta())
      * @param liftNumber the given lift
      * @param eta is the eta for the lift to get to this floor
      */
     public void setFloorDisplayLiftETA(int liftNumber, int eta) {
-        floorDisplays[liftNumber].eta(eta);
+        getFloorDisplay(liftNumber).eta(eta);
     }
     
     /**
-     * Update the display for a given lift
+     * Update the display for a given lift. The displays show the fleet, so this updates the display on every floor
      * The display will show the current direction of the lift
      * @param liftNumber the given lift
      * @param direction of the given lift
      */
     public void setFloorDisplayLiftDirection(int liftNumber, String direction) {
-        floorDisplays[liftNumber].currentDirectionOfLift(direction);
+        fleet.setDirection(liftNumber, Direction.fromLabel(direction));
     }
     
     /**
@@ -133,16 +152,16 @@ public class Floor {
      * @return current lift floor
      */
     public int getFloorDisplayLiftFloor(int liftNumber) {
-        return floorDisplays[liftNumber].getcurrentLiftFloor();
+        return fleet.getCurrentFloor(liftNumber);
     }
     
     /**
-     * Return the ETA for a given lift to get to this floor
+     * Return the ETA for a given lift to get to this floor to stop
      * @param liftNumber
-     * @return eta in [s]
+     * @return eta in [s], or -1 if the lift isn't going to stop here (see FloorDisplay.geteta())
      */
     public int getFloorDisplayLiftETA(int liftNumber) {
-        return floorDisplays[liftNumber].geteta();
+        return getFloorDisplay(liftNumber).geteta();
     }
     
     /**
@@ -151,15 +170,26 @@ public class Floor {
      * @return direction string
      */
     public String getFloorDisplayLiftDirection(int liftNumber) {
-        return floorDisplays[liftNumber].getDirection();
+        return fleet.getDirection(liftNumber).getLabel();
     }
     
     /**
-     * Return the floor display object for a given lift
+     * Return the floor display object for a given lift. It is a view of the fleet, made the first time it is asked for and the same one after
+     * that, so a caller that asks on every repaint doesn't build a new one each time (and the ETA it holds isn't lost)
      * @param liftNumber
      * @return FloorDisplay for that lift
      */
-    public FloorDisplay getFloorDisplay(int liftNumber) {
-        return floorDisplays[liftNumber];
+    public synchronized FloorDisplay getFloorDisplay(int liftNumber) {
+        FloorDisplay[] views = displays;
+        if (views == null) {
+            views = new FloorDisplay[fleet.getnumberOfLifts() + 1];
+            displays = views;
+        }
+        FloorDisplay display = views[liftNumber];
+        if (display == null) {
+            display = new FloorDisplay(floorNumber, liftNumber, fleet);
+            views[liftNumber] = display;
+        }
+        return display;
     }
 }
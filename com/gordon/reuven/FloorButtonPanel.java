@@ -5,6 +5,8 @@ package com.gordon.reuven;
  * Buttons can be toggled on/off and call the lift
  * Button should have a display to indicate a button is pressed
  */
+import java.io.PrintStream;
+
 public class FloorButtonPanel {
     
     //Instance variables
@@ -12,6 +14,7 @@ public class FloorButtonPanel {
     private boolean selectedDown;
     private int floorNumber;
     private int numberOfFloors;
+    private PrintStream console;   //where the panel says what it is doing (null to say nothing)
     
     /**
      * Constructor
@@ -23,6 +26,14 @@ public class FloorButtonPanel {
         selectedDown = false;      
         this.floorNumber = floorNumber;
         this.numberOfFloors = numberOfFloors;
+        console = System.out;
+    }
+    
+    /**
+     * Set where the panel says what it is doing, or null to say nothing
+     */
+    public void setConsole(PrintStream console) {
+        this.console = console;
     }
     
     /**
@@ -31,11 +42,15 @@ public class FloorButtonPanel {
      */
     public boolean selectUp() {
         if (floorNumber == numberOfFloors) {
-            System.out.printf("On the top floor so can't selectUp!\n");
+            if (console != null) {
+                console.printf("On the top floor so can't selectUp!\n");
+            }
             return false;
         }
         else if (selectedUp) {
-            System.out.printf("Already selected button panel to go up\n");
+            if (console != null) {
+                console.printf("Already selected button panel to go up\n");
+            }
             return false;
         }
         else {
@@ -50,11 +65,15 @@ public class FloorButtonPanel {
      */
     public boolean selectDown() {
         if (floorNumber == 1) {
-            System.out.printf("On the bottom floor so can't selectDown!\n");
+            if (console != null) {
+                console.printf("On the bottom floor so can't selectDown!\n");
+            }
             return false;
         }
         else if (selectedDown) {
-            System.out.printf("Already selected button panel to go down\n");
+            if (console != null) {
+                console.printf("Already selected button panel to go down\n");
+            }
             return false;
         }
         else {
@@ -1,47 +1,52 @@
 package com.gordon.reuven;
 /**
  * FloorDisplay class
+ * The display of a lift on a floor. It is a view of the lift in the LC's FleetState, so the same lift shows the same floor and direction
+ * on every floor. The only thing it holds itself is the ETA the LC has given it for this floor. Floor.getFloorDisplay() makes one the
+ * first time it is asked for and keeps it.
  */
 public class FloorDisplay {
     
     //Instance variables
-    private static final int ETA_STATIONARY = -1;
-    
     private int floorNumber;
     private int liftNumber;
-    private int currentLiftFloor;
-    private int eta;  //seconds to get to this floor. -1 if stationary
-    private String direction;  //direction of the lift at the moment (set by the LC)
+    private FleetState fleet;  //current floor and direction of the lift (set by the LC)
+    private volatile int eta;  //seconds for the lift to get to this floor (set by the LC). -1 if stationary
     
     /**
-     * Constructor
+     * Constructor: a display of a lift that isn't part of a fleet, stationary at its start floor
      */
     public FloorDisplay(int floorNumber, int liftNumber, int liftStartFloor) {
+        this(floorNumber, liftNumber, new FleetState(liftNumber, liftStartFloor, 0));
+    }
+    
+    /**
+     * Constructor: a view of a lift in a fleet
+     */
+    public FloorDisplay(int floorNumber, int liftNumber, FleetState fleet) {
         this.floorNumber = floorNumber;
         this.liftNumber = liftNumber;
-        //initialise the current floor of the lift
-        currentLiftFloor = liftStartFloor;
-        //initiliase the ETA as -1
-        eta = ETA_STATIONARY;
-        direction = "";
+        this.fleet = fleet;
+        eta = FleetState.ETA_STATIONARY;
     }
     
     /**
-     * Allow the LC to update the current floor of this lift
+     * Allow the LC to update the current floor of this lift. Note this changes it on every floor
      */
     public void currentFloorOfLift(int currentLiftFloor) {
-        this.currentLiftFloor = currentLiftFloor;
+        fleet.setCurrentFloor(liftNumber, currentLiftFloor);
     }
     
     /**
-     * Allow the LC to update the current direction of this lift
+     * Allow the LC to update the current direction of this lift. Note this changes it on every floor
      */
     public void currentDirectionOfLift(String direction) {
-        this.direction = direction;
+        fleet.setDirection(liftNumber, Direction.fromLabel(direction));
     }
     
     /**
      * Allow the LC to estimate the ETA for the lift to arrive at this floor [s]
+     * It is kept for this floor only, and is shown until the LC gives the fleet an ETA engine (see geteta())
      */
     public void eta(int eta) {
         this.eta = eta;
@@ -65,20 +70,22 @@ public class FloorDisplay {
      * Getter: currentLiftFloor
      */
     public int getcurrentLiftFloor() {
-        return currentLiftFloor;
+        return fleet.getCurrentFloor(liftNumber);
     }
     
     /**
-     * Getter: eta
+     * Getter: eta. The time for the lift to get here to stop [s] from the fleet's ETA engine if it has one (-1 unless the lift is going to
+     * stop here, see EtaEngine.getDisplayEta()), otherwise the ETA last set by eta()
      */
     public int geteta() {
-        return eta;
+        EtaEngine e = fleet.getEtaEngine();
+        return e != null ? e.getDisplayEta(liftNumber, floorNumber) : eta;
     }
     
     /**
      * Getter: lift direction
      */
     public String getDirection() {
-        return direction;
+        return fleet.getDirection(liftNumber).getLabel();
     }
 }
@@ -0,0 +1,152 @@
+package com.gordon.reuven;
+/**
+ * This is the class to execute the lift without a GUI
+ * It reads the same params/instructions files as ExecuteLift2 (streaming the instructions, each issued at its time), runs them through a discrete event simulation of the
+ * Lift Controller, exits once every call has been served and prints a KPI summary. Nothing touches AWT/Swing,
+ * so it can be run on a headless server.
+ *
+ * java HeadlessLiftRunner paramsX.txt instructionsY.txt [-v]
+ * java HeadlessLiftRunner paramsX.txt -traffic PATTERN callsPerSecond durationSeconds seed [-v]
+ *
+ * instructionsY can be a text file or a binary trace (.bin, see InstructionTrace).
+ * The second form runs synthetic traffic from a TrafficGenerator (UP_PEAK, LUNCH, DOWN_PEAK or INTERFLOOR) instead of an instructions file:
+ * the passengers call a lift from their floor, then select their destination once a lift has stopped for them.
+ * The Lift Controller logs a lot. It is built without a console (see LiftController.setConsole()), so it says nothing unless -v is given.
+ */
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Iterator;
+
+public class HeadlessLiftRunner {
+
+    private static final String VERBOSE = "-v";
+    private static final String TRAFFIC = "-traffic";
+
+    public static void main(String[] args) throws IOException {
+
+        if (args.length < 2) {
+            System.out.printf("usage: java HeadlessLiftRunner paramsX.txt instructionsY.txt [%s]\n", VERBOSE);
+            System.out.printf("       java HeadlessLiftRunner paramsX.txt %s PATTERN callsPerSecond durationSeconds seed [%s]\n", TRAFFIC, VERBOSE);
+            return;
+        }
+
+        //Store the program arguments
+        String lcInputs = args[0];
+        boolean verbose = args[args.length - 1].equals(VERBOSE);
+
+        LiftParams params = LiftParams.fromFile(lcInputs);
+        long wallTime;
+        DiscreteEventSimulator sim;
+        if (args[1].equals(TRAFFIC)) {
+            if (args.length < 6) {
+                System.out.printf("%s needs PATTERN callsPerSecond durationSeconds seed\n", TRAFFIC);
+                return;
+            }
+            TrafficGenerator traffic = new TrafficGenerator(TrafficGenerator.Pattern.valueOf(args[2]), params.getNumberOfFloors(),
+                    Double.parseDouble(args[3]), (long) (Double.parseDouble(args[4]) * 1000), Long.parseLong(args[5]));
+            wallTime = System.nanoTime();
+            sim = runTrafficSimulation(params, traffic, verbose);
+        }
+        else {
+            try (InstructionCursor instructions = ExecuteLift2.openInstructions(args[1])) {
+                wallTime = System.nanoTime();
+                sim = runTimedSimulation(params, instructions, verbose);
+            }
+        }
+        wallTime = System.nanoTime() - wallTime;
+
+        //Print the KPI summary
+        sim.getStatistics().printSummary(System.out, sim.getLiftController(), sim.getTime(), wallTime, sim.getEventsProcessed());
+    }
+
+    /**
+     * Build a headless Lift Controller for the building, issue the instructions at t = 0 and run until all the calls have been served
+     * @param params the building
+     * @param instructionLog the instructions to issue
+     * @return the simulator at the end of the run
+     */
+    public static DiscreteEventSimulator runSimulation(LiftParams params, Iterable<Instruction> instructionLog) {
+
+        LiftController lc = params.buildLiftController(new VirtualClock(), null);
+        lc.setHeadless(true);
+        lc.setVerbose(false);
+
+        DiscreteEventSimulator sim = new DiscreteEventSimulator(lc);
+        sim.scheduleInstructionBatch(0, instructionLog);
+        sim.run();
+        sim.stop();
+        return sim;
+    }
+
+    /**
+     * Build a headless Lift Controller for the building, issue each instruction at its own time and run until all the calls have been served.
+     * The instructions are read from the cursor as they are issued, so the stream may be arbitrarily long. The cursor isn't closed
+     * @param params the building
+     * @param instructions the timed instructions to issue, in time order
+     * @return the simulator at the end of the run
+     */
+    public static DiscreteEventSimulator runTimedSimulation(LiftParams params, InstructionCursor instructions) {
+        return runTimedSimulation(params, instructions, false);
+    }
+
+    /**
+     * As above, for an Iterator of instructions
+     */
+    public static DiscreteEventSimulator runTimedSimulation(LiftParams params, Iterator<Instruction> instructions) {
+        return runTimedSimulation(params, new InstructionIteratorCursor(instructions), false);
+    }
+
+    /**
+     * As above
+     * @param verbose true to have the Lift Controller say what it is doing on System.out, including the details of every instruction
+     */
+    public static DiscreteEventSimulator runTimedSimulation(LiftParams params, InstructionCursor instructions, boolean verbose) {
+
+        LiftController lc = params.buildLiftController(new VirtualClock(), verbose ? System.out : null);
+        lc.setHeadless(true);
+        lc.setVerbose(verbose);
+
+        DiscreteEventSimulator sim = new DiscreteEventSimulator(lc);
+        sim.scheduleInstructions(instructions);
+        sim.run();
+        sim.stop();
+        return sim;
+    }
+
+    /**
+     * Build a headless Lift Controller for the building and run synthetic traffic through it until all the passengers have got to their floors
+     * @param params the building
+     * @param traffic the traffic generator: its floor calls, and the lift calls of the passengers as they get in (see DiscreteEventSimulator.scheduleTraffic())
+     * @param verbose true to have the Lift Controller say what it is doing on System.out, including the details of every instruction
+     * @return the simulator at the end of the run
+     */
+    public static DiscreteEventSimulator runTrafficSimulation(LiftParams params, TrafficGenerator traffic, boolean verbose) {
+
+        LiftController lc = params.buildLiftController(new VirtualClock(), verbose ? System.out : null);
+        lc.setHeadless(true);
+        lc.setVerbose(verbose);
+
+        DiscreteEventSimulator sim = new DiscreteEventSimulator(lc);
+        sim.scheduleTraffic(traffic);
+        sim.run();
+        sim.stop();
+        return sim;
+    }
+
+    /**
+     * helper method: a PrintStream that throws away everything written to it (eg a console for a Lift Controller whose printing is being
+     * timed, see InstructionAllocationBenchmark)
+     */
+    public static PrintStream nullPrintStream() {
+        return new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+    }
+}
@@ -3,24 +3,82 @@ package com.gordon.reuven;
  * Instruction class
  * Instructions passed to the LC (or decided by the LC) can be stored as instruction
  * objects
+ * The origins and direction are held as enums, and an instruction (apart from its time) can be packed into a single long,
+ * so that the LC can log and dispatch instructions without building any strings:
+ * bits 0-7 flags (bit 0 selection, bit 1 method origin, bits 2-3 instruction origin, bits 4-5 direction),
+ * bits 8-31 liftNumber + 1, bits 32-63 floorNumber.
+ * The flags are the same as the flags byte of a binary trace (see InstructionTrace).
  */
 public class Instruction {
     
     //Instance variables
     //private static final int NULL_LIFT = -1;
-    private static final String NULL_DIRECTION = "";
-    private static final String METHOD_ORIGIN_FROM_LIFT = "methodFromLift";
-    private static final String METHOD_ORIGIN_FROM_FLOOR = "methodFromFloor";
-    private static final String ORIGIN_FROM_LIFT = "fromLift";
-    private static final String ORIGIN_FROM_FLOOR = "fromFloor";
-    private static final String ORIGIN_FROM_LC = "fromLC";
-    
-    private String methodOrigin;       //Keeps track of which method would have been used to issue this instruction
-    private String instructionOrigin;  //Keeps track of where the instruction came from
+    private static final long SELECTION_BIT = 0x1;
+    private static final int METHOD_SHIFT = 1;
+    private static final int ORIGIN_SHIFT = 2;
+    private static final int DIRECTION_SHIFT = 4;
+    private static final int LIFT_SHIFT = 8;
+    private static final int FLOOR_SHIFT = 32;
+    private static final long ONE_BIT = 0x1;
+    private static final long TWO_BITS = 0x3;
+    private static final long LIFT_BITS = 0xFFFFFF;
+    private static final long FLAGS_BITS = 0xFF;
+    
+    /**
+     * Which method would have been used to issue the instruction. Don't reorder: the ordinal is packed
+     */
+    public enum MethodOrigin {
+        FROM_FLOOR("methodFromFloor"), FROM_LIFT("methodFromLift");
+        
+        private final String label;
+        MethodOrigin(String label) {
+            this.label = label;
+        }
+        public String getLabel() {
+            return label;
+        }
+        public static MethodOrigin fromLabel(String label) {
+            if (label.equals(FROM_FLOOR.label)) return FROM_FLOOR;
+            if (label.equals(FROM_LIFT.label)) return FROM_LIFT;
+            System.out.printf("Method Origin: %s is invalid\n", label);
+            throw new IllegalArgumentException("methodOrigin invalid");
+        }
+    }
+    
+    /**
+     * Where the instruction came from. Don't reorder: the ordinal is packed
+     */
+    public enum Origin {
+        FROM_FLOOR("fromFloor"), FROM_LIFT("fromLift"), FROM_LC("fromLC");
+        
+        private final String label;
+        Origin(String label) {
+            this.label = label;
+        }
+        public String getLabel() {
+            return label;
+        }
+        public static Origin fromLabel(String label) {
+            if (label.equals(FROM_FLOOR.label)) return FROM_FLOOR;
+            if (label.equals(FROM_LIFT.label)) return FROM_LIFT;
+            if (label.equals(FROM_LC.label)) return FROM_LC;
+            System.out.printf("Instruction Origin: %s is invalid\n", label);
+            throw new IllegalArgumentException("instructionOrigin invalid");
+        }
+    }
+    
+    //shared copies of values(), which makes a new array on every call
+    private static final MethodOrigin[] METHOD_ORIGINS = MethodOrigin.values();
+    private static final Origin[] ORIGINS = Origin.values();
+    private static final Direction[] DIRECTIONS = Direction.values();
+    
+    private MethodOrigin methodOrigin;  //Keeps track of which method would have been used to issue this instruction
+    private Origin instructionOrigin;   //Keeps track of where the instruction came from
     private int floorNumber;
     private int liftNumber;
-    private String direction;   
+    private Direction direction;   
     private boolean selection;
+    private long time;          //when the instruction is issued, in ms from the start of the run (0 if not timed)
     
     /** Constructor
       * @param methodOrigin refers to which method would have been used to issue the instruction
@@ -31,20 +89,25 @@ public class Instruction {
       * @param selection tells whether to select (true) or unselect (false) the event
       */
     public Instruction(String methodOrigin, String instructionOrigin, int floorNumber, int liftNumber, String direction, boolean selection) {
+        this(methodOrigin, instructionOrigin, floorNumber, liftNumber, direction, selection, 0);
+    }
+    
+    /** Constructor for a timed instruction
+      * @param time is when the instruction is issued in ms from the start of the run
+      */
+    public Instruction(String methodOrigin, String instructionOrigin, int floorNumber, int liftNumber, String direction, boolean selection, long time) {
+        this(MethodOrigin.fromLabel(methodOrigin), Origin.fromLabel(instructionOrigin), floorNumber, liftNumber, Direction.fromLabel(direction), selection, time);
+    }
+    
+    /** Constructor from the enums
+      * @param time is when the instruction is issued in ms from the start of the run
+      */
+    public Instruction(MethodOrigin methodOrigin, Origin instructionOrigin, int floorNumber, int liftNumber, Direction direction, boolean selection, long time) {
         
         //Input arguement checking
-        if (!methodOrigin.equals(METHOD_ORIGIN_FROM_LIFT) && !methodOrigin.equals(METHOD_ORIGIN_FROM_FLOOR)) {
-            System.out.printf("Method Origin: %s is invalid\n", methodOrigin);
-            throw new IllegalArgumentException("methodOrigin invalid");
-        }
-        if (!instructionOrigin.equals(ORIGIN_FROM_LIFT) && !instructionOrigin.equals(ORIGIN_FROM_FLOOR) && !instructionOrigin.equals(ORIGIN_FROM_LC)) {
-            System.out.printf("Instruction Origin: %s is invalid\n", instructionOrigin);
-            throw new IllegalArgumentException("instructionOrigin invalid");
-        }
-        
-        if (!direction.equals("UP") && !direction.equals("DOWN") && !direction.equals(NULL_DIRECTION)) {
-            System.out.printf("Instruction Direction: %s is invalid\n", direction);
-            throw new IllegalArgumentException("direction invalid");
+        if (time < 0) {
+            System.out.printf("Instruction Time: %d is invalid\n", time);
+            throw new IllegalArgumentException("time invalid");
         }
         
         //Log the instruction origin
@@ -54,20 +117,80 @@ public class Instruction {
         this.liftNumber = liftNumber;
         this.direction = direction;    
         this.selection = selection;
+        this.time = time;
+    }
+    
+    /**
+     * Pack an instruction (apart from its time) into a long
+     */
+    public static long pack(MethodOrigin methodOrigin, Origin instructionOrigin, int floorNumber, int liftNumber, Direction direction, boolean selection) {
+        return (selection ? SELECTION_BIT : 0)
+                | (long) methodOrigin.ordinal() << METHOD_SHIFT
+                | (long) instructionOrigin.ordinal() << ORIGIN_SHIFT
+                | (long) direction.ordinal() << DIRECTION_SHIFT
+                | ((long) (liftNumber + 1) & LIFT_BITS) << LIFT_SHIFT
+                | (long) floorNumber << FLOOR_SHIFT;
+    }
+    
+    /**
+     * @return this instruction (apart from its time) packed into a long
+     */
+    public long pack() {
+        return pack(methodOrigin, instructionOrigin, floorNumber, liftNumber, direction, selection);
+    }
+    
+    /**
+     * @return the instruction packed into a long, with the given time
+     */
+    public static Instruction unpack(long packed, long time) {
+        return new Instruction(packedMethodOrigin(packed), packedOrigin(packed), packedFloorNumber(packed), packedLiftNumber(packed),
+                packedDirection(packed), packedSelection(packed), time);
+    }
+    
+    /**
+     * Read the fields of a packed instruction
+     */
+    public static MethodOrigin packedMethodOrigin(long packed) {
+        return METHOD_ORIGINS[(int) (packed >>> METHOD_SHIFT & ONE_BIT)];
+    }
+    public static Origin packedOrigin(long packed) {
+        return ORIGINS[(int) (packed >>> ORIGIN_SHIFT & TWO_BITS)];
+    }
+    public static Direction packedDirection(long packed) {
+        return DIRECTIONS[(int) (packed >>> DIRECTION_SHIFT & TWO_BITS)];
+    }
+    public static boolean packedSelection(long packed) {
+        return (packed & SELECTION_BIT) != 0;
+    }
+    public static int packedFloorNumber(long packed) {
+        return (int) (packed >> FLOOR_SHIFT);
+    }
+    public static int packedLiftNumber(long packed) {
+        return (int) (packed >>> LIFT_SHIFT & LIFT_BITS) - 1;
+    }
+    public static byte packedFlags(long packed) {
+        return (byte) (packed & FLAGS_BITS);
+    }
+    
+    /**
+     * @return a packed instruction made from the fields of a binary trace record
+     */
+    public static long packTraceRecord(int floorNumber, int liftNumber, byte flags) {
+        return (flags & FLAGS_BITS) | ((long) (liftNumber + 1) & LIFT_BITS) << LIFT_SHIFT | (long) floorNumber << FLOOR_SHIFT;
     }
     
     /**
      * Getter: Return which method the instruction came from
      */
     public String getmethodOrigin() {
-        return methodOrigin;
+        return methodOrigin.getLabel();
     }
     
     /**
      * Getter: Return where the instruction came from
      */
     public String getinstructionOrigin() {
-        return instructionOrigin;
+        return instructionOrigin.getLabel();
     }
     
     /**
@@ -90,9 +213,22 @@ public class Instruction {
      * if the instruction was called from a lift, return null
      */
     public String getdirection() {
-        return direction;
+        return direction.getLabel();
     }    
     
+    /**
+     * Getters: the origins and direction as enums
+     */
+    public MethodOrigin getMethodOriginType() {
+        return methodOrigin;
+    }
+    public Origin getInstructionOriginType() {
+        return instructionOrigin;
+    }
+    public Direction getDirectionType() {
+        return direction;
+    }
+    
     /**
      * Getter: Return the selection corresponding to this instruction.
      */
@@ -100,11 +236,18 @@ public class Instruction {
         return selection;
     }    
     
+    /**
+     * Getter: Return when the instruction is issued in ms from the start of the run (0 if not timed)
+     */
+    public long gettime() {
+        return time;
+    }    
+    
     /**
      * return the instruction as a string 
      */
     public String toString() {
         return "\nmethodOrigin: " + getmethodOrigin() + "\ninstructionOrigin: " + getinstructionOrigin() + "\nfloorNumber: " + 
-            getfloorNumber() + "\nliftNumber: " + getliftNumber() + "\ndirection: " + getdirection() + "\nselection: " + getselection();
+            getfloorNumber() + "\nliftNumber: " + getliftNumber() + "\ndirection: " + getdirection() + "\nselection: " + getselection() + "\ntime: " + gettime();
     }
 }
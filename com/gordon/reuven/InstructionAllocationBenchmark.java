@@ -0,0 +1,116 @@
+package com.gordon.reuven;
+/**
+ * Benchmark of the memory allocated by the Lift Controller for each instruction it executes
+ * It issues the same stream of floor and lift calls (each one selected then unselected, so the building never fills up) to a
+ * Lift Controller that isn't running, in three ways:
+ * - Instruction objects built from strings, with the instruction details printed (as the GUI and instructions files do)
+ * - the same Instruction objects with the details turned off (setVerbose(false))
+ * - packed instructions (see Instruction.pack())
+ * and reports the bytes allocated and the time taken per instruction. Each instruction also updates the lift queues (a new node for a
+ * selection), so the difference between the rows is what the instruction representation costs.
+ *
+ * java InstructionAllocationBenchmark [instructions]
+ */
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+public class InstructionAllocationBenchmark {
+
+    //Instance variables
+    private static final int NUMBER_OF_FLOORS = 20;
+    private static final int NUMBER_OF_LIFTS = 4;
+    private static final long SEED = 42;
+    private static final String[] DIRECTIONS = {"UP", "DOWN"};
+
+    /**
+     * The ways of issuing an instruction
+     */
+    private enum Mode { STRINGS_VERBOSE, STRINGS, PACKED }
+
+    public static void main(String[] args) {
+
+        int instructions = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+        long[][] results = new long[Mode.values().length][];
+        //warm up, then measure
+        for (Mode mode : Mode.values()) {
+            run(mode, instructions / 10);
+        }
+        for (Mode mode : Mode.values()) {
+            results[mode.ordinal()] = run(mode, instructions);
+        }
+
+        System.out.printf("%d instructions, %d floors, %d lifts\n", instructions, NUMBER_OF_FLOORS, NUMBER_OF_LIFTS);
+        System.out.printf("%16s %14s %14s\n", "mode", "bytes/instr", "ns/instr");
+        for (Mode mode : Mode.values()) {
+            long[] r = results[mode.ordinal()];
+            System.out.printf("%16s %14.1f %14.1f\n", mode, (double) r[0] / instructions, (double) r[1] / instructions);
+        }
+    }
+
+    /**
+     * Issue the instructions one way
+     * @return the bytes allocated and the time taken [ns]
+     */
+    private static long[] run(Mode mode, int instructions) {
+
+        //the printing is part of what the verbose mode costs, so it goes to a console that throws it away rather than to no console at all
+        PrintStream console = mode == Mode.STRINGS_VERBOSE ? HeadlessLiftRunner.nullPrintStream() : null;
+        LiftController lc = new LiftController(NUMBER_OF_FLOORS, NUMBER_OF_LIFTS, 3, 2, 1.5, 1, 0.25, 500, 1, new VirtualClock(), console);
+        lc.setHeadless(true);
+        lc.setVerbose(mode == Mode.STRINGS_VERBOSE);
+
+        //make the calls up front, so that only the LC is measured
+        Random random = new Random(SEED);
+        int calls = (instructions + 1) / 2;
+        boolean[] fromFloors = new boolean[calls];
+        int[] floors = new int[calls];
+        int[] lifts = new int[calls];
+        int[] directions = new int[calls];
+        for (int c = 0; c < calls; c++) {
+            fromFloors[c] = random.nextBoolean();
+            floors[c] = 2 + random.nextInt(NUMBER_OF_FLOORS - 2);
+            lifts[c] = 1 + random.nextInt(NUMBER_OF_LIFTS);
+            directions[c] = random.nextInt(2);
+        }
+
+        long allocatedStart = allocatedBytes();
+        long start = System.nanoTime();
+        for (int n = 0; n < instructions; n++) {
+            //each call is selected and then unselected
+            boolean selection = n % 2 == 0;
+            boolean fromFloor = fromFloors[n / 2];
+            int floor = floors[n / 2];
+            int lift = lifts[n / 2];
+            int direction = directions[n / 2];
+
+            switch (mode) {
+                case STRINGS_VERBOSE:
+                case STRINGS:
+                    lc.executeInstruction(fromFloor
+                            ? new Instruction("methodFromFloor", selection ? "fromFloor" : "fromLC", floor, -1, DIRECTIONS[direction], selection)
+                            : new Instruction("methodFromLift", selection ? "fromLift" : "fromLC", floor, lift, "", selection));
+                    break;
+                case PACKED:
+                    lc.executeInstruction(fromFloor
+                            ? Instruction.pack(Instruction.MethodOrigin.FROM_FLOOR, selection ? Instruction.Origin.FROM_FLOOR : Instruction.Origin.FROM_LC,
+                                    floor, -1, direction == 0 ? Direction.UP : Direction.DOWN, selection)
+                            : Instruction.pack(Instruction.MethodOrigin.FROM_LIFT, selection ? Instruction.Origin.FROM_LIFT : Instruction.Origin.FROM_LC,
+                                    floor, lift, Direction.NONE, selection));
+                    break;
+            }
+        }
+        return new long[] {allocatedBytes() - allocatedStart, System.nanoTime() - start};
+    }
+
+    /**
+     * helper method: bytes allocated by this thread so far (-1 if not available)
+     */
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
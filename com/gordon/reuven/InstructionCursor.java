@@ -0,0 +1,29 @@
+package com.gordon.reuven;
+/**
+ * Instruction cursor
+ * A stream of timed instructions read one at a time without an Instruction being made for each: advance() moves to the next instruction
+ * and getTime()/getPacked() read it. The replay paths (DiscreteEventSimulator.scheduleInstructions(), InstructionReplayer) are driven by a
+ * cursor. InstructionTraceReader and InstructionReader are cursors; any other Iterator of Instructions (eg a TrafficGenerator) can be
+ * read through an InstructionIteratorCursor.
+ */
+import java.io.Closeable;
+import java.io.IOException;
+
+public interface InstructionCursor extends Closeable {
+
+    /**
+     * Move on to the next instruction
+     * @return false if there are none left
+     */
+    boolean advance() throws IOException;
+
+    /**
+     * @return the time of the current instruction in ms from the start of the run
+     */
+    long getTime();
+
+    /**
+     * @return the current instruction (apart from its time) as a packed instruction (see Instruction.pack())
+     */
+    long getPacked();
+}
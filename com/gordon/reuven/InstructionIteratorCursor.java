@@ -0,0 +1,50 @@
+package com.gordon.reuven;
+/**
+ * Instruction iterator cursor
+ * Reads an Iterator of Instructions (eg a TrafficGenerator) as an InstructionCursor, so that it can be replayed like a trace.
+ * Closing the cursor closes the iterator if it is Closeable.
+ */
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+
+public class InstructionIteratorCursor implements InstructionCursor {
+
+    //Instance variables
+    private Iterator<Instruction> instructions;
+    private Instruction current;      //the current instruction (null before the first)
+
+    /**
+     * Constructor
+     * @param instructions the instructions, in time order
+     */
+    public InstructionIteratorCursor(Iterator<Instruction> instructions) {
+        this.instructions = instructions;
+    }
+
+    @Override
+    public boolean advance() {
+        if (!instructions.hasNext()) {
+            return false;
+        }
+        current = instructions.next();
+        return true;
+    }
+
+    @Override
+    public long getTime() {
+        return current.gettime();
+    }
+
+    @Override
+    public long getPacked() {
+        return current.pack();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (instructions instanceof Closeable) {
+            ((Closeable) instructions).close();
+        }
+    }
+}
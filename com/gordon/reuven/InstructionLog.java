@@ -0,0 +1,394 @@
+package com.gordon.reuven;
+/**
+ * Instruction log
+ * A bounded log of the instructions passed to (or made by) the Lift Controller.
+ * The most recent instructions are kept in a fixed size ring in memory. When the ring is full the oldest instruction is
+ * either dropped or, if a spill directory is given, spilled to disk: spilled instructions are collected into batches and
+ * a background thread appends each batch to a series of binary trace files (see InstructionTrace) in the spill directory,
+ * starting a new segment file every segmentSize instructions. Nothing is written to disk on the caller's thread.
+ * Iterating the log goes through the spilled segments (oldest first) and then the ring.
+ * The instructions are held packed (see Instruction.pack()) in arrays of longs, so adding one allocates nothing.
+ * A log that drops old instructions takes no lock to add one: each add claims the next position in the log and then writes its slot of
+ * the ring, so threads adding at the same time (eg presses in different lifts) don't wait for each other. The order of the log is the
+ * order the positions were claimed in. An add only waits if the ring has gone all the way round whilst the add before it in the same slot
+ * is still writing. A log that spills adds under its lock, as the evicted instructions have to reach the spill batches in order.
+ */
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class InstructionLog implements Iterable<Instruction> {
+
+    //Instance variables
+    public static final int DEFAULT_CAPACITY = 10000;
+    private static final int SPILL_BATCH_SIZE = 4096;
+    private static final long DEFAULT_SEGMENT_SIZE = 1000000;
+    private static final String SEGMENT_FORMAT = "instructions-%05d" + InstructionTrace.TRACE_EXTENSION;
+
+    private AtomicLongArray ring;        //packed instructions. The instruction at position n in the log is in slot n % capacity
+    private AtomicLongArray ringTimes;   //and their times
+    private AtomicLongArray ringSeqs;    //n + 1 once the instruction at position n has been written to the slot, -(n + 1) whilst it is being written
+    private AtomicLong claimed;          //number of positions claimed: the instructions added so far, including any still being written
+    private File spillDirectory;         //null if old instructions are dropped
+    private long segmentSize;            //number of instructions in each segment file
+    private long[] spillBatch;           //evicted instructions waiting to be handed to the spill thread
+    private long[] spillBatchTimes;
+    private int spillBatchSize;
+    private long spilled;                //number of instructions handed to the spill thread
+    private ExecutorService spillExecutor;
+    private List<File> segments;         //the segment files, oldest first. Only touched on the spill thread (or once it has finished)
+    private InstructionTraceWriter segmentWriter;
+    private volatile IOException spillError;
+
+    /**
+     * Constructor: a log that keeps the last capacity instructions and drops anything older
+     * @param capacity the number of instructions to keep in memory
+     */
+    public InstructionLog(int capacity) {
+        this(capacity, null, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Constructor: a log that keeps the last capacity instructions in memory and spills older ones to disk, a million to a segment file
+     * @param capacity the number of instructions to keep in memory
+     * @param spillDirectory where to write the segment files (null to drop old instructions instead)
+     */
+    public InstructionLog(int capacity, File spillDirectory) {
+        this(capacity, spillDirectory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Constructor: a log that keeps the last capacity instructions in memory and spills older ones to disk
+     * @param capacity the number of instructions to keep in memory
+     * @param spillDirectory where to write the segment files (null to drop old instructions instead). Any old segment files in it are overwritten
+     * @param segmentSize the number of instructions in each segment file
+     */
+    public InstructionLog(int capacity, File spillDirectory, long segmentSize) {
+
+        //Input checking
+        if (capacity <= 0) {
+            System.out.printf("instruction log capacity %d invalid\n", capacity);
+            throw new IllegalArgumentException("capacity <= 0");
+        }
+        if (segmentSize <= 0) {
+            System.out.printf("instruction log segmentSize %d invalid\n", segmentSize);
+            throw new IllegalArgumentException("segmentSize <= 0");
+        }
+
+        ring = new AtomicLongArray(capacity);
+        ringTimes = new AtomicLongArray(capacity);
+        ringSeqs = new AtomicLongArray(capacity);
+        claimed = new AtomicLong();
+        this.spillDirectory = spillDirectory;
+        this.segmentSize = segmentSize;
+        if (spillDirectory != null) {
+            if (!spillDirectory.isDirectory() && !spillDirectory.mkdirs()) {
+                System.out.printf("cannot create the instruction log spill directory %s\n", spillDirectory);
+                throw new IllegalArgumentException("spill directory cannot be created");
+            }
+            spillBatch = new long[SPILL_BATCH_SIZE];
+            spillBatchTimes = new long[SPILL_BATCH_SIZE];
+            segments = new ArrayList<File>();
+            spillExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "instruction-log-spill");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * Add an instruction to the log
+     */
+    public void add(Instruction ins) {
+        add(ins.pack(), ins.gettime());
+    }
+
+    /**
+     * Add a packed instruction to the log
+     * @param packed see Instruction.pack()
+     * @param time when the instruction was issued [ms]
+     */
+    public void add(long packed, long time) {
+        if (spillDirectory == null) {
+            write(claimed.getAndIncrement(), packed, time);
+            return;
+        }
+        addAndSpill(packed, time);
+    }
+
+    /**
+     * helper method: add an instruction to a log that spills. The oldest instruction is evicted to the spill batch if the ring is full
+     */
+    private synchronized void addAndSpill(long packed, long time) {
+        long n = claimed.get();
+        if (n >= ring.length()) {
+            int slot = (int) (n % ring.length());
+            spillBatch[spillBatchSize] = ring.get(slot);
+            spillBatchTimes[spillBatchSize] = ringTimes.get(slot);
+            spillBatchSize++;
+            if (spillBatchSize == spillBatch.length) {
+                submitSpillBatch();
+            }
+        }
+        write(n, packed, time);
+        claimed.set(n + 1);
+    }
+
+    /**
+     * helper method: write the instruction at a position in the log to its slot of the ring, once the instruction a whole ring before it
+     * has been written (else that write could land on top of this one)
+     */
+    private void write(long n, long packed, long time) {
+        int slot = (int) (n % ring.length());
+        long before = n < ring.length() ? 0 : n - ring.length() + 1;
+        while (!ringSeqs.compareAndSet(slot, before, -(n + 1))) {
+            Thread.yield();
+        }
+        ring.set(slot, packed);
+        ringTimes.set(slot, time);
+        ringSeqs.set(slot, n + 1);
+    }
+
+    /**
+     * Iterate the whole log, oldest first: the spilled instructions and then the ring.
+     * This is a snapshot: instructions added whilst iterating are not included. It waits for everything spilled so far to reach the disk.
+     * If a log that drops old instructions is added to whilst the snapshot is taken, the oldest instructions may be dropped from it
+     */
+    @Override
+    public Iterator<Instruction> iterator() {
+
+        long[] recent;
+        long[] recentTimes;
+        long spilledSoFar;
+        Future<List<File>> written;
+        synchronized (this) {
+            //push the partial batch to the spill thread too, so that the segments hold everything older than the ring
+            if (spillBatchSize > 0) {
+                submitSpillBatch();
+            }
+            long n = claimed.get();
+            int count = 0;
+            recent = new long[(int) Math.min(n, ring.length())];
+            recentTimes = new long[recent.length];
+            for (long position = n - recent.length; position < n; position++) {
+                if (read(position, recent, recentTimes, count)) {
+                    count++;
+                }
+            }
+            if (count < recent.length) {
+                recent = Arrays.copyOf(recent, count);
+                recentTimes = Arrays.copyOf(recentTimes, count);
+            }
+            spilledSoFar = spilled;
+            written = spillExecutor == null || spillExecutor.isShutdown() ? null : spillExecutor.submit(() -> {
+                if (segmentWriter != null) segmentWriter.flush();
+                return new ArrayList<File>(segments);
+            });
+        }
+
+        List<File> segmentFiles = new ArrayList<File>();
+        try {
+            if (written != null) {
+                segmentFiles = written.get();
+            }
+            else if (spillExecutor != null) {
+                //closed: once the spill thread has finished the segments no longer change
+                spillExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+                segmentFiles = new ArrayList<File>(segments);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted waiting for the instruction log to spill", ex);
+        } catch (ExecutionException ex) {
+            throw new UncheckedIOException(new IOException("instruction log spill failed", ex.getCause()));
+        }
+        checkSpillError();
+        return new LogIterator(segmentFiles, spilledSoFar, recent, recentTimes);
+    }
+
+    /**
+     * helper method: copy the instruction at a position in the log out of the ring, waiting for it if it is still being written
+     * @return false if it has already been overwritten by a newer one
+     */
+    private boolean read(long n, long[] packed, long[] times, int index) {
+        int slot = (int) (n % ring.length());
+        while (true) {
+            long seq = ringSeqs.get(slot);
+            if (Math.abs(seq) > n + 1) {
+                return false;
+            }
+            if (seq == n + 1) {
+                packed[index] = ring.get(slot);
+                times[index] = ringTimes.get(slot);
+                if (ringSeqs.get(slot) == seq) {
+                    return true;
+                }
+            }
+            else Thread.yield();
+        }
+    }
+
+    /**
+     * Inner class to iterate the segment files and then the snapshot of the ring
+     */
+    private class LogIterator implements Iterator<Instruction> {
+
+        //instance variables
+        private List<File> segmentFiles;
+        private int segment;                 //index of the next segment file to open
+        private long spilledLeft;            //number of spilled instructions still to read
+        private InstructionTraceReader reader;
+        private long[] recent;
+        private long[] recentTimes;
+        private int recentIndex;
+
+        /**
+         * Constructor
+         */
+        public LogIterator(List<File> segmentFiles, long spilledLeft, long[] recent, long[] recentTimes) {
+            this.segmentFiles = segmentFiles;
+            this.spilledLeft = spilledLeft;
+            this.recent = recent;
+            this.recentTimes = recentTimes;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return spilledLeft > 0 || recentIndex < recent.length;
+        }
+
+        @Override
+        public Instruction next() {
+            if (spilledLeft == 0) {
+                if (recentIndex >= recent.length) {
+                    throw new NoSuchElementException();
+                }
+                Instruction ins = Instruction.unpack(recent[recentIndex], recentTimes[recentIndex]);
+                recentIndex++;
+                return ins;
+            }
+            try {
+                while (reader == null || !reader.hasNext()) {
+                    if (reader != null) reader.close();
+                    reader = new InstructionTraceReader(segmentFiles.get(segment++).getPath());
+                }
+                Instruction ins = reader.next();
+                if (--spilledLeft == 0) {
+                    reader.close();
+                }
+                return ins;
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    /**
+     * Stop the spill thread, once everything handed to it has been written. The log can still be iterated afterwards, but instructions
+     * added after this are only kept in memory: any that it evicts are dropped. Closing it again does nothing
+     */
+    public void close() throws IOException {
+        if (spillExecutor == null) {
+            return;
+        }
+        synchronized (this) {
+            if (spillExecutor.isShutdown()) {
+                return;
+            }
+            if (spillBatchSize > 0) {
+                submitSpillBatch();
+            }
+            spillExecutor.execute(() -> {
+                try {
+                    if (segmentWriter != null) segmentWriter.close();
+                } catch (IOException ex) {
+                    spillError = ex;
+                }
+                segmentWriter = null;
+            });
+            spillExecutor.shutdown();
+        }
+        try {
+            spillExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        checkSpillError();
+    }
+
+    /**
+     * helper method: hand the current spill batch to the spill thread and start a new one. Called with the lock held
+     */
+    private void submitSpillBatch() {
+        if (spillExecutor.isShutdown()) {
+            //closed: drop the batch
+            spillBatchSize = 0;
+            return;
+        }
+        long[] batch = spillBatch;
+        long[] batchTimes = spillBatchTimes;
+        int batchSize = spillBatchSize;
+        spillBatch = new long[SPILL_BATCH_SIZE];
+        spillBatchTimes = new long[SPILL_BATCH_SIZE];
+        spillBatchSize = 0;
+        spilled += batchSize;
+        spillExecutor.execute(() -> writeBatch(batch, batchTimes, batchSize));
+    }
+
+    /**
+     * helper method: append a batch to the segment files, starting a new segment when the current one is full. Runs on the spill thread
+     */
+    private void writeBatch(long[] batch, long[] batchTimes, int batchSize) {
+        try {
+            for (int i = 0; i < batchSize; i++) {
+                if (segmentWriter == null || segmentWriter.getCount() == segmentSize) {
+                    if (segmentWriter != null) segmentWriter.close();
+                    File segment = new File(spillDirectory, String.format(SEGMENT_FORMAT, segments.size() + 1));
+                    segmentWriter = new InstructionTraceWriter(segment.getPath());
+                    segments.add(segment);
+                }
+                segmentWriter.write(batchTimes[i], batch[i]);
+            }
+        } catch (IOException ex) {
+            spillError = ex;
+        }
+    }
+
+    /**
+     * helper method: report a failure on the spill thread
+     */
+    private void checkSpillError() {
+        if (spillError != null) {
+            throw new UncheckedIOException("instruction log spill failed", spillError);
+        }
+    }
+
+    /**
+     * Getters
+     */
+    public int getCapacity() {
+        return ring.length();
+    }
+    public int getSize() {
+        return (int) Math.min(claimed.get(), ring.length());
+    }
+    public synchronized long getSpilled() {
+        return spilled + spillBatchSize;
+    }
+    public long getDropped() {
+        return spillDirectory == null ? Math.max(0, claimed.get() - ring.length()) : 0;
+    }
+}
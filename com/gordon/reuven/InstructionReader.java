@@ -0,0 +1,283 @@
+package com.gordon.reuven;
+/**
+ * Instruction reader
+ * Reads an instructions file one instruction at a time, so that a recorded trace of any size can be replayed in constant memory.
+ * The first line is a header and is ignored. Each line after that is
+ * methodOrigin,instructionOrigin,floorNumber,liftNumber,direction,selection[,time]
+ * where the optional time is when the instruction is issued, in ms from the start of the run (0 if it is left out).
+ * The fields are parsed straight out of a reusable character buffer: no line strings or split arrays are made, and the
+ * usual origin/direction values are shared constants, so the only thing allocated per line is the Instruction itself.
+ * It can be read as a cursor (see InstructionCursor), which is how the replay paths read it, or as an Iterator of Instructions.
+ */
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class InstructionReader implements InstructionCursor, Iterator<Instruction>, Iterable<Instruction> {
+
+    //Instance variables
+    private static final int BUFFER_SIZE = 65536;
+    private static final int NUMBER_OF_FIELDS = 6;  //not counting the optional time
+    private static final String[] KNOWN_VALUES = {"methodFromFloor", "methodFromLift", "fromFloor", "fromLift", "fromLC", "UP", "DOWN", ""};
+
+    private Reader in;
+    private char[] buffer;
+    private int position;             //start of the next line in the buffer
+    private int limit;                //end of the characters read into the buffer
+    private boolean endOfFile;
+    private long lineNumber;
+    private Instruction next;         //the next instruction, already parsed (null when there are none left)
+    private Instruction current;      //the cursor's current instruction (null before the first)
+    private int[] fieldStart;         //start/end of each field in the current line
+    private int[] fieldEnd;
+
+    /**
+     * Constructor
+     * @param instructionLogInputs the name of the instructions file
+     */
+    public InstructionReader(String instructionLogInputs) throws IOException {
+        this(new FileReader(instructionLogInputs));
+    }
+
+    /**
+     * Constructor
+     * @param in where to read the instructions from. It is closed by close()
+     */
+    public InstructionReader(Reader in) throws IOException {
+        this.in = in;
+        buffer = new char[BUFFER_SIZE];
+        fieldStart = new int[NUMBER_OF_FIELDS + 1];
+        fieldEnd = new int[NUMBER_OF_FIELDS + 1];
+
+        //skip the header
+        if (nextLine() >= 0) {
+            parseNext();
+        }
+        else {
+            in.close();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public Instruction next() {
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        Instruction ins = next;
+        try {
+            parseNext();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return ins;
+    }
+
+    /**
+     * The reader is its own (single use) iterator, so that it can be used in a for-each loop
+     */
+    @Override
+    public Iterator<Instruction> iterator() {
+        return this;
+    }
+
+    @Override
+    public boolean advance() throws IOException {
+        if (next == null) {
+            return false;
+        }
+        current = next;
+        parseNext();
+        return true;
+    }
+
+    @Override
+    public long getTime() {
+        return current.gettime();
+    }
+
+    @Override
+    public long getPacked() {
+        return current.pack();
+    }
+
+    @Override
+    public void close() throws IOException {
+        next = null;
+        in.close();
+    }
+
+    /**
+     * helper method: parse the next non-blank line into next (null at the end of the file)
+     */
+    private void parseNext() throws IOException {
+        int end;
+        while ((end = nextLine()) >= 0) {
+            if (end > position) {
+                next = parseLine(end);
+                return;
+            }
+        }
+        next = null;
+        in.close();
+    }
+
+    /**
+     * helper method: move position on to the start of the next line, reading more of the file if needed
+     * @return the end of the new line in the buffer (without the line break), or -1 at the end of the file
+     */
+    private int nextLine() throws IOException {
+
+        //step over the previous line's line break
+        if (lineNumber > 0) {
+            while (position < limit && buffer[position] != '\n') position++;
+            position++;
+        }
+        lineNumber++;
+
+        int scan = position;
+        while (true) {
+            while (scan < limit) {
+                if (buffer[scan] == '\n') {
+                    return trimLineEnd(scan);
+                }
+                scan++;
+            }
+            if (endOfFile) {
+                return position < limit ? trimLineEnd(limit) : -1;
+            }
+
+            //the line runs off the end of the buffer: move it to the front (growing the buffer if the line is too long) and read some more
+            int length = limit - position;
+            if (length == buffer.length) {
+                char[] bigger = new char[buffer.length * 2];
+                System.arraycopy(buffer, position, bigger, 0, length);
+                buffer = bigger;
+            }
+            else {
+                System.arraycopy(buffer, position, buffer, 0, length);
+            }
+            scan -= position;
+            position = 0;
+            limit = length;
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0) endOfFile = true;
+            else limit += read;
+        }
+    }
+
+    /**
+     * helper method: drop a trailing \r
+     */
+    private int trimLineEnd(int end) {
+        return end > position && buffer[end - 1] == '\r' ? end - 1 : end;
+    }
+
+    /**
+     * helper method: make an instruction from the line between position and end
+     */
+    private Instruction parseLine(int end) {
+
+        //find the fields
+        int fields = 0;
+        int start = position;
+        for (int i = position; i <= end; i++) {
+            if (i == end || buffer[i] == ',') {
+                if (fields == fieldStart.length) {
+                    fields++;
+                    break;
+                }
+                fieldStart[fields] = start;
+                fieldEnd[fields] = i;
+                fields++;
+                start = i + 1;
+            }
+        }
+        if (fields != NUMBER_OF_FIELDS && fields != NUMBER_OF_FIELDS + 1) {
+            System.out.printf("line %d of the instructions has %d fields, expected %d or %d\n", lineNumber, fields, NUMBER_OF_FIELDS, NUMBER_OF_FIELDS + 1);
+            throw new IllegalArgumentException("wrong number of fields");
+        }
+
+        String methodOrigin = text(0);
+        String instructionOrigin = text(1);
+        int floorNumber = (int) number(2);
+        int liftNumber = (int) number(3);
+        String direction = text(4);
+        boolean selection = bool(5);
+        long time = fields > NUMBER_OF_FIELDS ? number(6) : 0;
+
+        return new Instruction(methodOrigin, instructionOrigin, floorNumber, liftNumber, direction, selection, time);
+    }
+
+    /**
+     * helper method: a text field, using the shared constant if it is one of the usual values
+     */
+    private String text(int field) {
+        int start = fieldStart[field];
+        int length = fieldEnd[field] - start;
+        for (String known : KNOWN_VALUES) {
+            if (known.length() == length && matches(known, start)) {
+                return known;
+            }
+        }
+        return new String(buffer, start, length);
+    }
+
+    /**
+     * helper method: true if the buffer holds the value at start
+     */
+    private boolean matches(String value, int start) {
+        for (int i = 0; i < value.length(); i++) {
+            if (buffer[start + i] != value.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * helper method: an integer field (which may be negative, eg liftNumber -1)
+     */
+    private long number(int field) {
+        int i = fieldStart[field];
+        int end = fieldEnd[field];
+        boolean negative = i < end && buffer[i] == '-';
+        if (negative) i++;
+        if (i == end) {
+            badField(field);
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            char c = buffer[i];
+            if (c < '0' || c > '9') {
+                badField(field);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * helper method: a boolean field. Like Boolean.parseBoolean, anything other than "true" (any case) is false
+     */
+    private boolean bool(int field) {
+        int start = fieldStart[field];
+        if (fieldEnd[field] - start != 4) return false;
+        return Character.toLowerCase(buffer[start]) == 't' && Character.toLowerCase(buffer[start + 1]) == 'r'
+                && Character.toLowerCase(buffer[start + 2]) == 'u' && Character.toLowerCase(buffer[start + 3]) == 'e';
+    }
+
+    /**
+     * helper method: report a field that isn't a number
+     */
+    private void badField(int field) {
+        String value = new String(buffer, fieldStart[field], fieldEnd[field] - fieldStart[field]);
+        System.out.printf("line %d of the instructions: field %d (%s) is not a number\n", lineNumber, field + 1, value);
+        throw new IllegalArgumentException("field is not a number");
+    }
+}
@@ -0,0 +1,112 @@
+package com.gordon.reuven;
+/**
+ * Instruction replayer
+ * Feeds a stream of timed instructions (eg from an InstructionTraceReader) into a running Lift Controller, issuing each one
+ * when its time arrives on the LC's clock. The instructions are read through an InstructionCursor as they are issued, packed, so a trace
+ * of any length is replayed in constant memory and nothing is allocated for each instruction. Instructions with the same time are issued
+ * together as a batch (see LiftController.executeInstructions()). Run it with LiftController.startInstructionProducer().
+ * The cursor is closed when the replay finishes or is stopped.
+ * (For a discrete event simulation use DiscreteEventSimulator.scheduleInstructions() instead - there is no waiting there.)
+ */
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.locks.LockSupport;
+
+public class InstructionReplayer implements Runnable {
+
+    //Instance variables
+    private static final long MILLIMULTIPLIER = 1000000;
+    private static final int BATCH_SIZE = 16;
+
+    private LiftController lc;
+    private InstructionCursor instructions;
+    private volatile long issued;      //number of instructions issued so far
+    private volatile boolean stopped;
+    private volatile Thread thread;    //the thread running the replay (null until it starts)
+
+    /**
+     * Constructor
+     * @param lc the Lift Controller to issue the instructions to
+     * @param instructions the instructions, in time order, with their times in ms from the start of the replay
+     */
+    public InstructionReplayer(LiftController lc, InstructionCursor instructions) {
+        this.lc = lc;
+        this.instructions = instructions;
+    }
+
+    /**
+     * Constructor: as above, for an Iterator of instructions, read through an InstructionIteratorCursor
+     */
+    public InstructionReplayer(LiftController lc, Iterator<Instruction> instructions) {
+        this(lc, new InstructionIteratorCursor(instructions));
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        try (InstructionCursor cursor = instructions) {
+            replay(cursor);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * helper method: issue the instructions until there are none left or the replay is stopped
+     */
+    private void replay(InstructionCursor cursor) throws IOException {
+        SimulationClock clock = lc.getClock();
+        long start = clock.nanoTime();
+        long[] batch = new long[BATCH_SIZE];
+        boolean more = cursor.advance();
+
+        while (!stopped && more) {
+            long time = cursor.getTime();
+
+            //wait until the instruction is due
+            long due = start + time * MILLIMULTIPLIER;
+            long wait;
+            while (!stopped && (wait = due - clock.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if (stopped) {
+                break;
+            }
+
+            //and any others due at the same time
+            int count = 0;
+            do {
+                if (count == batch.length) {
+                    batch = Arrays.copyOf(batch, count * 2);
+                }
+                batch[count++] = cursor.getPacked();
+            } while ((more = cursor.advance()) && cursor.getTime() == time);
+
+            if (count == 1) {
+                lc.executeInstruction(batch[0]);
+            }
+            else lc.executeInstructions(batch, count);
+            issued += count;
+        }
+    }
+
+    /**
+     * Stop replaying. Instructions that have already been issued are not undone
+     */
+    public void stop() {
+        stopped = true;
+        Thread t = thread;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * Getter: the number of instructions issued so far
+     */
+    public long getIssued() {
+        return issued;
+    }
+}
@@ -0,0 +1,69 @@
+package com.gordon.reuven;
+/**
+ * Instruction trace
+ * A compact binary file of timed instructions, for recorded traces that are too big to parse as text.
+ * The file is a 16 byte header (magic number, version, record size) followed by fixed width 20 byte records:
+ * - time: long, ms from the start of the run
+ * - floorNumber: int
+ * - liftNumber: int
+ * - flags: byte. bit 0 selection, bit 1 methodOrigin (0 fromFloor, 1 fromLift), bits 2-3 instructionOrigin (0 fromFloor, 1 fromLift, 2 fromLC),
+ *   bits 4-5 direction (0 none, 1 UP, 2 DOWN). This is the low byte of a packed instruction (see Instruction.pack())
+ * - 3 bytes padding
+ * Everything is big endian. Write a trace with InstructionTraceWriter and read it with InstructionTraceReader.
+ *
+ * To convert an instructions file to a trace, type:
+ * java InstructionTrace instructionsY.txt traceY.bin
+ */
+import java.io.IOException;
+
+public class InstructionTrace {
+
+    //Instance variables
+    public static final long MAGIC = 0x4C49465454524143L;   //"LIFTTRAC"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = 20;
+    public static final String TRACE_EXTENSION = ".bin";
+
+    //offsets of the fields within a record
+    static final int TIME_OFFSET = 0;
+    static final int FLOOR_OFFSET = 8;
+    static final int LIFT_OFFSET = 12;
+    static final int FLAGS_OFFSET = 16;
+
+    /**
+     * @return the flags byte for an instruction (the low byte of the packed instruction, see Instruction.pack())
+     */
+    public static byte encodeFlags(Instruction ins) {
+        return Instruction.packedFlags(ins.pack());
+    }
+
+    /**
+     * @return true if the file name is that of a binary trace rather than a text instructions file
+     */
+    public static boolean isTrace(String fileName) {
+        return fileName.endsWith(TRACE_EXTENSION);
+    }
+
+    /**
+     * Convert an instructions text file to a binary trace
+     */
+    public static void main(String[] args) throws IOException {
+
+        if (args.length < 2) {
+            System.out.printf("usage: java InstructionTrace instructionsY.txt traceY%s\n", TRACE_EXTENSION);
+            return;
+        }
+
+        long start = System.nanoTime();
+        long count = 0;
+        try (InstructionReader reader = new InstructionReader(args[0]);
+             InstructionTraceWriter writer = new InstructionTraceWriter(args[1])) {
+            for (Instruction ins : reader) {
+                writer.write(ins);
+                count++;
+            }
+        }
+        System.out.printf("converted %d instructions in %.2fs\n", count, (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,159 @@
+package com.gordon.reuven;
+/**
+ * Instruction trace reader
+ * Reads a binary trace file (see InstructionTrace for the format) by memory mapping it. The file is mapped a window at a time
+ * (so traces bigger than 2GB work) and the records are read straight out of the mapping, with no copying or parsing.
+ * There are two ways to read it:
+ * - as a cursor (see InstructionCursor): advance() moves to the next record and getTime(), getFloorNumber()... read its fields. Nothing is
+ *   allocated. This is how DiscreteEventSimulator.scheduleInstructions() and InstructionReplayer replay a trace
+ * - as an Iterator of Instructions, for convenience. It makes an Instruction for every record
+ */
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class InstructionTraceReader implements InstructionCursor, Iterator<Instruction>, Iterable<Instruction> {
+
+    //Instance variables
+    private static final long WINDOW_RECORDS = (1 << 28) / InstructionTrace.RECORD_SIZE;   //about 256MB of records mapped at a time
+
+    private FileChannel channel;
+    private long count;               //number of records in the file
+    private long index;               //index of the current record (-1 before the first)
+    private MappedByteBuffer window;  //the mapped part of the file
+    private long windowStart;         //index of the first record in the window
+    private long windowEnd;           //index of the record after the last one in the window
+    private int offset;               //offset of the current record in the window
+
+    /**
+     * Constructor
+     * @param traceName the name of the trace file
+     */
+    public InstructionTraceReader(String traceName) throws IOException {
+        channel = FileChannel.open(Paths.get(traceName), StandardOpenOption.READ);
+        long size = channel.size();
+
+        //check the header
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, InstructionTrace.HEADER_SIZE));
+        if (size < InstructionTrace.HEADER_SIZE || header.getLong() != InstructionTrace.MAGIC) {
+            channel.close();
+            System.out.printf("%s is not an instruction trace\n", traceName);
+            throw new IllegalArgumentException("not an instruction trace");
+        }
+        int version = header.getInt();
+        int recordSize = header.getInt();
+        if (version != InstructionTrace.VERSION || recordSize != InstructionTrace.RECORD_SIZE) {
+            channel.close();
+            System.out.printf("trace version %d (record size %d) is not supported\n", version, recordSize);
+            throw new IllegalArgumentException("unsupported trace version");
+        }
+
+        count = (size - InstructionTrace.HEADER_SIZE) / InstructionTrace.RECORD_SIZE;
+        index = -1;
+        windowStart = 0;
+        windowEnd = 0;
+    }
+
+    /**
+     * Move on to the next record
+     * @return false if there are no records left
+     */
+    @Override
+    public boolean advance() throws IOException {
+        if (index + 1 >= count) {
+            return false;
+        }
+        index++;
+        if (index >= windowEnd) {
+            mapWindow(index);
+        }
+        offset = (int) (index - windowStart) * InstructionTrace.RECORD_SIZE;
+        return true;
+    }
+
+    /**
+     * Getters: the fields of the current record
+     */
+    @Override
+    public long getTime() {
+        return window.getLong(offset + InstructionTrace.TIME_OFFSET);
+    }
+    public int getFloorNumber() {
+        return window.getInt(offset + InstructionTrace.FLOOR_OFFSET);
+    }
+    public int getLiftNumber() {
+        return window.getInt(offset + InstructionTrace.LIFT_OFFSET);
+    }
+    public byte getFlags() {
+        return window.get(offset + InstructionTrace.FLAGS_OFFSET);
+    }
+
+    /**
+     * @return the current record (apart from its time) as a packed instruction (see Instruction.pack())
+     */
+    @Override
+    public long getPacked() {
+        return Instruction.packTraceRecord(getFloorNumber(), getLiftNumber(), getFlags());
+    }
+
+    /**
+     * @return the current record as an Instruction
+     */
+    public Instruction getInstruction() {
+        return Instruction.unpack(getPacked(), getTime());
+    }
+
+    @Override
+    public boolean hasNext() {
+        return index + 1 < count;
+    }
+
+    @Override
+    public Instruction next() {
+        try {
+            if (!advance()) {
+                throw new NoSuchElementException();
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return getInstruction();
+    }
+
+    /**
+     * The reader is its own (single use) iterator, so that it can be used in a for-each loop
+     */
+    @Override
+    public Iterator<Instruction> iterator() {
+        return this;
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        count = 0;
+        channel.close();
+    }
+
+    /**
+     * Getter: the number of records in the trace
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * helper method: map the window of the file starting at the given record
+     */
+    private void mapWindow(long first) throws IOException {
+        long records = Math.min(WINDOW_RECORDS, count - first);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, InstructionTrace.HEADER_SIZE + first * InstructionTrace.RECORD_SIZE, records * InstructionTrace.RECORD_SIZE);
+        windowStart = first;
+        windowEnd = first + records;
+    }
+}
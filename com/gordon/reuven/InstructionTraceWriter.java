@@ -0,0 +1,91 @@
+package com.gordon.reuven;
+/**
+ * Instruction trace writer
+ * Appends instructions to a binary trace file (see InstructionTrace for the format), a buffer at a time.
+ */
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public class InstructionTraceWriter implements Closeable {
+
+    //Instance variables
+    private static final int BUFFER_RECORDS = 65536;
+
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private long count;          //number of instructions written
+
+    /**
+     * Constructor: create (or overwrite) a trace file and write its header
+     * @param traceName the name of the trace file
+     */
+    public InstructionTraceWriter(String traceName) throws IOException {
+        channel = FileChannel.open(Paths.get(traceName), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = ByteBuffer.allocateDirect(BUFFER_RECORDS * InstructionTrace.RECORD_SIZE);
+        buffer.putLong(InstructionTrace.MAGIC);
+        buffer.putInt(InstructionTrace.VERSION);
+        buffer.putInt(InstructionTrace.RECORD_SIZE);
+    }
+
+    /**
+     * Append an instruction to the trace
+     */
+    public void write(Instruction ins) throws IOException {
+        write(ins.gettime(), ins.getfloorNumber(), ins.getliftNumber(), InstructionTrace.encodeFlags(ins));
+    }
+
+    /**
+     * Append a packed instruction (see Instruction.pack())
+     */
+    public void write(long time, long packed) throws IOException {
+        write(time, Instruction.packedFloorNumber(packed), Instruction.packedLiftNumber(packed), Instruction.packedFlags(packed));
+    }
+
+    /**
+     * Append an instruction that has already been encoded
+     * @param flags see InstructionTrace.encodeFlags()
+     */
+    public void write(long time, int floorNumber, int liftNumber, byte flags) throws IOException {
+        if (buffer.remaining() < InstructionTrace.RECORD_SIZE) {
+            flush();
+        }
+        buffer.putLong(time);
+        buffer.putInt(floorNumber);
+        buffer.putInt(liftNumber);
+        buffer.put(flags);
+        buffer.put((byte) 0).put((byte) 0).put((byte) 0);
+        count++;
+    }
+
+    /**
+     * Write out everything buffered so far
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Getter: the number of instructions written
+     */
+    public long getCount() {
+        return count;
+    }
+}
@@ -2,14 +2,15 @@ package com.gordon.reuven;
 /**
  * Lift class
  */
+import java.io.PrintStream;
+
 public class Lift {
     
     //Instance variables
-    private static final String UP = "UP";
-    private static final String DOWN = "DOWN";
     private static final String BELL = "\0007";
     private static final int GROUNDFLOOR = 1;
     private static final long NANOMULTIPLIER = 1000000000;
+    private static final double FLOOR_TOLERANCE = 1e-9;
     
     private int liftNumber;
     private int numberOfFloors;
@@ -22,6 +23,10 @@ public class Lift {
     private LiftDoor door;
     private LiftMotor motor;
     private LiftButtonPanel liftButtonPanel;
+    private SimulationClock clock; //the clock used to measure how far the lift has moved since last called
+    private boolean bellEnabled;   //false when running headless- the bell is only counted
+    private PrintStream console;   //where the lift says what it is doing (null to say nothing)
+    private long bellCount;        //number of times the bell has been pinged
 
     
     /**
@@ -36,6 +41,15 @@ public class Lift {
       * @param doorOpenCloseTime int the time it takes to open and close the lift door
       */
     public Lift(int liftNumber, int numberOfFloors, double distanceBetweenFloors, double velocity, double maxDoorOpenDistance, int liftStartFloor, double doorOpenCloseThreshold, int doorOpenCloseTime) {
+        this(liftNumber, numberOfFloors, distanceBetweenFloors, velocity, maxDoorOpenDistance, liftStartFloor, doorOpenCloseThreshold, doorOpenCloseTime, new SystemClock());
+    }
+    
+    /**
+      * Constructor
+      * As above, but the lift measures time with the given clock (eg a VirtualClock for discrete event simulation)
+      * @param clock SimulationClock the clock used by the lift and its door
+      */
+    public Lift(int liftNumber, int numberOfFloors, double distanceBetweenFloors, double velocity, double maxDoorOpenDistance, int liftStartFloor, double doorOpenCloseThreshold, int doorOpenCloseTime, SimulationClock clock) {
         
         //input parameter checking
         if (numberOfFloors <= 1) {
@@ -65,6 +79,10 @@ public class Lift {
         
         //set the lift params
         this.liftNumber = liftNumber;
+        this.clock = clock;
+        bellEnabled = true;
+        bellCount = 0;
+        console = System.out;
         this.numberOfFloors = numberOfFloors;
         this.distanceBetweenFloors = distanceBetweenFloors;
         this.velocity = velocity;    
@@ -73,7 +91,7 @@ public class Lift {
         buildingHeight = numberOfFloors*distanceBetweenFloors;
         
         //Build the door
-        door = new LiftDoor(maxDoorOpenDistance, doorOpenCloseTime, liftNumber);
+        door = new LiftDoor(maxDoorOpenDistance, doorOpenCloseTime, liftNumber, clock);
         
         //Build the motor
         motor = new LiftMotor();
@@ -82,7 +100,7 @@ public class Lift {
         liftButtonPanel = new LiftButtonPanel(numberOfFloors);
         
         //Initialization
-        timeLastCalled = System.nanoTime();       
+        timeLastCalled = clock.nanoTime();       
                    
         //Set the lift state. input argument is the position from bottom
         lState = new LiftState((liftStartFloor - 1) * distanceBetweenFloors);
@@ -96,8 +114,9 @@ public class Lift {
         int multiplier;  //this is either +1 if lift going up or -1 if lift going down
         
         //find time elapsed since last called, and update the timeLastCalled
-        long elapsedTime = System.nanoTime() - timeLastCalled;
-        timeLastCalled = System.nanoTime();
+        long now = clock.nanoTime();
+        long elapsedTime = now - timeLastCalled;
+        timeLastCalled = now;
         //System.out.printf("time elapsed = %ds\n", elapsedTime/NANOMULTIPLIER);
         //Sanity check that elapsed time is positive
         if (timeLastCalled < 0) {
@@ -131,8 +150,9 @@ public class Lift {
     public LiftState updateStateSinceLastCalled() {
         
         //find time elapsed since last called, and update the timeLastCalled
-        long elapsedTime = System.nanoTime() - timeLastCalled;
-        timeLastCalled = System.nanoTime();
+        long now = clock.nanoTime();
+        long elapsedTime = now - timeLastCalled;
+        timeLastCalled = now;
         System.out.printf("time elapsed = %ds\n", elapsedTime/NANOMULTIPLIER);
         //Sanity check that elapsed time is positive
         if (timeLastCalled < 0) {
@@ -151,7 +171,9 @@ public class Lift {
             lState.setPositionFromBottom(lState.positionFromBottom() + velocity*elapsedTime/NANOMULTIPLIER);
             //if the lift hits the top floor, stop it
             if (lState.positionFromBottom() >=  buildingHeight) {
-                System.out.printf("lift position >= building height. Stopping Lift!\n");
+                if (console != null) {
+                    console.printf("lift position >= building height. Stopping Lift!\n");
+                }
                 lState.setPositionFromBottom(buildingHeight);
                 //stop the lift. But may want to do this from the LC
                 stop();
@@ -164,7 +186,9 @@ public class Lift {
             lState.setPositionFromBottom(lState.positionFromBottom() - velocity*elapsedTime/NANOMULTIPLIER);
             //if the lift hits the bottom floor, stop it
             if (lState.positionFromBottom() <=  0) {
-                System.out.printf("lift position <= ground floor. Stopping Lift!\n");
+                if (console != null) {
+                    console.printf("lift position <= ground floor. Stopping Lift!\n");
+                }
                 lState.setPositionFromBottom(0);
                 //stop the lift. But may want to do this from the LC
                 stop();
@@ -200,7 +224,9 @@ public class Lift {
         
         //if the lift is already going down, do nothing BUT return false (as cannot change the lift direction)
         if (lState.isGoingDown()) {
-            System.out.printf("Trying to make the lift go up when it's going down. Fail!\n");            
+            if (console != null) {
+                console.printf("Trying to make the lift go up when it's going down. Fail!\n");
+            }
         }        
         return false;
     }
@@ -231,7 +257,9 @@ public class Lift {
         
         //if the lift is already going up, do nothing BUT return false (as cannot change the lift direction)
         if (lState.isGoingUp()) {
-            System.out.printf("Trying to make the lift go down when it's going up. Fail!\n");    
+            if (console != null) {
+                console.printf("Trying to make the lift go down when it's going up. Fail!\n");
+            }
         }   
         return false;
     }
@@ -245,38 +273,82 @@ public class Lift {
         lState.setStationary();
     }
     
+    /**
+     * Put the lift exactly at the given floor and stop it
+     * Used by the discrete event simulator once the lift is due to arrive, so that rounding in the elapsed time
+     * can't leave the lift a fraction of a mm on the wrong side of the floor
+     * @param thisFloor the floor the lift has arrived at
+     */
+    public void settleAtFloor(int thisFloor) {
+        floorCheck(thisFloor);
+        
+        stop();
+        lState.setPositionFromBottom((thisFloor - 1) * distanceBetweenFloors);
+    }
+    
     /**
      * Open the door
      * Can only open the door if the lift is stationary AND the lift is at a floor
+     * This only starts the door cycle (opening, dwell, closing). Call updateDoor() to move the door on.
      * @return true if door can be opened
      */
     public boolean openDoor() {
         if (lState.isStationary() && canOpenCloseDoorAtFloor(getCurrentFloor())) {
-            door.open();
-            return true;
+            return door.open();
         }
         else {
-            System.out.printf("cannot open door!!\n");
-            System.out.printf("lState.isStationary() = %b, getCurrentFloor() = %d, canOpenCloseDoorAtFloor(getCurrentFloor()) = %b\n", lState.isStationary(), getCurrentFloor(), canOpenCloseDoorAtFloor(getCurrentFloor()));
+            if (console != null) {
+                console.printf("cannot open door!!\n");
+                console.printf("lState.isStationary() = %b, getCurrentFloor() = %d, canOpenCloseDoorAtFloor(getCurrentFloor()) = %b\n", lState.isStationary(), getCurrentFloor(), canOpenCloseDoorAtFloor(getCurrentFloor()));
+            }
             return false;
         }
     }
     
     /**
      * Close the door
+     * Starts closing the door straight away rather than waiting for the end of the dwell
      * Can only close the door if the lift is stationary
      * @return true if door can be closed
      */
     public boolean closeDoor() {
         if (lState.isStationary()) {
-            door.close();
-            return true;
+            return door.close();
         }
         else {
-            System.out.printf("cannot close door!!\n");
+            if (console != null) {
+                console.printf("cannot close door!!\n");
+            }
             return false;
         }
     }
+    
+    /**
+     * Move the door on to where it should be at the current time
+     * @return true once the door is closed
+     */
+    public boolean updateDoor() {
+        door.update();
+        return door.isClosed();
+    }
+    
+    /**
+     * Set the time the door stays fully open before it starts closing
+     * @param doorDwellTime int time in ms
+     */
+    public void setDoorDwellTime(int doorDwellTime) {
+        door.setDoorDwellTime(doorDwellTime);
+    }
+    
+    /**
+     * Set where the lift, its door and its button panel say what they are doing (see LiftController.setConsole())
+     * @param console the stream to print to, or null to print nothing
+     */
+    public void setConsole(PrintStream console) {
+        this.console = console;
+        door.setConsole(console);
+        liftButtonPanel.setConsole(console);
+    }
    
     /** 
      * LC to select a floor to go to from the lift
@@ -305,31 +377,36 @@ public class Lift {
      * ping the bell
      */
     public void pingBell() {
+        bellCount++;
+        //when running headless, don't touch AWT- just count the ping
+        if (!bellEnabled) {
+            return;
+        }
         // ASCII bell
         //System.out.print(BELL);
         java.awt.Toolkit.getDefaultToolkit().beep();
         System.out.flush();        
     }
     
+    /**
+     * Turn the bell on or off. When off, pingBell() only counts the pings
+     */
+    public void setBellEnabled(boolean bellEnabled) {
+        this.bellEnabled = bellEnabled;
+    }
+    
     /**
      * helper method to consistency check the LiftState and the Motor state
      */
     private static boolean motorAndLiftStateCheck(LiftState l, LiftMotor m) {
-        //if stationary, the motor should be off
-        if (l.isStationary()) {
-            return !m.getMotorState();
-        }
-        
-        //if going UP, the motor should be going up
-        if (l.isGoingUp()) {
-            return m.getMotorDirection() == UP;
-        }
-        
-        //if going DOWN, the motor should be going down
-        if (l.isGoingDown()) {
-            return m.getMotorDirection() == DOWN;
+        switch (l.getDirection()) {
+            //if stationary, the motor should be off
+            case NONE: return !m.getMotorState();
+            //if going UP/DOWN, the motor should be going up/down
+            case UP:   return m.getMotorDirection() == Direction.UP;
+            case DOWN: return m.getMotorDirection() == Direction.DOWN;
+            default:   return false;
         }
-        return false;
     }
     
     /**
@@ -340,6 +417,38 @@ public class Lift {
     	return liftNumber;
     }
     
+    /**
+     * Getter:
+     * @return the number of times the bell has been pinged
+     */
+    public long getBellCount() {
+        return bellCount;
+    }
+    
+    /**
+     * Getter:
+     * @return the velocity of the lift in m/s
+     */
+    public double getVelocity() {
+        return velocity;
+    }
+    
+    /**
+     * Getter:
+     * @return the time it takes to open (or close) the door in ms
+     */
+    public int getDoorOpenCloseTime() {
+        return door.getDoorOpenCloseTime();
+    }
+
+    /**
+     * Getter:
+     * @return the time the door stays fully open before it starts closing in ms
+     */
+    public int getDoorDwellTime() {
+        return door.getDoorDwellTime();
+    }
+    
     /**
      * Getter: 
      * @return the state of the lift
@@ -357,6 +466,30 @@ public class Lift {
         else return false;        
     }
     
+    /**
+     * Getter: 
+     * @return is the door fully closed
+     */
+    public boolean isDoorClosed() {
+        return door.isClosed();
+    }
+    
+    /**
+     * Getter: 
+     * @return the time [ns] at which the door next changes state (finishes opening, dwelling or closing), or -1 if the door is closed
+     */
+    public long getDoorNextTransitionTime() {
+        return door.getNextTransitionTime();
+    }
+    
+    /**
+     * Getter: 
+     * @return the time [ns] at which the door will be closed again, or -1 if the door is closed
+     */
+    public long getDoorClosedTime() {
+        return door.getClosedTime();
+    }
+    
     /**
      * Getter: 
      * @return the position of the lift above the ground
@@ -369,7 +502,8 @@ public class Lift {
      * @return current floor (useful for the display in the lift)
      */
     public int getCurrentFloor() {
-        return GROUNDFLOOR + (int) (getPosition()/distanceBetweenFloors);
+        //allow a tiny tolerance so that a lift sitting exactly on a floor isn't rounded down to the floor below
+        return GROUNDFLOOR + (int) (getPosition()/distanceBetweenFloors + FLOOR_TOLERANCE);
     }
     
     /**
@@ -395,6 +529,17 @@ public class Lift {
         return (getCurrentFloor() == thisFloor && Math.abs(getPositionFromFloor(thisFloor)) < doorOpenCloseThreshold);        
     }
     
+    /**
+     * Time for the lift to travel from where it is now to a given floor at its velocity (no stops on the way)
+     * @param thisFloor the floor to travel to
+     * @return the travel time in ns
+     */
+    public long timeToReachFloor(int thisFloor) {
+        floorCheck(thisFloor);
+        
+        return (long) Math.ceil(Math.abs(getPositionFromFloor(thisFloor)) / velocity * NANOMULTIPLIER);
+    }
+    
     /**
      * @return the next floor the lift will get to if it is currently moving.
      * If not moving, return current floor
@@ -417,7 +562,9 @@ public class Lift {
         
         //sanity check- if at the top/bottom floor, simply return this floor
         if (result < 0 || result > numberOfFloors) {
-            System.out.printf("\nLift %d: next floor of %d is invalid. current floor = %d\n", liftNumber, result, getCurrentFloor());
+            if (console != null) {
+                console.printf("\nLift %d: next floor of %d is invalid. current floor = %d\n", liftNumber, result, getCurrentFloor());
+            }
             return getCurrentFloor();
         }
         return result;
@@ -2,11 +2,14 @@ package com.gordon.reuven;
 /**
  * Lift button panel class
  */
+import java.io.PrintStream;
+
 public class LiftButtonPanel {
     
     //Instance variables
     private int numberOfFloors;
     private boolean[] selectedFloors;  //if a floor in the lift has been selected, mark it as true
+    private PrintStream console;       //where the panel says what it is doing (null to say nothing)
     
     /**
      * Constructor
@@ -14,6 +17,14 @@ public class LiftButtonPanel {
     public LiftButtonPanel(int numberOfFloors) {
         this.numberOfFloors = numberOfFloors;
         selectedFloors = new boolean[numberOfFloors + 1]; //the +1 is to avoid having to subtract 1 from the level arguement as the ground floor = level 1
+        console = System.out;
+    }
+    
+    /**
+     * Set where the panel says what it is doing, or null to say nothing
+     */
+    public void setConsole(PrintStream console) {
+        this.console = console;
     }
     
     /**
@@ -25,7 +36,9 @@ public class LiftButtonPanel {
         checkFloor(floor);
         
         if (selectedFloors[floor]) {
-            System.out.printf("floor %d has already been selected\n", floor);
+            if (console != null) {
+                console.printf("floor %d has already been selected\n", floor);
+            }
         }
         else selectedFloors[floor] = true;
     }
@@ -39,7 +52,9 @@ public class LiftButtonPanel {
         checkFloor(floor);
         
         if (!selectedFloors[floor]) {
-            System.out.printf("floor %d has already been UNselected\n", floor);
+            if (console != null) {
+                console.printf("floor %d has already been UNselected\n", floor);
+            }
         }
         else selectedFloors[floor] = false;
     }
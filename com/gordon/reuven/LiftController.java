@@ -2,27 +2,30 @@ package com.gordon.reuven;
 /**
  * Lift Controller class
  */
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class LiftController implements Subject {
     
     //Instance variables   
     private static final int NULL_LIFT = -1;
-    private static final String NULL_DIRECTION = "";
-    private static final String METHOD_ORIGIN_FROM_LIFT = "methodFromLift";
-    private static final String METHOD_ORIGIN_FROM_FLOOR = "methodFromFloor";
-    private static final String ORIGIN_FROM_LIFT = "fromLift";
-    private static final String ORIGIN_FROM_FLOOR = "fromFloor";
-    private static final String ORIGIN_FROM_LC = "fromLC";
-    private static final String SELECT_UP = "UP";
-    private static final String SELECT_DOWN = "DOWN";
+    private static final int NULL_FLOOR = -1;
+    private static final long MAX_PARK_TIME = 100000000;    //the longest a parked idle lift thread waits before checking for work again [ns]
+    private static final long MAX_MOVE_PARK_TIME = 10000000; //the longest a moving lift thread waits before updating its position again [ns]
+    private static final long MILLIMULTIPLIER = 1000000;
    
     private List<Observer> observers;  //This is the list of observer objects from the GUI
     private final Object MUTEX= new Object();
-    private boolean changed;    //keep track of the change in the state of LC and used in notifying observers
+    private volatile boolean changed;    //keep track of the change in the state of LC and used in notifying observers
     
     private int numberOfFloors;
     private int numberOfLifts;
@@ -30,55 +33,143 @@ public class LiftController implements Subject {
     private double distanceBetweenFloors;
     private double buildingHeight;
     private Floor[] floors;
+    private FleetState fleet;                     //Position, direction, current and next floor and ETA of every lift, in lift indexed arrays. The floor displays are views of it
+    private TravelTimeModel travelTimes;          //How long the lifts take between floors and at each stop, shared by the optimiser and the ETAs
+    private EtaEngine etas;                       //When each lift gets to each floor on its plan. The fleet state gives the floor displays their ETAs from it
     private Lift[] lifts;
-    private boolean[][] selectionsFromFloor;      //This array has numberOfFloors rows x 2 cols (UP/DOWN). It tells us whether a floor has selected the UP/DOWN button. true == selected, false == unselected
-    private boolean[][] selectionsFromLift;       //This array has numberOfFloors rows x numberOfLifts cols.  It tells us whether a lift has selected a floor. true == selected, false == unselected
-    private Queue<Instruction> instructionLog;    //This will be a queue of all instructions passed to the Lift Controller. Useful for debugging.
+    private SelectionStore selections;            //Which floors have selected the UP/DOWN button, and which floors each lift has selected, as bitsets by floor
+    private InstructionLog instructionLog;        //The most recent instructions passed to (or made by) the Lift Controller, timed from when the LC was built. Useful for debugging.
     private Queue<Node>[] liftNopoll;          //An array which stores a queue for each lift. The queue holds nodes which tell the lift where to go. This queue is the result from mapping the selection arrays to a set of floors for the lift to visit
-    private int[][] currentAndNextFloorsForLifts; //This array has 2 rows x numberOfLifts cols. It tells us which floor a lift is currently at (row 1) and what is the next floor for it to visit (row 2)            
+    private OptimiserAlgo optimiser;              //Keeps the queues up to date as calls are made and served. Only a full re-match (doMatching()) replaces it
+    private final Object PLAN_LOCK = new Object(); //The optimiser updates the queues in place, so they are only read or changed whilst holding this. The lifts and the GUI read the published plans instead
+    private ReentrantLock[] liftCallLocks;        //One lock per lift, held whilst a floor is (un)selected in it and the change passed on to be planned, so the changes to a call are planned in order
+    private ReentrantLock[] floorCallLocks;       //The same for the UP/DOWN buttons, one lock per floor. Calls on different floors and in different lifts only wait for each other on PLAN_LOCK, and only when there is no background planner
+    private ReentrantLock batchLock;              //Held whilst executing a batch of instructions (one batch at a time, as a batch holds the call locks it takes until it is planned)
+    private LongAdder callChanges;                //The number of changes made to the selections (counted per thread, so presses on different threads don't share it)
+    private AtomicLong callChangesPlanned;        //The number of those changes the optimiser has been given. The queues should match the selections when they are the same
+    private AtomicReferenceArray<LiftPlan> plans; //The plan each lift follows: an immutable copy of its queue, replaced whenever the queue changes. Read without locking
+    private AtomicLong planVersion;               //Incremented every time the plans are published with at least one of them changed
+    private boolean checkPlans;                   //Compare the queues with a full re-match after every change (for debugging)
+    private int planningWindow;                   //Plan on a background thread, batching the changes that arrive within this many ms. -1 -> plan on the calling thread
+    private volatile LiftPlanner planner;         //The background planner (null if planning on the calling thread or not started)
+    private final ThreadLocal<Batch> batch = new ThreadLocal<Batch>(); //The batch of instructions the thread is executing, if any
+    private SimulationClock clock;                //The clock used by the lifts. The wall clock when running the GUI, a VirtualClock when running a discrete event simulation
+    private long startTime;                       //The time on the clock when the LC was built [ns]
+    private LiftTickScheduler tickScheduler;      //Steps the lifts at a fixed rate on a shared pool (null if each lift has its own thread)
+    private ReentrantLock[] liftLocks;            //One lock per lift. An idle lift thread waits on its lock's condition until it is given work
+    private Condition[] liftWork;                 //Signalled when a lift is given work
+    private boolean[] workPending;                //Set (under the lift lock) when a lift is given work, so that a wakeup can't be missed
+    private long[] parks;                         //Number of times each lift thread has parked
+    private long[] wakeups;                       //Number of times each parked lift thread was woken by new work (rather than timing out)
+    private Node[] nodesBeingServed;              //The node each lift is at a floor for, whilst its doors open and close (null if not at a floor)
+    private boolean virtualThreads;               //Run the lift threads on virtual threads rather than platform threads
+    private LiftThreadFactory threadFactory;      //Makes the lift threads (and instruction producer threads) once the LC is started
+    private volatile boolean running;             //The lift threads keep going until this is false
+    private boolean verbose;                      //Print the details of every instruction as it is executed
+    private PrintStream console;                  //Where the LC, its floors, lifts and optimiser say what they are doing (null to say nothing)
     
     /**
      * Constructor: Build the LC, floors and lifts
      */
     public LiftController(int numberOfFloors, int numberOfLifts, double distanceBetweenFloors, double velocity, double maxDoorOpenDistance, int liftStartFloor, double doorOpenCloseThreshold, int doorOpenCloseTime, int matchingAlgorithm) {
+        this(numberOfFloors, numberOfLifts, distanceBetweenFloors, velocity, maxDoorOpenDistance, liftStartFloor, doorOpenCloseThreshold, doorOpenCloseTime, matchingAlgorithm, new SystemClock());
+    }
+    
+    /**
+     * Constructor: Build the LC, floors and lifts, with the lifts measuring time on the given clock
+     */
+    public LiftController(int numberOfFloors, int numberOfLifts, double distanceBetweenFloors, double velocity, double maxDoorOpenDistance, int liftStartFloor, double doorOpenCloseThreshold, int doorOpenCloseTime, int matchingAlgorithm, SimulationClock clock) {
+        this(numberOfFloors, numberOfLifts, distanceBetweenFloors, velocity, maxDoorOpenDistance, liftStartFloor, doorOpenCloseThreshold, doorOpenCloseTime, matchingAlgorithm, clock, System.out);
+    }
+    
+    /**
+     * Constructor: as above, with the LC, floors, lifts and optimiser saying what they are doing on the given stream from the start (see setConsole())
+     */
+    public LiftController(int numberOfFloors, int numberOfLifts, double distanceBetweenFloors, double velocity, double maxDoorOpenDistance, int liftStartFloor, double doorOpenCloseThreshold, int doorOpenCloseTime, int matchingAlgorithm, SimulationClock clock, PrintStream console) {
         
         int i;
+        this.clock = clock;
+        startTime = clock.nanoTime();
         this.observers = new ArrayList<Observer>();
         this.numberOfFloors = numberOfFloors;
         this.numberOfLifts = numberOfLifts;
         this.distanceBetweenFloors = distanceBetweenFloors;
         this.matchingAlgorithm = matchingAlgorithm;    
+        verbose = true;
+        this.console = console;
+        planningWindow = -1;
         buildingHeight = numberOfFloors*distanceBetweenFloors;
         
         //Build the floors- Set the 0th element to be null for simplicity.
+        //The floor displays show the fleet state, which has one entry per lift however many floors there are
+        fleet = new FleetState(numberOfLifts, liftStartFloor, distanceBetweenFloors);
         floors = new Floor[numberOfFloors + 1];
         for (i = 1; i <= numberOfFloors; i++) {
-            floors[i] = new Floor(i, numberOfFloors, numberOfLifts, liftStartFloor);
+            floors[i] = new Floor(i, numberOfFloors, fleet);
+            floors[i].setConsole(console);
         }
         
         //Build the lifts- Set the 0th element to be null for simplicity.
         //Also build the lift node queues (the mapping from the selection arrays to the queue of floors to visit for each lift)
         lifts = new Lift[numberOfLifts + 1];
-        liftNopoll = new Queue[numberOfLifts + 1]; //(Queue<Node>[]) new Object[numberOfLifts + 1];
         for (i = 1; i <= numberOfLifts; i++) {
-            lifts[i] = new Lift(i, numberOfFloors, distanceBetweenFloors, velocity, maxDoorOpenDistance, liftStartFloor, doorOpenCloseThreshold, doorOpenCloseTime);
-            liftNopoll[i] = new LinkedList<Node>();
+            lifts[i] = new Lift(i, numberOfFloors, distanceBetweenFloors, velocity, maxDoorOpenDistance, liftStartFloor, doorOpenCloseThreshold, doorOpenCloseTime, clock);
+            lifts[i].setConsole(console);
+        }
+        
+        //Work out when the lifts get to the floors as they follow their plans
+        travelTimes = buildTravelTimes();
+        etas = new EtaEngine(numberOfLifts, numberOfFloors, liftStartFloor, clock);
+        etas.setTravelTimeModel(travelTimes);
+        fleet.setEtaEngine(etas);
+        
+        //Initialise the selections: bit n is floor n
+        selections = new SelectionStore(numberOfFloors, numberOfLifts);
+        
+        //Build the optimiser and its (empty) lift node queues
+        optimiser = createOptimiser(selections, matchingAlgorithm);
+        optimiser.optimise();
+        liftNopoll = optimiser.getOptimisedNodesAll();
+        
+        //and the (empty) plans the lifts follow
+        plans = new AtomicReferenceArray<LiftPlan>(numberOfLifts + 1);
+        for (i = 1; i <= numberOfLifts; i++) {
+            plans.set(i, LiftPlan.EMPTY);
         }
+        planVersion = new AtomicLong();
         
-        //Initialise the selections arrays: the "+1's" are to eg allow us to reference floor 1 with row 1 (rather than row 0)
-        selectionsFromFloor = new boolean[numberOfFloors + 1][2];
-        selectionsFromLift = new boolean[numberOfFloors + 1][numberOfLifts + 1];
+        //Build the locks for the calls
+        liftCallLocks = new ReentrantLock[numberOfLifts + 1];
+        for (i = 1; i <= numberOfLifts; i++) {
+            liftCallLocks[i] = new ReentrantLock();
+        }
+        floorCallLocks = new ReentrantLock[numberOfFloors + 1];
+        for (i = 1; i <= numberOfFloors; i++) {
+            floorCallLocks[i] = new ReentrantLock();
+        }
+        batchLock = new ReentrantLock();
+        callChanges = new LongAdder();
+        callChangesPlanned = new AtomicLong();
         
-        //Initialise the instruction queue
-        instructionLog = new LinkedList<Instruction>();
+        //Initialise the instruction log
+        instructionLog = new InstructionLog(InstructionLog.DEFAULT_CAPACITY);
         
-        //Build the currentAndNextFloorsForLifts array- this is to be used for debugging
-        currentAndNextFloorsForLifts = new int[2][numberOfLifts + 1];            
+        //Build the locks used to park idle lift threads
+        liftLocks = new ReentrantLock[numberOfLifts + 1];
+        liftWork = new Condition[numberOfLifts + 1];
+        for (i = 1; i <= numberOfLifts; i++) {
+            liftLocks[i] = new ReentrantLock();
+            liftWork[i] = liftLocks[i].newCondition();
+        }
+        workPending = new boolean[numberOfLifts + 1];
+        parks = new long[numberOfLifts + 1];
+        wakeups = new long[numberOfLifts + 1];
+        nodesBeingServed = new Node[numberOfLifts + 1];
     }
     
     /**
      * Inner class to spin off each lift onto a new thread
-     * This will allow us to do things like pause a thread to open/close a door on lift X without interrupting the other lifts
+     * This will allow us to do things like wait for a door on lift X to open/close without interrupting the other lifts
      */
     private class LiftThread implements Runnable {
 
@@ -94,17 +185,101 @@ public class LiftController implements Subject {
     	
     	@Override
     	public void run() {
-	      //Now run the infinite loop to call the various LC tasks
-	      while (true) {
+	      //Now run the loop to call the various LC tasks until the LC is stopped
+	      while (running) {
 	          runInEachLoop(l); 
 	          
 	          //update the observers            
 	          notifyObservers();
+	          
+	          //wait until there is something to do rather than spinning
+	          parkLift(l);
 	      }
     	}
 
     }
     
+    /**
+     * Inner class for a batch of instructions being executed (see executeInstructions()): the changes to plan once it has been executed,
+     * and the locks of the calls it has changed, which are held until then
+     */
+    private static class Batch {
+        private List<LiftPlanner.CallChange> changes = new ArrayList<LiftPlanner.CallChange>();
+        private List<ReentrantLock> locks = new ArrayList<ReentrantLock>();
+    }
+    
+    /**
+     * Park the calling lift thread until the lift next has something to do. A lift that is
+     * - idle (stationary with an empty queue) waits for work, for at most MAX_PARK_TIME
+     * - waiting for its doors waits until they next move
+     * - moving waits until it reaches the floor it is heading for, for at most MAX_MOVE_PARK_TIME
+     * The thread is woken early by wakeLifts() as soon as doMatching() gives the lift some work
+     * These are blocking waits on a ReentrantLock, which (unlike synchronized) don't pin a virtual thread to its carrier
+     * @param l is the lift whose thread is parking
+     */
+    public void parkLift(Lift l) {
+        
+        int liftNumber = l.getLiftNumber();
+        long parkTime;
+        
+        if (nodesBeingServed[liftNumber] != null) {
+            //a lift at a floor has nothing to do until its doors next move
+            parkTime = Math.min(MAX_PARK_TIME, l.getDoorNextTransitionTime() - clock.nanoTime());
+        }
+        else if (!l.getState().isStationary() && getNextFloorToVisit(liftNumber) != NULL_FLOOR) {
+            //a moving lift has nothing to do until it reaches its floor
+            parkTime = Math.min(MAX_MOVE_PARK_TIME, l.timeToReachFloor(getNextFloorToVisit(liftNumber)));
+        }
+        else {
+            parkTime = MAX_PARK_TIME;
+        }
+        
+        liftLocks[liftNumber].lock();
+        try {
+            //only park if no work has arrived since the lift was last guided
+            if (!workPending[liftNumber] && parkTime > 0 && running) {
+                parks[liftNumber]++;
+                try {
+                    liftWork[liftNumber].awaitNanos(parkTime);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                if (workPending[liftNumber]) {
+                    wakeups[liftNumber]++;
+                }
+            }
+            workPending[liftNumber] = false;
+        }
+        finally {
+            liftLocks[liftNumber].unlock();
+        }
+    }
+    
+    /**
+     * Wake the threads of any parked lifts that have nodes to visit
+     */
+    private void wakeLifts() {
+        for (int i = 1; i <= numberOfLifts; i++) {
+            if (getNextFloorToVisit(i) != NULL_FLOOR) {
+                wakeLift(i);
+            }
+        }
+    }
+    
+    /**
+     * Wake the thread of a parked lift
+     */
+    private void wakeLift(int liftNumber) {
+        liftLocks[liftNumber].lock();
+        try {
+            workPending[liftNumber] = true;
+            liftWork[liftNumber].signalAll();
+        }
+        finally {
+            liftLocks[liftNumber].unlock();
+        }
+    }
+    
     /**
      * Implement the Subject interface
      */
@@ -138,6 +313,16 @@ public class LiftController implements Subject {
         }
     }
     
+    /**
+     * helper method: note a change in the state of the LC, for notifyObservers(). Only written if it isn't already noted, so threads
+     * pressing buttons at the same time don't all keep writing the same field
+     */
+    private void markChanged() {
+        if (!changed) {
+            changed = true;
+        }
+    }
+    
     /**
      * This is the method to call when the UP/DOWN button is (UN)selected at a certain floor
      * @param thisFloor is the floor that the button is pressed
@@ -146,6 +331,21 @@ public class LiftController implements Subject {
      * @return the selection choice. this can be used in the GUI to indicate whether the button is pressed or not
      */
     public boolean selectFromFloor(int thisFloor, String direction, boolean selection) {
+        return selectFromFloor(thisFloor, Direction.fromLabel(direction), selection);
+    }
+    
+    /**
+     * As above, with the direction as an enum
+     */
+    public boolean selectFromFloor(int thisFloor, Direction direction, boolean selection) {
+        return selectFromFloor(thisFloor, direction, selection, NULL_LIFT);
+    }
+    
+    /**
+     * As above
+     * @param servedBy the lift that has served the call, if it is being unselected because a lift has been to the floor. Otherwise NULL_LIFT
+     */
+    private boolean selectFromFloor(int thisFloor, Direction direction, boolean selection, int servedBy) {
         
         //Check the floor
         floorCheck(thisFloor);
@@ -153,49 +353,68 @@ public class LiftController implements Subject {
         //Check the direction
         directionCheck(direction);
         
-        String origin;  //This is where the origin of the instruction comes from. if selection == true, it must come from the floor, otherwise it comes from the LC
+        Instruction.Origin origin;  //This is where the origin of the instruction comes from. if selection == true, it must come from the floor, otherwise it comes from the LC
         
         //Add to the instruction log 
-        if (selection) origin = ORIGIN_FROM_FLOOR;
-        else origin = ORIGIN_FROM_LC;    
-        instructionLog.add(new Instruction(METHOD_ORIGIN_FROM_FLOOR, origin, thisFloor, NULL_LIFT, direction, selection));
+        if (selection) origin = Instruction.Origin.FROM_FLOOR;
+        else origin = Instruction.Origin.FROM_LC;    
+        instructionLog.add(Instruction.pack(Instruction.MethodOrigin.FROM_FLOOR, origin, thisFloor, NULL_LIFT, direction, selection), logTime());
         
-        //Update the display on the floor
-        if (selection) {
-            if (direction.equals(SELECT_UP)) {
-                floors[thisFloor].selectUp();
+        //Update the display on the floor, the selections arrays and the queues of nodes to visit for the lift this call affects, holding
+        //the lock for this floor's calls so that the changes to a call are planned in the order they are made
+        ReentrantLock callLock = lockCall(floorCallLocks[thisFloor]);
+        try {
+            if (selection) {
+                if (direction == Direction.UP) {
+                    floors[thisFloor].selectUp();
+                }
+                else floors[thisFloor].selectDown();
             }
-            else floors[thisFloor].selectDown();
-        }
-        else {
-            if (direction.equals(SELECT_UP)) {
-                floors[thisFloor].unselectUp();
+            else {
+                if (direction == Direction.UP) {
+                    floors[thisFloor].unselectUp();
+                }
+                else floors[thisFloor].unselectDown();
             }
-            else floors[thisFloor].unselectDown();
-        }
-        
-        //Update the selections arrays
-        if (direction.equals(SELECT_UP)) {
-            //Check for the top floor
-            if (thisFloor != numberOfFloors) {
-                selectionsFromFloor[thisFloor][0] = selection;
+            
+            boolean selectionChanged = false;
+            if (direction == Direction.UP) {
+                //Check for the top floor
+                if (thisFloor != numberOfFloors) {
+                    selectionChanged = selections.isFromFloor(thisFloor, Direction.UP) != selection;
+                }
+                else if (console != null) {
+                    console.printf("Can't go UP from the top floor!\n");
+                }
             }
-            else System.out.printf("Can't go UP from the top floor!\n");
-        }
-        else {
-            //Check for the bottom floor
-            if (thisFloor != 1) {
-                selectionsFromFloor[thisFloor][1] = selection;
+            else {
+                //Check for the bottom floor
+                if (thisFloor != 1) {
+                    selectionChanged = selections.isFromFloor(thisFloor, Direction.DOWN) != selection;
+                }
+                else if (console != null) {
+                    console.printf("Can't go DOWN from the bottom floor!\n");
+                }
+            }
+            
+            if (selectionChanged) {
+                callChanges.increment();
+                selections.setFromFloor(thisFloor, direction, selection);
+                replan(new Node(thisFloor, false, direction == Direction.UP, direction == Direction.DOWN), servedBy, selection, servedBy != NULL_LIFT);
+            }
+            else if (servedBy != NULL_LIFT) {
+                //another lift has already served the call (eg both were at the floor for it). This one has still taken the stop
+                synchronized (PLAN_LOCK) {
+                    forgetStop(new Node(thisFloor, false, direction == Direction.UP, direction == Direction.DOWN), servedBy);
+                }
             }
-            else System.out.printf("Can't go DOWN from the bottom floor!\n");
         }
-        
-        //Run the matching algorithm to map the selections arrays to the queues of nodes to visit for each lift  
-        //System.out.printf("matchingAlgorithm = %d\n", matchingAlgorithm);
-        doMatching(matchingAlgorithm);
+        finally {
+            unlockCall(callLock);
+        }
         
         //use this to notify observers of a change
-        changed = true;
+        markChanged();
         
         return selection;
     }
@@ -208,8 +427,16 @@ public class LiftController implements Subject {
      * @return the selection choice. this can be used in the GUI to indicate whether the button is pressed or not
      */
     public boolean selectFromLift(int thisLift, int floorToVisit, boolean selection) {
+        return selectFromLift(thisLift, floorToVisit, selection, false);
+    }
+    
+    /**
+     * As above
+     * @param served true if the floor is being unselected because the lift has been there
+     */
+    private boolean selectFromLift(int thisLift, int floorToVisit, boolean selection, boolean served) {
         
-        String origin;  //This is where the origin of the instruction comes from. if selection == true, it must come from the lift, otherwise it comes from the LC
+        Instruction.Origin origin;  //This is where the origin of the instruction comes from. if selection == true, it must come from the lift, otherwise it comes from the LC
         
         //Validate the inputs
         if (thisLift <= 0 || thisLift > numberOfLifts) {
@@ -223,25 +450,31 @@ public class LiftController implements Subject {
         }
         
         //Add to the instruction log   
-        if (selection) origin = ORIGIN_FROM_LIFT;
-        else origin = ORIGIN_FROM_LC;            
-        instructionLog.add(new Instruction(METHOD_ORIGIN_FROM_LIFT, origin, floorToVisit, thisLift, NULL_DIRECTION, selection));
+        if (selection) origin = Instruction.Origin.FROM_LIFT;
+        else origin = Instruction.Origin.FROM_LC;            
+        instructionLog.add(Instruction.pack(Instruction.MethodOrigin.FROM_LIFT, origin, floorToVisit, thisLift, Direction.NONE, selection), logTime());
         
-        //Update the display in the lift
-        if (selection) {
-            lifts[thisLift].selectFloor(floorToVisit);
+        //Update the display in the lift, the selections arrays and the queue of nodes to visit for this lift, holding the lock for this
+        //lift's calls (as above)
+        ReentrantLock callLock = lockCall(liftCallLocks[thisLift]);
+        try {
+            if (selection) {
+                lifts[thisLift].selectFloor(floorToVisit);
+            }
+            else lifts[thisLift].unselectFloor(floorToVisit);
+            
+            if (selections.isFromLift(floorToVisit, thisLift) != selection) {
+                callChanges.increment();
+                selections.setFromLift(floorToVisit, thisLift, selection);
+                replan(new Node(floorToVisit, true, false, false), thisLift, selection, served);
+            }
+        }
+        finally {
+            unlockCall(callLock);
         }
-        else lifts[thisLift].unselectFloor(floorToVisit);
-        
-        //Update the selections arrays
-        selectionsFromLift[floorToVisit][thisLift] = selection;
-        
-        //Run the matching algorithm to map the selections arrays to the queues of nodes to visit for each lift       
-        //System.out.printf("matchingAlgorithm = %d\n", matchingAlgorithm);
-        doMatching(matchingAlgorithm);
         
         //use this to notify observers of a change
-        changed = true;
+        markChanged();
         
         return selection;
     }        
@@ -251,15 +484,28 @@ public class LiftController implements Subject {
      * Allow an input with an instruction log that will be executed.  if we dont want to use this, input an empty queue
      */
     public void StartLiftController(Queue<Instruction> instructionLogInput) {  //note the arguement can be empty. supplying an iterable allows me to test many selections without sensors.
+        StartLiftController(instructionLogInput, 0, 0);
+    }
+    
+    /**
+     * Run the lift program, as above
+     * If tickRate > 0 the lifts are stepped tickRate times a second on a shared pool of tickThreads threads (see LiftTickScheduler).
+     * Otherwise each lift gets its own thread running the loop as fast as it can.
+     * @param tickRate number of ticks per second, or 0 to run a thread per lift
+     * @param tickThreads number of threads shared by the lifts when ticking
+     */
+    public void StartLiftController(Queue<Instruction> instructionLogInput, int tickRate, int tickThreads) {
+        
+        if (console != null) {
+            console.printf("instructionLogInput size = %d\n", instructionLogInput.size());
+        }
         
-        System.out.printf("instructionLogInput size = %d\n", instructionLogInput.size());
+        //Start the background planner before any calls are made
+        startPlanner();
         
-        //if an input arguement was supplied, add the instructions into the lift controller
+        //if an input arguement was supplied, add the instructions into the lift controller (as one batch, so they are planned once)
         if (!instructionLogInput.isEmpty()) {
-            for (Instruction ins : instructionLogInput) {
-                
-                executeInstruction(ins);
-            }
+            executeInstructions(instructionLogInput);
         }
         
 //        boolean stopRunning = false;
@@ -271,14 +517,124 @@ public class LiftController implements Subject {
 //            notifyObservers();
 //        }
         
-        //Create a new thread for each lift.  in each thread, run the infinite loop        
+        //Tick all the lifts on a shared pool
+        if (tickRate > 0) {
+            tickScheduler = new LiftTickScheduler(this, tickRate, tickThreads);
+            tickScheduler.start();
+            return;
+        }
+        
+        //Create a new thread for each lift.  in each thread, run the loop until the LC is stopped
+        running = true;
         for (int i = 1; i <= lifts.length - 1; i++) {
         	
-        	(new Thread(new LiftThread(lifts[i]))).start();
+        	getThreadFactory().newThread(new LiftThread(lifts[i])).start();
         	
         }
     }
     
+    /**
+     * Start the background planner, if there is to be one (see setPlanningWindow()) and it hasn't been started. StartLiftController() does
+     * this: it is only needed to make calls with the planner running but the lifts not (see SelectionStressCheck)
+     */
+    void startPlanner() {
+        if (planningWindow >= 0 && planner == null) {
+            planner = new LiftPlanner(this, planningWindow);
+            getThreadFactory().newThread(planner).start();
+        }
+    }
+    
+    /**
+     * Start a thread that produces instructions for the LC (eg replaying a trace), on the same kind of thread as the lifts
+     * @param producer the task to run. It should call executeInstruction() as it produces each instruction
+     * @return the thread that was started
+     */
+    public Thread startInstructionProducer(Runnable producer) {
+        Thread t = getThreadFactory().newThread(producer);
+        t.start();
+        return t;
+    }
+    
+    /**
+     * Stop the lift threads (or the tick scheduler). The lifts stop where they are.
+     * The instruction log is closed, so that any instructions it has spilled to disk are written out (see InstructionLog.close())
+     */
+    public void stopLiftController() {
+        running = false;
+        if (tickScheduler != null) {
+            tickScheduler.stop();
+        }
+        if (planner != null) {
+            planner.stop();
+            if (console != null) {
+                console.printf("%s\n", planner);
+            }
+        }
+        for (int i = 1; i <= numberOfLifts; i++) {
+            wakeLift(i);
+        }
+        closeInstructionLog(instructionLog);
+    }
+    
+    /**
+     * Choose whether the lift threads are virtual threads (Java 21+) or platform threads. Must be called before the LC is started
+     * @param virtualThreads true for virtual threads
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        if (threadFactory != null) {
+            throw new IllegalStateException("lift threads already created");
+        }
+        this.virtualThreads = virtualThreads;
+    }
+    
+    /**
+     * Getter: the factory for lift threads (created on first use)
+     */
+    public synchronized LiftThreadFactory getThreadFactory() {
+        if (threadFactory == null) {
+            threadFactory = new LiftThreadFactory(virtualThreads, "lift");
+        }
+        return threadFactory;
+    }
+    
+    /**
+     * Getter: return the number of times a lift's thread has parked (see parkLift()): waiting for work while the lift was idle, for its doors
+     * to next move, or for a moving lift to reach the floor it is heading for
+     * @param liftNumber the lift you are interested in
+     */
+    public long getParks(int liftNumber) {
+        liftCheck(liftNumber);
+        liftLocks[liftNumber].lock();
+        try {
+            return parks[liftNumber];
+        }
+        finally {
+            liftLocks[liftNumber].unlock();
+        }
+    }
+    
+    /**
+     * Getter: return the number of times a lift's parked thread was woken because the lift was given work
+     * @param liftNumber the lift you are interested in
+     */
+    public long getWakeups(int liftNumber) {
+        liftCheck(liftNumber);
+        liftLocks[liftNumber].lock();
+        try {
+            return wakeups[liftNumber];
+        }
+        finally {
+            liftLocks[liftNumber].unlock();
+        }
+    }
+    
+    /**
+     * Getter: return the tick scheduler (null unless the lift controller was started with a tick rate)
+     */
+    public LiftTickScheduler getTickScheduler() {
+        return tickScheduler;
+    }
+    
     /**
      * This is the method that calls various LC tasks each time the loop is run
      * We plan to run this an an infinite loop until the user hits Ctrl+C
@@ -286,6 +642,19 @@ public class LiftController implements Subject {
      */
     public void runInEachLoop(Lift l) {
         
+        //move the lift and update the displays
+        updateLift(l);
+        
+        //now guide the lift through its queue of nodes to visit
+        guideLift(l);
+    }
+    
+    /**
+     * Bring a lift up to date: find its new position, check it is still inside the building and update the floor displays
+     * @param l is the lift to update
+     */
+    public void updateLift(Lift l) {
+        
     	//Get the lift number
     	int i = l.getLiftNumber();
     	
@@ -302,54 +671,44 @@ public class LiftController implements Subject {
             //Do some error checking on the position of the lift to ensure it can't be below ground or above the building height
             //This should throw an error but for the moment let it continue
             if (l.getState().positionFromBottom() >  buildingHeight) {
-                System.out.printf("\n\nPROBLEM: lift %d position of %g > building height %g. Stopping Lift!\n", i, l.getState().positionFromBottom(), buildingHeight);
+                if (console != null) {
+                    console.printf("\n\nPROBLEM: lift %d position of %g > building height %g. Stopping Lift!\n", i, l.getState().positionFromBottom(), buildingHeight);
+                }
                 //System.out.printf("instruction log: %s\n", instructionLog.toString());
                 l.stop();
             }
             if (l.getState().positionFromBottom() <  0) {
-                System.out.printf("\n\nPROBLEM: lift %d position of %g < ground floor height of 0. Stopping Lift!\n", i, l.getState().positionFromBottom());
+                if (console != null) {
+                    console.printf("\n\nPROBLEM: lift %d position of %g < ground floor height of 0. Stopping Lift!\n", i, l.getState().positionFromBottom());
+                }
                 //System.out.printf("instruction log: %s\n", instructionLog.toString());
                 l.stop();
             }
             
-            //Get the current direction of the lift (can choose floor 1 as the index as the direction of the lift is the same regardless of which floor you are at!)
-            String tempDirection = floors[1].getFloorDisplayLiftDirection(i);
+            //Update the fleet state for this lift: the displays on every floor are views of it, so this is one update
+            //however many floors there are
+            int currentFloor = l.getCurrentFloor();
+            int nextFloor = l.getNextFloor(i);
+            if (currentFloor > numberOfFloors || nextFloor > numberOfFloors) {
+                if (console != null) {
+                    console.printf("Lift %d something wrong!\n", i);
+                }
+            }
+            boolean moved = fleet.update(i, l.getPosition(), l.getState().getDirection(), currentFloor, nextFloor);
             
-            //Update the floor displays for this lift
-            for (int j = 1; j <= floors.length - 1; j++) {
-                //update the current floor of the lift
-                //System.out.printf("j = %d, i = %d, l.getCurrentFloor() = %d\n", j, i, l.getCurrentFloor())                
-                floors[j].setFloorDisplayLiftFloor(i, l.getCurrentFloor());
-                //update the direction of the lift
-                
-                floors[j].setFloorDisplayLiftDirection(i, l.getState().direction());
-                //update the ETA to get to this floor- NOT SURE HOW TO DO THIS. just set it to -1 for the moment
-                /**** TO DO ******/
-                floors[j].setFloorDisplayLiftETA(i, -1);
-                /*****************/
-            }
-                        
-            //if the floor has changed, update the displays
-            if (currentAndNextFloorsForLifts[0][i] != l.getCurrentFloor()) {
-                changed = true;
-                notifyObservers();
+            //and its ETAs, if it has a new plan, has got to or left a floor or its doors have started or finished a cycle. In between
+            //the lift goes as the ETAs expect, so they just count down
+            LiftPlan plan = plans.get(i);
+            long doorsClosedTime = l.getDoorClosedTime();
+            if (moved || etas.isStale(i, plan, doorsClosedTime)) {
+                etas.update(i, plan, fleet.getPositionInFloors(i), doorsClosedTime);
             }
             
-            //if the direction has changed, update the displays
-            if (!tempDirection.equals(l.getState().direction())) {
-                changed = true;
+            //if the floor or direction has changed, update the displays
+            if (moved) {
+                markChanged();
                 notifyObservers();
             }
-             
-            //Update the current and next floors for the lift
-            currentAndNextFloorsForLifts[0][i] = l.getCurrentFloor();
-            currentAndNextFloorsForLifts[1][i] = l.getNextFloor(i); 
-            if (currentAndNextFloorsForLifts[0][i] > numberOfFloors ||  currentAndNextFloorsForLifts[1][i] > numberOfFloors) {
-                System.out.printf("Lift %d something wrong!\n", i);
-            }
-            
-            //now guide the lift through its queue of nodes to visit
-            guideLift(l);
         //}        
     }
     
@@ -359,28 +718,70 @@ public class LiftController implements Subject {
      */
     public void guideLift(Lift l) {                
         
+        //a lift at a floor waits for its doors to open, dwell and close before it moves on
+        if (updateDoors(l)) {
+            return;
+        }
+        
+        //steer the lift and if it has reached the node it wanted to visit, commence arrival procedures
+        if (steerLift(l)) {
+            arrivalProcedures(l);
+        }
+    }
+    
+    /**
+     * Move on the doors of a lift that is at a floor. Once the doors have closed, complete the arrival procedures
+     * @param l is the lift under consideration
+     * @return true if the lift is still busy with its doors
+     */
+    public boolean updateDoors(Lift l) {
+        
+        int liftNumber = l.getLiftNumber();
+        
+        //not at a floor
+        if (nodesBeingServed[liftNumber] == null) {
+            return false;
+        }
+        
+        //doors are still moving
+        if (!l.updateDoor()) {
+            return true;
+        }
+        
+        //doors are closed- UNselect the lights and update the selection arrays
+        Node nodeVisited = nodesBeingServed[liftNumber];
+        nodesBeingServed[liftNumber] = null;
+        completeArrival(l, nodeVisited);
+        return false;
+    }
+    
+    /**
+     * Steer a lift towards the first node in its queue (start, stop or reverse the lift as required)
+     * @param l is the lift being steered
+     * @return true if the lift is at the floor of the first node in its queue and arrival procedures should commence
+     */
+    public boolean steerLift(Lift l) {
+        
         int liftNumber = l.getLiftNumber();
         
-        //Retrieve the queue of nodes to visit for this lift
-        Queue<Node> nopoll = liftNopoll[liftNumber];
+        //Check what the node is that we want to visit
+        Node nodeToVisit = plans.get(liftNumber).peek();
         
         //Get the current lift state
         LiftState lState = l.getState();
         boolean isStationary = lState.isStationary();  //save recalculation
         
         //Is the nopoll empty? If so, stop the lift and return
-        if (nopoll.isEmpty()) {
+        if (nodeToVisit == null) {
             //System.out.printf("nopoll is empty\n");
             //If the lift is not stationary, stop it
             if (!isStationary) {                
                 l.stop();
             }
-            return;
+            return false;
         }
         
         //At this point, the queue is not empty so we have places to go!
-        //Check what the node is that we want to visit
-        Node nodeToVisit = nopoll.peek();
         int floorToVisit = nodeToVisit.getFloor();
        // System.out.printf("floorToVisit = %d\n", floorToVisit);
         
@@ -393,8 +794,7 @@ public class LiftController implements Subject {
             System.out.printf("l.getPositionFromFloor(%d) = %g\n", floorToVisit, l.getPositionFromFloor(floorToVisit));
             System.out.printf("l.getPositionFromFloor(%d) = %g\n", l.getCurrentFloor(), l.getPositionFromFloor(l.getCurrentFloor()));
             */
-            arrivalProcedures(l);
-            return;
+            return true;
         }
             
         //calculate how far the lift is from the floor we want to visit. Positive -> lift is above the floor
@@ -412,68 +812,150 @@ public class LiftController implements Subject {
         else { //Lift is moving            
             //if the lift moving in the wrong direction, reverse it- Note that this may be undesirable behaviour but can be controlled by the matching algorithm (it knows the current status of the lift and its queue before it chooses to reshuffle)
             if (distanceLiftFromFloorToVisit > 0 && lState.isGoingUp()) { //lift is above the floor and moving up
-                System.out.printf("Lift %d is moving UP but is %gm above floor %d\nChanging direction...\n", liftNumber, distanceLiftFromFloorToVisit, floorToVisit);
+                if (console != null) {
+                    console.printf("Lift %d is moving UP but is %gm above floor %d\nChanging direction...\n", liftNumber, distanceLiftFromFloorToVisit, floorToVisit);
+                }
                 l.stop();
                 l.goDown();
             }
             else if (distanceLiftFromFloorToVisit < 0 && lState.isGoingDown()) { //lift is below the floor and moving down
-                System.out.printf("Lift %d is moving DOWN but is %gm below floor %d\nChanging direction...\n", liftNumber, -distanceLiftFromFloorToVisit, floorToVisit);
+                if (console != null) {
+                    console.printf("Lift %d is moving DOWN but is %gm below floor %d\nChanging direction...\n", liftNumber, -distanceLiftFromFloorToVisit, floorToVisit);
+                }
                 l.stop();
                 l.goUp();
             }
             //if lift is going in the correct direction, nothing more need to be done as the lift will eventually reach the correct floor
         }           
+        return false;
     }
     
     /**
      * Arrival procedures- There are several things we need to do when a lift is at a floor that it wanted to visit
      * We need to: poll the node off the lift queue, stop the lift, ping bell, open doors, close doors, issue an instruction to UNselect the relevant lights on floors/lifts, update the selection arrays
+     * This method doesn't block: it starts the door cycle and updateDoors() completes the arrival once the doors have closed
+     * If a re-plan has emptied the lift's plan since it was steered here, there is nothing to arrive for: the bell isn't pinged, the doors
+     * aren't opened and the lift is steered by its new plan instead
      * @param liftNumber tells us which number lift in the building 
      * @param Lift is the lift under consideration
+     * @return true if the lift has arrived and its doors are opening, false if it was steered by its new plan instead
      */
-    public void arrivalProcedures(Lift l) {
+    public boolean arrivalProcedures(Lift l) {
+    
+        do {
+            //poll the node, stop the lift and ping the bell
+            Node nodeToVisit = beginArrival(l);
+            if (nodeToVisit != null) {
+                //Start the door cycle (open, dwell, close)
+                if (console != null) {
+                    console.printf("opening door lift %d...\n", l.getLiftNumber());
+                }
+                l.openDoor();
+                nodesBeingServed[l.getLiftNumber()] = nodeToVisit;
+                return true;
+            }
+            
+            //the plan was emptied in the meantime- steer by the new one (which may have another stop here)
+        } while (steerLift(l));
+        return false;
+    }
+    
+    /**
+     * First half of the arrival procedures (before the doors open): poll the node off the lift queue, stop the lift, ping bell
+     * @param l is the lift under consideration
+     * @return the node that the lift has arrived at, or null if its plan has been emptied by a re-plan (the lift is left as it is)
+     */
+    public Node beginArrival(Lift l) {
     
     	int liftNumber = l.getLiftNumber();
     	
-        System.out.printf("\nInitiating arrival procedures for liftNumber %d at floor %d\n", liftNumber, l.getCurrentFloor());
+        if (console != null) {
+            console.printf("\nInitiating arrival procedures for liftNumber %d at floor %d\n", liftNumber, l.getCurrentFloor());
+        }
         //System.out.printf("l.canOpenCloseDoorAtFloor(floorToVisit) = %b\n", l.canOpenCloseDoorAtFloor(l.getCurrentFloor()));
         //System.out.printf("l.getCurrentFloor() = %d\n", l.getCurrentFloor());
         
-        //poll the node from the lift queue- Do this first as once issue the UNselect instructions, it re-runs the matching algorithm
+        //take the node off the lift's plan- Do this first as once issue the UNselect instructions, it re-runs the matching algorithm
         //System.out.printf("Dequeuing the node from the lift queue...\n");
-        Node nodeToVisit = liftNopoll[liftNumber].poll();
+        Node nodeToVisit = takeStop(liftNumber);
+        if (nodeToVisit == null) {
+            if (console != null) {
+                console.printf("lift %d has no stop to take, its plan has changed\n", liftNumber);
+            }
+            return null;
+        }
         
         //If the lift is not stationary, stop it
         if (!l.getState().isStationary()) {     
-            System.out.printf("stopping lift %d\n", liftNumber);
+            if (console != null) {
+                console.printf("stopping lift %d\n", liftNumber);
+            }
             l.stop();
         }
         
         //Ping bell
-        System.out.printf("pinging bell lift %d...\n", liftNumber);
+        if (console != null) {
+            console.printf("pinging bell lift %d...\n", liftNumber);
+        }
         l.pingBell();
         
-        //Open the door
-        System.out.printf("opening door lift %d...\n", liftNumber);
-        l.openDoor();
+        return nodeToVisit;
+    }
+    
+    /**
+     * helper method: take the next stop off a lift's plan, without locking. If a new plan is published in the meantime, try again with that
+     * @return the stop, or null if the plan is empty
+     */
+    private Node takeStop(int liftNumber) {
+        while (true) {
+            LiftPlan plan = plans.get(liftNumber);
+            if (plan.isEmpty()) {
+                return null;
+            }
+            if (plans.compareAndSet(liftNumber, plan, plan.advance())) {
+                return plan.peek();
+            }
+        }
+    }
+    
+    /**
+     * helper method: forget that a lift has taken a stop, once the optimiser has been told the call is served or cancelled (so it isn't
+     * in the queue any more). Must hold PLAN_LOCK
+     * @param lift the lift that served it, or NULL_LIFT to check every lift
+     */
+    private void forgetStop(Node call, int lift) {
+        int first = lift == NULL_LIFT ? 1 : lift;
+        int last = lift == NULL_LIFT ? numberOfLifts : lift;
+        for (int i = first; i <= last; i++) {
+            LiftPlan plan;
+            do {
+                plan = plans.get(i);
+            } while (!plans.compareAndSet(i, plan, plan.forget(call)));
+        }
+    }
+    
+    /**
+     * Second half of the arrival procedures (once the doors have closed): issue an instruction to UNselect the relevant lights on floors/lifts
+     * @param l is the lift under consideration
+     * @param nodeToVisit is the node returned by beginArrival()
+     */
+    public void completeArrival(Lift l, Node nodeToVisit) {
         
-        //Close the door
-        System.out.printf("closing door lift %d...\n", liftNumber);
-        l.closeDoor();
+        int liftNumber = l.getLiftNumber();
         
         //issue an instruction to UNselect the relevant lights on floors/lifts and update the selection arrays
         //note that the selection arrays are updated when the instruction to UNselect is issued
         if (nodeToVisit.getFromLift()) {
             //unselect from lift
-            selectFromLift(liftNumber, nodeToVisit.getFloor(), false);
+            selectFromLift(liftNumber, nodeToVisit.getFloor(), false, true);
         }
         else if (nodeToVisit.getfromFloorUP()) {
             //unselect from lift UP button
-            selectFromFloor(nodeToVisit.getFloor(), SELECT_UP, false);
+            selectFromFloor(nodeToVisit.getFloor(), Direction.UP, false, liftNumber);
         }
         else if (nodeToVisit.getfromFloorDOWN()) {
             //unselect from lift DOWN button
-            selectFromFloor(nodeToVisit.getFloor(), SELECT_DOWN, false);
+            selectFromFloor(nodeToVisit.getFloor(), Direction.DOWN, false, liftNumber);
         }
         else {
             //throw an error as this node has not been mapped from either the lift or a floor
@@ -482,18 +964,314 @@ public class LiftController implements Subject {
         }
     }
     
+    /**
+     * helper method: take the lock for a call (a lift's or a floor's, see liftCallLocks and floorCallLocks)
+     */
+    private ReentrantLock lockCall(ReentrantLock callLock) {
+        callLock.lock();
+        return callLock;
+    }
+    
+    /**
+     * helper method: release the lock for a call. In a batch of instructions it is held until the batch has been planned (see executeInstructions())
+     */
+    private void unlockCall(ReentrantLock callLock) {
+        Batch b = batch.get();
+        if (b != null && !b.locks.contains(callLock)) {
+            b.locks.add(callLock);
+            return;
+        }
+        callLock.unlock();
+    }
+    
+    /**
+     * Update the queues of nodes to visit for a single call that has been selected, unselected or served. Must hold the lock for the call
+     * Only the queue of the lift the call affects is changed (unless the algorithm has no incremental version, when it re-matches everything)
+     * If there is a background planner, the change is just passed on to it
+     * @param call the node for the call
+     * @param lift the lift the call was made in or served by, or NULL_LIFT for a floor call that hasn't been served
+     * @param selection true if the call has just been selected
+     * @param served true if the call is being unselected because a lift has been there
+     */
+    private void replan(Node call, int lift, boolean selection, boolean served) {
+        
+        LiftPlanner.ChangeType type;
+        if (selection) type = LiftPlanner.ChangeType.INSERT;
+        else if (served) type = LiftPlanner.ChangeType.SERVED;
+        else type = LiftPlanner.ChangeType.CANCEL;
+        
+        //in a batch, plan once the whole batch has been executed
+        Batch b = batch.get();
+        if (b != null) {
+            b.changes.add(new LiftPlanner.CallChange(call, lift, type, System.nanoTime()));
+            return;
+        }
+        
+        //leave it to the background planner if there is one
+        LiftPlanner p = planner;
+        if (p != null) {
+            p.submit(call, lift, type);
+            return;
+        }
+        
+        synchronized (PLAN_LOCK) {
+            applyCallChange(call, lift, type);
+            callChangesPlanned.incrementAndGet();
+            publishPlans(call);
+        }
+        //and wake any parked lifts that now have somewhere to go
+        wakeLifts();
+    }
+    
+    /**
+     * Update the queues of nodes to visit for a batch of changes from the planner, and publish them to the lifts at once
+     * If the algorithm has no incremental version, or the batch has more changes than there are floors (eg an instructions file at startup)
+     * so that a full re-match is cheaper, the batch is a single full re-match. On the planner thread that runs on a copy of the selections
+     * without holding PLAN_LOCK, so the buttons and the lifts aren't held up whilst it runs.
+     * If planning the batch fails the optimiser may have been left half way through it, so the failure is reported and the current
+     * selections are re-matched from scratch with a new optimiser (see rematch()). Only a failure of that is thrown
+     * @param changes the changes, in the order they were made
+     */
+    void applyCallChanges(List<LiftPlanner.CallChange> changes) {
+        
+        Node lastCall = changes.get(changes.size() - 1).getCall();
+        boolean counted = false;    //true once the changes have been added to callChangesPlanned
+        try {
+            OptimiserAlgo o;
+            SelectionStore snapshot = null;
+            synchronized (PLAN_LOCK) {
+                o = optimiser;
+                if (o.isIncremental() && changes.size() <= numberOfFloors) {
+                    for (LiftPlanner.CallChange change : changes) {
+                        applyCallChange(change.getCall(), change.getLift(), change.getType());
+                    }
+                    callChangesPlanned.addAndGet(changes.size());
+                    counted = true;
+                    publishPlans(lastCall);
+                }
+                else if (planner == null) {
+                    //on the calling thread (a batch of instructions)
+                    o.optimise();
+                    forgetStops(changes);
+                    callChangesPlanned.addAndGet(changes.size());
+                    counted = true;
+                    publishPlans(lastCall);
+                }
+                else snapshot = selections.copy();
+            }
+            
+            if (snapshot != null) {
+                Queue<Node>[] plan = createOptimiser(snapshot, o.getAlgoNumber()).planAll();
+                synchronized (PLAN_LOCK) {
+                    //unless doMatching() has replaced the optimiser in the meantime
+                    if (optimiser == o) {
+                        o.setOptimisedNodesAll(plan);
+                    }
+                    forgetStops(changes);
+                    callChangesPlanned.addAndGet(changes.size());
+                    counted = true;
+                    publishPlans(lastCall);
+                }
+            }
+        }
+        catch (RuntimeException ex) {
+            System.out.printf("failed to plan a batch of %d changes: %s. Re-matching\n", changes.size(), ex);
+            ex.printStackTrace(System.out);
+            try {
+                rematch(changes, !counted);
+            }
+            catch (RuntimeException rematchEx) {
+                rematchEx.addSuppressed(ex);
+                throw rematchEx;
+            }
+        }
+        wakeLifts();
+    }
+    
+    /**
+     * helper method: re-match the current selections from scratch with a new optimiser (as doMatching() does) after planning a batch of
+     * changes failed, and publish the plans. The re-match takes the batch into account along with every other call
+     * @param changes the batch that failed
+     * @param count true if the changes haven't been added to callChangesPlanned yet
+     */
+    private void rematch(List<LiftPlanner.CallChange> changes, boolean count) {
+        synchronized (PLAN_LOCK) {
+            OptimiserAlgo o = createOptimiser(selections, optimiser.getAlgoNumber());
+            o.optimise();
+            optimiser = o;
+            liftNopoll = o.getOptimisedNodesAll();
+            forgetStops(changes);
+            if (count) {
+                callChangesPlanned.addAndGet(changes.size());
+            }
+            publishPlans();
+        }
+    }
+    
+    /**
+     * helper method: pass a change to the optimiser. Must hold PLAN_LOCK
+     */
+    private void applyCallChange(Node call, int lift, LiftPlanner.ChangeType type) {
+        switch (type) {
+            case INSERT:
+                optimiser.insertCall(call, lift);
+                break;
+            case SERVED:
+                optimiser.servedCall(call, lift);
+                forgetStop(call, lift);
+                break;
+            case CANCEL:
+                optimiser.cancelCall(call, lift);
+                forgetStop(call, lift);
+                break;
+        }
+    }
+    
+    /**
+     * helper method: forget the stops taken for the calls served or cancelled in a batch of changes, once a full re-match has planned it.
+     * Must hold PLAN_LOCK
+     */
+    private void forgetStops(List<LiftPlanner.CallChange> changes) {
+        for (LiftPlanner.CallChange change : changes) {
+            if (change.getType() != LiftPlanner.ChangeType.INSERT) {
+                forgetStop(change.getCall(), change.getLift());
+            }
+        }
+    }
+    
+    /**
+     * helper method: publish the optimiser's queues (it may have replaced them with a full re-match) as the plans the lifts follow, checking
+     * them against a full re-match if asked to. Must hold PLAN_LOCK
+     * @param call the last call changed (for the message if the check fails)
+     */
+    private void publishPlans(Node call) {
+        liftNopoll = optimiser.getOptimisedNodesAll();
+        
+        //compare with a full re-match, and use that if they differ. The queues keep the stops the lifts have taken until they are served,
+        //so they should match exactly, but only once the optimiser has been given every change made to the selections (and if none is
+        //made whilst checking)
+        if (checkPlans) {
+            long made = callChanges.sum();
+            if (callChangesPlanned.get() == made && !optimiser.verifyPlan() && callChanges.sum() == made) {
+                if (console != null) {
+                    console.printf("Plan for call %s is inconsistent with a full re-match. Re-matching\n", call);
+                }
+                optimiser.optimise();
+                liftNopoll = optimiser.getOptimisedNodesAll();
+            }
+        }
+        publishPlans();
+    }
+    
+    /**
+     * helper method: publish the queues as the plans the lifts follow, replacing only the plans that have changed. Must hold PLAN_LOCK
+     * (as the only writer of the plans apart from the lifts taking stops, which just makes the swap here try again). The plan version only
+     * moves on if a plan was replaced
+     */
+    private void publishPlans() {
+        long version = planVersion.get() + 1;
+        boolean changed = false;
+        for (int i = 1; i <= numberOfLifts; i++) {
+            LiftPlan plan;
+            LiftPlan next;
+            do {
+                plan = plans.get(i);
+                if (plan.sameStops(liftNopoll[i])) {
+                    next = null;
+                    break;
+                }
+                next = plan.next(version, liftNopoll[i]);
+            } while (!plans.compareAndSet(i, plan, next));
+            
+            //the lift's ETAs follow its new plan straight away, rather than once the lift next moves
+            if (next != null) {
+                etas.update(i, next, fleet.getPositionInFloors(i), lifts[i].getDoorClosedTime());
+                changed = true;
+            }
+        }
+        if (changed) {
+            planVersion.set(version);
+        }
+    }
+    
     /**
      * Matching algorithm to map the selections arrays to the queues of nodes to visit for each lift
-     * this algo will look at the selection arrays and update the queues of nodes for each lift
+     * this algo will look at the selection arrays and rebuild the queues of nodes for every lift. Selecting and serving calls doesn't need this
+     * (see replan()), but it can be used to change the algorithm or as a fallback
      * @param algoNumber specifies which number algorithm to use for matching
      */
     public void doMatching(int algoNumber) {        	
-    	//create an optimiserAlgo object
-    	OptimiserAlgo o = new OptimiserAlgo(numberOfLifts, numberOfFloors, selectionsFromLift, selectionsFromFloor, algoNumber);
-    	//optimise it
-    	o.optimise();
-    	//set the Queue of nodes to visit for each lift
-    	liftNopoll = o.getOptimisedNodesAll();
+        synchronized (PLAN_LOCK) {
+            //create an optimiserAlgo object
+            optimiser = createOptimiser(selections, algoNumber);
+            //optimise it
+            optimiser.optimise();
+            //set the Queue of nodes to visit for each lift
+            liftNopoll = optimiser.getOptimisedNodesAll();
+            publishPlans();
+        }
+        //and wake any parked lifts that now have somewhere to go
+        wakeLifts();
+    }
+
+    /**
+     * helper method: build the optimiser for an algorithm, for where the lifts are and how long they take to get about
+     */
+    private OptimiserAlgo createOptimiser(SelectionStore selections, int algoNumber) {
+        OptimiserAlgo o = OptimiserAlgo.create(numberOfLifts, numberOfFloors, selections, fleet, algoNumber);
+        o.setTravelTimeModel(travelTimes);
+        o.setConsole(console);
+        return o;
+    }
+
+    /**
+     * helper method: build the travel times for the building as it is configured now (all the lifts are the same)
+     */
+    private TravelTimeModel buildTravelTimes() {
+        Lift l = lifts[1];
+        return new TravelTimeModel(distanceBetweenFloors, l.getVelocity(), l.getDoorOpenCloseTime(), l.getDoorDwellTime());
+    }
+
+    /**
+     * Plan on a background thread (see LiftPlanner) rather than on the thread making the call, so that pressing a button or a lift
+     * arriving never waits for the optimiser. Must be called before the LC is started. Don't use it with a VirtualClock: the plans would
+     * change at times the simulation doesn't know about.
+     * Without a planner every press plans on the thread making it, holding PLAN_LOCK, so presses in different lifts or on different floors
+     * still wait for each other there. With one, a press takes only the lock for its own call and adds to the planner's queue and the
+     * instruction log, neither of which locks (unless the log spills)
+     * @param planningWindow how long to collect changes for before planning them together [ms], or -1 to plan on the calling thread (the default)
+     */
+    public void setPlanningWindow(int planningWindow) {
+        if (planningWindow < -1) {
+            System.out.printf("planningWindow = %d\n", planningWindow);
+            throw new IllegalArgumentException("planningWindow invalid");
+        }
+        this.planningWindow = planningWindow;
+    }
+    
+    /**
+     * Getter: the background planner, with its latency metrics (null if planning on the calling thread)
+     */
+    public LiftPlanner getPlanner() {
+        return planner;
+    }
+    
+    /**
+     * Getter: true if every change made to the selections has been given to the optimiser and its plans published (eg the background
+     * planner has caught up)
+     */
+    public boolean isPlanned() {
+        synchronized (PLAN_LOCK) {
+            return callChangesPlanned.get() == callChanges.sum();
+        }
+    }
+    
+    /**
+     * Check the queues against a full re-match after every call (for debugging). Off by default
+     * @param checkPlans true to check
+     */
+    public void setCheckPlans(boolean checkPlans) {
+        this.checkPlans = checkPlans;
     }
     
     /**
@@ -502,7 +1280,9 @@ public class LiftController implements Subject {
      * this will not clear the selections of all the other floors
      */
     public void emergencyStop(int liftNumber) {
-        System.out.printf("Emergency lift stop for lift %d!\n", liftNumber);        
+        if (console != null) {
+            console.printf("Emergency lift stop for lift %d!\n", liftNumber);
+        }
         //Input checking
         liftCheck(liftNumber);
                        
@@ -511,28 +1291,107 @@ public class LiftController implements Subject {
     }
     
     
+    /**
+     * Run without any AWT/Swing side effects: the lift bells are only counted
+     * @param headless true to run headless
+     */
+    public void setHeadless(boolean headless) {
+        for (int i = 1; i <= numberOfLifts; i++) {
+            lifts[i].setBellEnabled(!headless);
+        }
+    }
+    
+    /**
+     * Choose whether to print the details of every instruction as it is executed (the default). Building the details is a good part
+     * of the cost of executing an instruction, so turn it off for big simulations
+     * @param verbose true to print the details
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+    
+    /**
+     * Choose where the LC, its floors, its lifts and its optimiser say what they are doing (System.out by default). Each LC has its own, so LCs run
+     * side by side (eg in a ScenarioSweep) don't share a stream. Errors are still printed to System.out. Must be called before the LC is started
+     * @param console the stream to print to, or null to print nothing (and not spend any time formatting it)
+     */
+    public void setConsole(PrintStream console) {
+        this.console = console;
+        for (int i = 1; i <= numberOfFloors; i++) {
+            floors[i].setConsole(console);
+        }
+        for (int i = 1; i <= numberOfLifts; i++) {
+            lifts[i].setConsole(console);
+        }
+        synchronized (PLAN_LOCK) {
+            optimiser.setConsole(console);
+        }
+    }
+    
     /**
      * Getter: retrieve the instruction log
-     * @return the instruction log
+     * @return the instruction log: any instructions spilled to disk, then the ones in memory
      */
     public Iterable<Instruction> getInstructions() {
         return instructionLog;
     }
     
     /**
-     * Getter: retreive the selectionsFromFloor array
+     * Replace the instruction log, eg with a bigger one or one that spills to disk. Must be called before the LC is started.
+     * The log it replaces is closed
+     * @param instructionLog the new log
+     */
+    public void setInstructionLog(InstructionLog instructionLog) {
+        InstructionLog replaced = this.instructionLog;
+        this.instructionLog = instructionLog;
+        if (replaced != null && replaced != instructionLog) {
+            closeInstructionLog(replaced);
+        }
+    }
+    
+    /**
+     * helper method: close an instruction log, reporting it if its spilled instructions couldn't be written
+     */
+    private static void closeInstructionLog(InstructionLog log) {
+        try {
+            log.close();
+        } catch (IOException ex) {
+            System.out.printf("could not write the instructions spilled by the instruction log: %s\n", ex.getMessage());
+            throw new UncheckedIOException(ex);
+        } catch (UncheckedIOException ex) {
+            System.out.printf("could not write the instructions spilled by the instruction log: %s\n", ex.getMessage());
+            throw ex;
+        }
+    }
+    
+    /**
+     * helper method: the time to log an instruction at, in ms since the LC was built
+     */
+    private long logTime() {
+        return (clock.nanoTime() - startTime) / MILLIMULTIPLIER;
+    }
+    
+    /**
+     * Getter: retreive the selections
+     */
+    public SelectionStore getSelections() {
+        return selections;
+    }
+    
+    /**
+     * Getter: retreive a copy of the selectionsFromFloor array (numberOfFloors + 1 rows x 2 cols (UP/DOWN))
      * @return the the selectionsFromFloor array
      */
     public boolean[][] getselectionsFromFloor() {
-        return selectionsFromFloor;
+        return selections.toFloorArray();
     }
     
     /**
-     * Getter: retreive the selectionsFromLift array
+     * Getter: retreive a copy of the selectionsFromLift array (numberOfFloors + 1 rows x numberOfLifts + 1 cols)
      * @return the selectionsFromLift array
      */
     public boolean[][] getselectionsFromLift() {
-        return selectionsFromLift;
+        return selections.toLiftArray();
     }
     
     /**
@@ -542,14 +1401,14 @@ public class LiftController implements Subject {
      * @return whether the up/down button on this floor is selected
      */
     public boolean getselectionFromFloorDirection(int floor, String direction) {
-        int index;
-        
-        if (direction.equals(SELECT_UP)) {
-            index = 0;
-        }
-        else index = 1;
-            
-        return selectionsFromFloor[floor][index];
+        return getselectionFromFloorDirection(floor, Direction.fromLabel(direction));
+    }
+    
+    /**
+     * As above, with the direction as an enum
+     */
+    public boolean getselectionFromFloorDirection(int floor, Direction direction) {
+        return selections.isFromFloor(floor, direction == Direction.UP ? Direction.UP : Direction.DOWN);
     }
     
     /**
@@ -559,14 +1418,14 @@ public class LiftController implements Subject {
      * @return whether the floor button on this lift is selected
      */
     public boolean getselectionsFromLiftFloor(int floor, int lift) {        
-        return selectionsFromLift[floor][lift];
+        return selections.isFromLift(floor, lift);
     }
     
     /**
      * Getter: retrieve the direction of a lift
      */
     public String getDirectionFromLift(int lift) {
-        return floors[1].getFloorDisplayLiftDirection(lift);
+        return fleet.getDirection(lift).getLabel();
     }
     
     /**
@@ -582,6 +1441,95 @@ public class LiftController implements Subject {
         return lifts[liftNumber].getState();
     }
     
+    /**
+     * Getter: return a given lift
+     * @param liftNumber the lift you are interested in
+     */
+    public Lift getLift(int liftNumber) {
+        
+        //Input checking
+        liftCheck(liftNumber);
+        
+        return lifts[liftNumber];
+    }
+    
+    /**
+     * Getter: the plan a lift is following (an immutable snapshot, so it can be read without locking)
+     * @param liftNumber the lift you are interested in
+     */
+    public LiftPlan getPlan(int liftNumber) {
+        return plans.get(liftNumber);
+    }
+    
+    /**
+     * Getter: the number of times the plans have been published with at least one of them changed
+     */
+    public long getPlanVersion() {
+        return planVersion.get();
+    }
+    
+    /**
+     * Getter: return the floor of the next node a given lift is going to visit
+     * @param liftNumber the lift you are interested in
+     * @return the floor number, or NULL_FLOOR (-1) if the lift has nowhere to go
+     */
+    public int getNextFloorToVisit(int liftNumber) {
+        Node n = plans.get(liftNumber).peek();
+        if (n == null) return NULL_FLOOR;
+        return n.getFloor();
+    }
+    
+    /**
+     * Getter: return the node a lift is at a floor for (null if the lift is not busy with its doors)
+     * @param liftNumber the lift you are interested in
+     */
+    public Node getNodeBeingServed(int liftNumber) {
+        return nodesBeingServed[liftNumber];
+    }
+    
+    /**
+     * Set the time the lift doors stay fully open before they start closing
+     * @param doorDwellTime int time in ms
+     */
+    public void setDoorDwellTime(int doorDwellTime) {
+        for (int i = 1; i <= numberOfLifts; i++) {
+            lifts[i].setDoorDwellTime(doorDwellTime);
+        }
+        travelTimes = buildTravelTimes();
+        synchronized (PLAN_LOCK) {
+            optimiser.setTravelTimeModel(travelTimes);
+        }
+        etas.setTravelTimeModel(travelTimes);
+    }
+    
+    /**
+     * Getter: return how long the lifts take between floors and at each stop
+     */
+    public TravelTimeModel getTravelTimeModel() {
+        return travelTimes;
+    }
+    
+    /**
+     * Getter: return when each lift gets to each floor
+     */
+    public EtaEngine getEtaEngine() {
+        return etas;
+    }
+    
+    /**
+     * Getter: return the state of the lifts shown on the floor displays
+     */
+    public FleetState getFleetState() {
+        return fleet;
+    }
+    
+    /**
+     * Getter: return the clock used by the lifts
+     */
+    public SimulationClock getClock() {
+        return clock;
+    }
+    
     /**
      * Getter: return number of floors
      */
@@ -606,7 +1554,7 @@ public class LiftController implements Subject {
         if (choice != 0 && choice != 1) {
             throw new IllegalArgumentException("Error: choice != 0 or 1");
         }
-        return currentAndNextFloorsForLifts[choice][lift];
+        return choice == 0 ? fleet.getCurrentFloor(lift) : fleet.getNextFloor(lift);
     }
         
     /**
@@ -617,10 +1565,8 @@ public class LiftController implements Subject {
      
         //store the floors to visit in an array list
         ArrayList<Integer> floorsToVisit = new ArrayList<Integer>();
-        //retrieve the queue of nodes for the selected lift
-        Queue<Node> q = liftNopoll[lift];
-        //add the floors to visit for each node to the arraylist
-        for (Node n : q) {
+        //retrieve the queue of nodes for the selected lift and add the floors to visit for each node to the arraylist
+        for (Node n : plans.get(lift).getStops()) {
             floorsToVisit.add(n.getFloor());
         }
         return floorsToVisit;
@@ -667,9 +1613,9 @@ public class LiftController implements Subject {
     /**
      * direction checker
      */
-    private static void directionCheck(String direction) {
-        if (!direction.equals(SELECT_UP) && !direction.equals(SELECT_DOWN)) {
-            System.out.printf("direction %s is invalid\n", direction);
+    private static void directionCheck(Direction direction) {
+        if (direction != Direction.UP && direction != Direction.DOWN) {
+            System.out.printf("direction %s is invalid\n", direction.getLabel());
             throw new IllegalArgumentException("direction is invalid");
         }
     }
@@ -687,14 +1633,104 @@ public class LiftController implements Subject {
      */
     public void executeInstruction(Instruction ins) {
         //print the instruction details
-        System.out.printf("\nInstruction Details: %s\n", ins.toString());
-        if (ins.getmethodOrigin().equals(METHOD_ORIGIN_FROM_FLOOR)) {
-            //call the method for a floor instruction
-            selectFromFloor(ins.getfloorNumber(), ins.getdirection(), ins.getselection());
+        if (verbose && console != null) {
+            console.printf("\nInstruction Details: %s\n", ins.toString());
+        }
+        switch (ins.getMethodOriginType()) {
+            case FROM_FLOOR:
+                //call the method for a floor instruction
+                selectFromFloor(ins.getfloorNumber(), ins.getDirectionType(), ins.getselection());
+                break;
+            case FROM_LIFT:
+                //call the method for a lift instruction
+                selectFromLift(ins.getliftNumber(), ins.getfloorNumber(), ins.getselection());
+                break;
+        }
+    }
+    
+    /**
+     * Execute a batch of instructions (eg the instructions file at startup, or the instructions in a trace with the same time)
+     * Every instruction is logged and its selection made, then the lifts' queues are planned once for the whole batch and the observers
+     * are notified once, rather than once per instruction
+     * @param instructions the instructions, in the order to execute them
+     */
+    public void executeInstructions(Iterable<Instruction> instructions) {
+        executeBatch(() -> {
+            for (Instruction ins : instructions) {
+                executeInstruction(ins);
+            }
+        });
+    }
+    
+    /**
+     * As above, for packed instructions (see Instruction.pack()), eg the records of a trace with the same time read through an
+     * InstructionCursor
+     * @param packed the instructions, in the order to execute them
+     * @param count the number of instructions in packed to execute
+     */
+    public void executeInstructions(long[] packed, int count) {
+        executeBatch(() -> {
+            for (int k = 0; k < count; k++) {
+                executeInstruction(packed[k]);
+            }
+        });
+    }
+    
+    /**
+     * helper method: execute instructions as a batch (see executeInstructions())
+     * @param instructions executes each instruction of the batch
+     */
+    private void executeBatch(Runnable instructions) {
+        
+        Batch b = new Batch();
+        batchLock.lock();
+        try {
+            batch.set(b);
+            try {
+                instructions.run();
+            }
+            finally {
+                batch.remove();
+                //hand the changes to the background planner, which will batch them anyway, or plan them all at once
+                LiftPlanner p = planner;
+                if (p != null) {
+                    for (LiftPlanner.CallChange change : b.changes) {
+                        p.submit(change.getCall(), change.getLift(), change.getType());
+                    }
+                }
+                else if (!b.changes.isEmpty()) {
+                    applyCallChanges(b.changes);
+                }
+            }
+        }
+        finally {
+            //the calls can be changed again now their changes have been passed on
+            for (ReentrantLock callLock : b.locks) {
+                callLock.unlock();
+            }
+            batchLock.unlock();
+        }
+        
+        //use this to notify observers of a change
+        markChanged();
+        notifyObservers();
+    }
+    
+    /**
+     * As above, for a packed instruction (see Instruction.pack()): its fields are read straight from the long, so no Instruction object is
+     * built and no String is parsed to execute it (the selection itself may still allocate, eg a new LiftPlan)
+     */
+    public void executeInstruction(long packed) {
+        if (verbose && console != null) {
+            console.printf("\nInstruction Details: %s\n", Instruction.unpack(packed, 0).toString());
+        }
+        switch (Instruction.packedMethodOrigin(packed)) {
+            case FROM_FLOOR:
+                selectFromFloor(Instruction.packedFloorNumber(packed), Instruction.packedDirection(packed), Instruction.packedSelection(packed));
+                break;
+            case FROM_LIFT:
+                selectFromLift(Instruction.packedLiftNumber(packed), Instruction.packedFloorNumber(packed), Instruction.packedSelection(packed));
+                break;
         }
-        else {
-            //call the method for a lift instruction
-            selectFromLift(ins.getliftNumber(), ins.getfloorNumber(), ins.getselection());
-        }                
     }
 }
@@ -1,65 +1,153 @@
 package com.gordon.reuven;
 /**
  * Lift Door class
+ * The door is a timed state machine: closed -> opening -> open (dwell) -> closing -> closed.
+ * Nothing blocks: open() starts the cycle and update() moves the door on according to the clock, so the lift's thread
+ * (or a shared scheduler, or the discrete event simulator) can carry on with other work whilst the door moves.
  */
+import java.io.PrintStream;
+
 public class LiftDoor {
-    
+
     //Instance variables
+    private static final long MILLIMULTIPLIER = 1000000;
+    private static final long NO_TRANSITION = -1;
+
     private int liftNumber;
 	private int doorOpenCloseTime; //set the door open/close time to be Xms
+    private int doorDwellTime;     //time the door stays fully open before it starts closing [ms]
     private double maxWidth;
-    private boolean isOpen;        //true -> open, false -> closed
+    private boolean isOpen;        //true -> fully open
     private boolean isOpening;
     private boolean isClosing;
-    private double openAmount;     //amount the door is open (0 == closed)    
-    
+    private long transitionTime;   //the time [ns] at which the door finishes opening/dwelling/closing. NO_TRANSITION when closed
+    private SimulationClock clock; //the clock used to time the door opening/closing
+    private PrintStream console;   //where the door says what it is doing (null to say nothing)
+
     /**
      * Constructor
      * @param maxWidth double maximum width the door can open
      * @param liftNumber is the number of the lift (assigned by the LC) for which this door is attached to
      */
     public LiftDoor(double maxWidth, int doorOpenCloseTime, int liftNumber) {
+        this(maxWidth, doorOpenCloseTime, liftNumber, new SystemClock());
+    }
+
+    /**
+     * Constructor
+     * @param maxWidth double maximum width the door can open
+     * @param liftNumber is the number of the lift (assigned by the LC) for which this door is attached to
+     * @param clock is the clock used to time the door opening/closing
+     */
+    public LiftDoor(double maxWidth, int doorOpenCloseTime, int liftNumber, SimulationClock clock) {
         this.maxWidth = maxWidth;
         isOpen = false;   //initialise the door to be closed
         isOpening = false;
         isClosing = false;
         this.doorOpenCloseTime = doorOpenCloseTime;
-        openAmount = 0;
+        doorDwellTime = 0;
+        transitionTime = NO_TRANSITION;
         this.liftNumber = liftNumber;
+        this.clock = clock;
+        console = System.out;
     }
-    
+
     /**
-     * Open the door
-     * note that we achieve the opening/closing with a thread sleep.  better to actually simulate the doors moving
+     * Start opening the door. Once open, it dwells and then closes by itself as update() is called
+     * @return true if the door was closed and has started opening
      */
-    public void open() {
-        isOpen = true;        
-        openAmount = maxWidth;
-        //Have a delay to make the door open/close be more realistic
-        liftSleep(doorOpenCloseTime);
-        System.out.printf("Door is now open: Lift %d\n", liftNumber);
-    }
-    
+    public boolean open() {
+        if (!isClosed()) {
+            System.out.printf("Door is not closed, cannot start opening it: Lift %d\n", liftNumber);
+            return false;
+        }
+        isOpening = true;
+        transitionTime = clock.nanoTime() + doorOpenCloseTime * MILLIMULTIPLIER;
+        return true;
+    }
+
     /**
-     * Close the door
-     * note that we achieve the opening/closing with a thread sleep.  better to actually simulate the doors moving
+     * Start closing the door now rather than waiting for the dwell to finish
+     * @return true if the door was fully open and has started closing
      */
-    public void close() {
+    public boolean close() {
+        if (!isOpen) {
+            return false;
+        }
+        startClosing(clock.nanoTime());
+        return true;
+    }
+
+    /**
+     * Move the door on to where it should be at the current time
+     */
+    public void update() {
+        long now = clock.nanoTime();
+
+        //a slow caller may have missed more than one transition, so keep going until we are up to date
+        while (transitionTime != NO_TRANSITION && now >= transitionTime) {
+            if (isOpening) {
+                isOpening = false;
+                isOpen = true;
+                transitionTime += doorDwellTime * MILLIMULTIPLIER;
+                if (console != null) {
+                    console.printf("Door is now open: Lift %d\n", liftNumber);
+                }
+            }
+            else if (isOpen) {
+                startClosing(transitionTime);
+            }
+            else if (isClosing) {
+                isClosing = false;
+                transitionTime = NO_TRANSITION;
+                if (console != null) {
+                    console.printf("Door is now closed: Lift %d\n", liftNumber);
+                }
+            }
+        }
+    }
+
+    /**
+     * helper method: start closing the door at the given time
+     */
+    private void startClosing(long time) {
         isOpen = false;
-        openAmount = 0;
-        //Have a delay to make the door open/close be more realistic
-        liftSleep(doorOpenCloseTime);
-        System.out.printf("Door is now closed: Lift %d\n", liftNumber);
+        isClosing = true;
+        transitionTime = time + doorOpenCloseTime * MILLIMULTIPLIER;
     }
-    
+
+    /**
+     * Setter: time the door stays fully open before it starts closing [ms]
+     */
+    public void setDoorDwellTime(int doorDwellTime) {
+        if (doorDwellTime < 0) {
+            System.out.printf("doorDwellTime %d invalid\n", doorDwellTime);
+            throw new IllegalArgumentException("doorDwellTime < 0");
+        }
+        this.doorDwellTime = doorDwellTime;
+    }
+
+    /**
+     * Setter: where the door says what it is doing, or null to say nothing
+     */
+    public void setConsole(PrintStream console) {
+        this.console = console;
+    }
+
     /**
      * Getters
      */
     public double doorOpenPosition() {
-        return openAmount;
+        if (isOpen) return maxWidth;
+        if (!isOpening && !isClosing) return 0;
+
+        //part way through opening/closing: work out how far the door has moved
+        double fractionLeft = (double) (transitionTime - clock.nanoTime()) / (doorOpenCloseTime * MILLIMULTIPLIER);
+        fractionLeft = Math.max(0, Math.min(1, fractionLeft));
+        if (isOpening) return maxWidth * (1 - fractionLeft);
+        else           return maxWidth * fractionLeft;
     }
-    
-    //Don't need an isClosed() method as if the door isn't open, it's closed (under the instantaneous door movement assumption)
+
     public boolean isOpen() {
         return isOpen;
     }
@@ -68,13 +156,30 @@ public class LiftDoor {
     }
     public boolean isClosing() {
         return isClosing;
-    }   
-    
-    public static void liftSleep(int sleeptime) {
-        try {
-            Thread.sleep(sleeptime);
-        } catch(InterruptedException ex) {
-            Thread.currentThread().interrupt();
-        }
+    }
+    public boolean isClosed() {
+        return !isOpen && !isOpening && !isClosing;
+    }
+    public int getDoorOpenCloseTime() {
+        return doorOpenCloseTime;
+    }
+    public int getDoorDwellTime() {
+        return doorDwellTime;
+    }
+
+    /**
+     * @return the time [ns] at which the door next changes state, or -1 if the door is closed
+     */
+    public long getNextTransitionTime() {
+        return transitionTime;
+    }
+
+    /**
+     * @return the time [ns] at which the door will be closed again (once it has finished opening, dwelling and closing), or -1 if the door is closed
+     */
+    public long getClosedTime() {
+        if (isOpening) return transitionTime + (doorDwellTime + doorOpenCloseTime) * MILLIMULTIPLIER;
+        if (isOpen)    return transitionTime + doorOpenCloseTime * MILLIMULTIPLIER;
+        return transitionTime;
     }
 }
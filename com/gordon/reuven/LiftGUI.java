@@ -4,6 +4,10 @@ import java.awt.FlowLayout;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.Queue;
 
 import javax.swing.BorderFactory;
@@ -27,6 +31,7 @@ public class LiftGUI extends JFrame {
     private static final String UP = "UP";
     private static final String DOWN = "DOWN";
     private static final int PADDING = 10;
+    private static final int PLANNING_WINDOW = 10;  //default time to batch button presses for before planning them [ms]
     private FloorButton[][] buttonsFloor; 
     private LiftButton[][] buttonsLift;
     private LiftDisplayPanel[] displayLift;
@@ -35,11 +40,41 @@ public class LiftGUI extends JFrame {
     //private int numberOfLifts;
         
     public LiftGUI(int numberOfFloors, int numberOfLifts, double distanceBetweenFloors, double velocity, double maxDoorOpenDistance, int liftStartFloor, double doorOpenCloseThreshold, int doorOpenCloseTime, int matchingAlgorithm, Queue<Instruction> instructionLog) {
+        this(new LiftParams(numberOfFloors, numberOfLifts, distanceBetweenFloors, velocity, maxDoorOpenDistance, liftStartFloor, doorOpenCloseThreshold, doorOpenCloseTime, matchingAlgorithm), instructionLog);
+    }
+    
+    public LiftGUI(LiftParams params, Queue<Instruction> instructionLog) {
+        this(params, instructionLog, null);
+    }
+    
+    /**
+     * Constructor: replay a stream of timed instructions, issuing each one when its time arrives (see InstructionReplayer).
+     * The cursor is closed when the replay finishes
+     */
+    public LiftGUI(LiftParams params, InstructionCursor replay) {
+        this(params, new LinkedList<Instruction>(), replay);
+    }
+    
+    /**
+     * Constructor: as above, for an Iterator of instructions
+     */
+    public LiftGUI(LiftParams params, Iterator<Instruction> replay) {
+        this(params, new InstructionIteratorCursor(replay));
+    }
+    
+    private LiftGUI(LiftParams params, Queue<Instruction> instructionLog, InstructionCursor replay) {
            
         super("LiftGUI");
         
+        int numberOfFloors = params.getNumberOfFloors();
+        int numberOfLifts = params.getNumberOfLifts();
+        
         //Build the lift controller (which builds the lifts and floors)
-        lc = new LiftController(numberOfFloors, numberOfLifts, distanceBetweenFloors, velocity, maxDoorOpenDistance, liftStartFloor, doorOpenCloseThreshold, doorOpenCloseTime, matchingAlgorithm);
+        lc = params.buildLiftController(new SystemClock());
+        //plan off the Swing thread, so a slow matching algorithm doesn't freeze the buttons (unless the params file says otherwise)
+        if (params.getPlanningWindow() == LiftParams.PLANNING_WINDOW_UNSET) {
+            lc.setPlanningWindow(PLANNING_WINDOW);
+        }
         
         //this.numberOfFloors = numberOfFloors;
         //this.numberOfLifts = numberOfLifts;
@@ -58,6 +93,13 @@ public class LiftGUI extends JFrame {
         setSize(800, 600);
         setResizable(true);
         setDefaultCloseOperation(EXIT_ON_CLOSE);
+        //stop the LC before exiting, so that its instruction log is closed
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                lc.stopLiftController();
+            }
+        });
         
         //Setup the Floor Buttons panel
         floorPanel.setLayout(new GridLayout(numberOfFloors, 2));
@@ -116,7 +158,10 @@ public class LiftGUI extends JFrame {
         setVisible(true);
         
         //Run the Lift controller
-        lc.StartLiftController(instructionLog);
+        lc.StartLiftController(instructionLog, params.getTickRate(), params.getTickThreads());
+        if (replay != null) {
+            lc.startInstructionProducer(new InstructionReplayer(lc, replay));
+        }
     }    
     
     /**
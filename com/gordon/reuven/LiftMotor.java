@@ -6,14 +6,14 @@ public class LiftMotor {
     
     //Instance variables
     private boolean motorState;     //TRUE -> in motion, FALSE -> stopped
-    private String motorDirection;  //"UP" or "DOWN"
+    private Direction motorDirection;  //UP or DOWN, NONE when stopped
     
     /**
      * Constructor
      */
     public LiftMotor() {
         motorState = false;
-        motorDirection = null;
+        motorDirection = Direction.NONE;
     }
     
     /**
@@ -21,17 +21,17 @@ public class LiftMotor {
      */
     public void stopMotor() {
         motorState = false;
-        motorDirection = null;
+        motorDirection = Direction.NONE;
     }
     
     public void motorUp() {
         motorState = true;
-        motorDirection = "UP";
+        motorDirection = Direction.UP;
     }
     
     public void motorDown() {
         motorState = true;
-        motorDirection = "DOWN";
+        motorDirection = Direction.DOWN;
     }
     
     /**
@@ -41,7 +41,7 @@ public class LiftMotor {
         return motorState;
     }
     
-    public String getMotorDirection() {
+    public Direction getMotorDirection() {
         return motorDirection;
     }
 }
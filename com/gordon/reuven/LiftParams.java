@@ -0,0 +1,258 @@
+package com.gordon.reuven;
+/**
+ * LiftParams class
+ * Holds the parameters of a building (the values in a paramsX.txt file) and knows how to read them from a file
+ * and how to build a Lift Controller from them
+ * The first 9 values in the file are required and read in order. Any optional values come after them and are read by name.
+ */
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+public class LiftParams {
+
+    //Instance variables
+    private static final int NUMBER_OF_PARAMS = 9;
+    private static final String TICK_RATE = "tickRate";
+    private static final String TICK_THREADS = "tickThreads";
+    private static final String DOOR_DWELL_TIME = "doorDwellTime";
+    private static final String VIRTUAL_THREADS = "virtualThreads";
+    private static final String INSTRUCTION_LOG_SIZE = "instructionLogSize";
+    private static final String INSTRUCTION_LOG_SPILL = "instructionLogSpill";
+    private static final String INSTRUCTION_LOG_SPILL_DIRECTORY = "instructionLog";
+    private static final String PLANNING_WINDOW = "planningWindow";
+    public static final int PLANNING_WINDOW_UNSET = Integer.MIN_VALUE;   //planningWindow not given: the LC's default (see LiftGUI)
+
+    private int numberOfFloors;
+    private int numberOfLifts;
+    private double distanceBetweenFloors;
+    private double velocity;
+    private double maxDoorOpenDistance;
+    private int liftStartFloor;
+    private double doorOpenCloseThreshold;
+    private int doorOpenCloseTime;
+    private int matchingAlgorithm;
+    private int tickRate;      //optional: ticks per second to step the lifts at on a shared pool. 0 -> a thread per lift
+    private int tickThreads;   //optional: number of threads in the shared pool when ticking
+    private int doorDwellTime; //optional: time the doors stay fully open before closing [ms]
+    private boolean virtualThreads; //optional: 1 -> run the lift threads on virtual threads (Java 21+)
+    private int instructionLogSize; //optional: number of instructions the LC keeps in memory. 0 -> the LC's default
+    private boolean instructionLogSpill; //optional: 1 -> spill older instructions to the instructionLog directory rather than dropping them
+    private int planningWindow; //optional: plan on a background thread, batching the calls made within this many ms. -1 -> plan on the calling thread. PLANNING_WINDOW_UNSET if not given
+
+    /**
+     * Constructor
+     */
+    public LiftParams(int numberOfFloors, int numberOfLifts, double distanceBetweenFloors, double velocity, double maxDoorOpenDistance, int liftStartFloor, double doorOpenCloseThreshold, int doorOpenCloseTime, int matchingAlgorithm) {
+        this.numberOfFloors = numberOfFloors;
+        this.numberOfLifts = numberOfLifts;
+        this.distanceBetweenFloors = distanceBetweenFloors;
+        this.velocity = velocity;
+        this.maxDoorOpenDistance = maxDoorOpenDistance;
+        this.liftStartFloor = liftStartFloor;
+        this.doorOpenCloseThreshold = doorOpenCloseThreshold;
+        this.doorOpenCloseTime = doorOpenCloseTime;
+        this.matchingAlgorithm = matchingAlgorithm;
+        tickRate = 0;
+        tickThreads = Math.max(1, Math.min(numberOfLifts, Runtime.getRuntime().availableProcessors()));
+        doorDwellTime = 0;
+        virtualThreads = false;
+        instructionLogSize = 0;
+        instructionLogSpill = false;
+        planningWindow = PLANNING_WINDOW_UNSET;
+    }
+
+    /**
+     * Copy constructor
+     */
+    public LiftParams(LiftParams other) {
+        this(other.numberOfFloors, other.numberOfLifts, other.distanceBetweenFloors, other.velocity, other.maxDoorOpenDistance, other.liftStartFloor, other.doorOpenCloseThreshold, other.doorOpenCloseTime, other.matchingAlgorithm);
+        tickRate = other.tickRate;
+        tickThreads = other.tickThreads;
+        doorDwellTime = other.doorDwellTime;
+        virtualThreads = other.virtualThreads;
+        instructionLogSize = other.instructionLogSize;
+        instructionLogSpill = other.instructionLogSpill;
+        planningWindow = other.planningWindow;
+    }
+
+    /**
+     * Parse the LC inputs from an input text file
+     * Each line is name=value and the values must be in the order of the constructor arguments
+     * @param lcInputs the name of the params file
+     */
+    public static LiftParams fromFile(String lcInputs) throws IOException {
+
+        //Store the values in this double array, and by name for the optional values
+        ArrayList<Double> inputValues = new ArrayList<Double>();
+        HashMap<String, Double> namedValues = new HashMap<String, Double>();
+
+        //Parse the input
+        try (BufferedReader br = new BufferedReader(new FileReader(lcInputs))) {
+            String line = null;
+            while ((line = br.readLine()) != null) {
+                String[] field = line.split("=");
+                inputValues.add(Double.parseDouble(field[1]));
+                namedValues.put(field[0].trim(), Double.parseDouble(field[1]));
+            }
+        }
+
+        if (inputValues.size() < NUMBER_OF_PARAMS) {
+            System.out.printf("params file %s has %d values, expected %d\n", lcInputs, inputValues.size(), NUMBER_OF_PARAMS);
+            throw new IllegalArgumentException("params file is incomplete");
+        }
+
+        //Now assign the values of the input file to the arguements of the LC
+        LiftParams params = new LiftParams(inputValues.get(0).intValue(), inputValues.get(1).intValue(), inputValues.get(2), inputValues.get(3), inputValues.get(4),
+                inputValues.get(5).intValue(), inputValues.get(6), inputValues.get(7).intValue(), inputValues.get(8).intValue());
+        
+        //and the optional values
+        if (namedValues.containsKey(TICK_RATE)) params.setTickRate(namedValues.get(TICK_RATE).intValue());
+        if (namedValues.containsKey(TICK_THREADS)) params.setTickThreads(namedValues.get(TICK_THREADS).intValue());
+        if (namedValues.containsKey(DOOR_DWELL_TIME)) params.setDoorDwellTime(namedValues.get(DOOR_DWELL_TIME).intValue());
+        if (namedValues.containsKey(VIRTUAL_THREADS)) params.setVirtualThreads(namedValues.get(VIRTUAL_THREADS).intValue() != 0);
+        if (namedValues.containsKey(INSTRUCTION_LOG_SIZE)) params.setInstructionLogSize(namedValues.get(INSTRUCTION_LOG_SIZE).intValue());
+        if (namedValues.containsKey(INSTRUCTION_LOG_SPILL)) params.setInstructionLogSpill(namedValues.get(INSTRUCTION_LOG_SPILL).intValue() != 0);
+        if (namedValues.containsKey(PLANNING_WINDOW)) params.setPlanningWindow(namedValues.get(PLANNING_WINDOW).intValue());
+        return params;
+    }
+
+    /**
+     * Build a Lift Controller for this building
+     * @param clock the clock for the lifts to use
+     */
+    public LiftController buildLiftController(SimulationClock clock) {
+        return buildLiftController(clock, System.out);
+    }
+
+    /**
+     * As above, with the Lift Controller saying what it is doing on the given stream (see LiftController.setConsole())
+     * @param console the stream to print to, or null to print nothing
+     */
+    public LiftController buildLiftController(SimulationClock clock, PrintStream console) {
+        LiftController lc = new LiftController(numberOfFloors, numberOfLifts, distanceBetweenFloors, velocity, maxDoorOpenDistance, liftStartFloor, doorOpenCloseThreshold, doorOpenCloseTime, matchingAlgorithm, clock, console);
+        lc.setDoorDwellTime(doorDwellTime);
+        lc.setVirtualThreads(virtualThreads);
+        if (instructionLogSize > 0 || instructionLogSpill) {
+            int capacity = instructionLogSize > 0 ? instructionLogSize : InstructionLog.DEFAULT_CAPACITY;
+            lc.setInstructionLog(new InstructionLog(capacity, instructionLogSpill ? new File(INSTRUCTION_LOG_SPILL_DIRECTORY) : null));
+        }
+        if (planningWindow != PLANNING_WINDOW_UNSET) {
+            lc.setPlanningWindow(planningWindow);
+        }
+        return lc;
+    }
+
+    /**
+     * Setters for the values that are varied in a scenario sweep
+     */
+    public void setNumberOfLifts(int numberOfLifts) {
+        this.numberOfLifts = numberOfLifts;
+    }
+
+    public void setVelocity(double velocity) {
+        this.velocity = velocity;
+    }
+
+    public void setDoorOpenCloseTime(int doorOpenCloseTime) {
+        this.doorOpenCloseTime = doorOpenCloseTime;
+    }
+
+    public void setMatchingAlgorithm(int matchingAlgorithm) {
+        this.matchingAlgorithm = matchingAlgorithm;
+    }
+
+    /**
+     * Setters for the optional values
+     */
+    public void setTickRate(int tickRate) {
+        this.tickRate = tickRate;
+    }
+
+    public void setTickThreads(int tickThreads) {
+        this.tickThreads = tickThreads;
+    }
+
+    public void setDoorDwellTime(int doorDwellTime) {
+        this.doorDwellTime = doorDwellTime;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    public void setInstructionLogSize(int instructionLogSize) {
+        this.instructionLogSize = instructionLogSize;
+    }
+
+    public void setInstructionLogSpill(boolean instructionLogSpill) {
+        this.instructionLogSpill = instructionLogSpill;
+    }
+
+    public void setPlanningWindow(int planningWindow) {
+        this.planningWindow = planningWindow;
+    }
+
+    /**
+     * Getters
+     */
+    public int getNumberOfFloors() {
+        return numberOfFloors;
+    }
+
+    public int getNumberOfLifts() {
+        return numberOfLifts;
+    }
+
+    public double getDistanceBetweenFloors() {
+        return distanceBetweenFloors;
+    }
+
+    public double getVelocity() {
+        return velocity;
+    }
+
+    public double getMaxDoorOpenDistance() {
+        return maxDoorOpenDistance;
+    }
+
+    public int getLiftStartFloor() {
+        return liftStartFloor;
+    }
+
+    public double getDoorOpenCloseThreshold() {
+        return doorOpenCloseThreshold;
+    }
+
+    public int getDoorOpenCloseTime() {
+        return doorOpenCloseTime;
+    }
+
+    public int getMatchingAlgorithm() {
+        return matchingAlgorithm;
+    }
+
+    public int getTickRate() {
+        return tickRate;
+    }
+
+    public int getTickThreads() {
+        return tickThreads;
+    }
+
+    public int getDoorDwellTime() {
+        return doorDwellTime;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public int getPlanningWindow() {
+        return planningWindow;
+    }
+}
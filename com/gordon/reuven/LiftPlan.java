@@ -0,0 +1,167 @@
+package com.gordon.reuven;
+/**
+ * LiftPlan class
+ * An immutable snapshot of the stops a lift is to visit, in order, as published by the LC after each change to the plans.
+ * The LC holds the current plan for each lift in an atomic reference. A lift takes a stop off its plan by swapping in advance()
+ * (compare and set), which shares the stops array and just moves the cursor on, so readers never lock and never see a half changed plan.
+ * The stops taken stay in the optimiser's queue until the call is served, so the plan also remembers them, and the plans published
+ * after it leave them out (see next()) until the LC forgets them (see forget()).
+ */
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Queue;
+
+public final class LiftPlan {
+
+    //Instance variables
+    private static final Node[] NO_NODES = new Node[0];
+    public static final LiftPlan EMPTY = new LiftPlan(0, NO_NODES, 0, NO_NODES);
+
+    private final long version;     //the version of the plans this was published in
+    private final Node[] stops;
+    private final int next;         //the index of the next stop to visit
+    private final Node[] taken;     //stops taken off this (or an earlier) plan that are still in the optimiser's queue
+
+    /**
+     * Constructor
+     */
+    private LiftPlan(long version, Node[] stops, int next, Node[] taken) {
+        this.version = version;
+        this.stops = stops;
+        this.next = next;
+        this.taken = taken;
+    }
+
+    /**
+     * Build the plan that follows this one from an optimiser's queue of nodes, leaving out the stops already taken
+     * @param version the version of the plans being published
+     * @param queue the nodes to visit, in order
+     */
+    public LiftPlan next(long version, Queue<Node> queue) {
+        Node[] newStops = new Node[queue.size()];
+        int n = 0;
+        boolean[] skipped = new boolean[taken.length];
+        for (Node node : queue) {
+            if (!skipOnce(node, skipped)) {
+                newStops[n++] = node;
+            }
+        }
+        if (n < newStops.length) {
+            Node[] trimmed = new Node[n];
+            System.arraycopy(newStops, 0, trimmed, 0, n);
+            newStops = trimmed;
+        }
+        return new LiftPlan(version, newStops, 0, taken);
+    }
+
+    /**
+     * @return true if next() would give the same stops as this plan has left
+     */
+    public boolean sameStops(Queue<Node> queue) {
+        int n = next;
+        boolean[] skipped = new boolean[taken.length];
+        for (Node node : queue) {
+            if (skipOnce(node, skipped)) {
+                continue;
+            }
+            if (n >= stops.length || !stops[n++].equals(node)) {
+                return false;
+            }
+        }
+        return n == stops.length;
+    }
+
+    /**
+     * helper method: true if a node is one of the stops taken that hasn't been skipped yet (and mark it skipped)
+     */
+    private boolean skipOnce(Node node, boolean[] skipped) {
+        for (int i = 0; i < taken.length; i++) {
+            if (!skipped[i] && taken[i].equals(node)) {
+                skipped[i] = true;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the plan with the next stop taken off
+     */
+    public LiftPlan advance() {
+        if (next >= stops.length) {
+            return this;
+        }
+        Node[] newTaken = new Node[taken.length + 1];
+        System.arraycopy(taken, 0, newTaken, 0, taken.length);
+        newTaken[taken.length] = stops[next];
+        return new LiftPlan(version, stops, next + 1, newTaken);
+    }
+
+    /**
+     * @return the plan without a taken stop (once the optimiser has been told it is served or cancelled), or this plan if it wasn't taken
+     */
+    public LiftPlan forget(Node stop) {
+        for (int i = 0; i < taken.length; i++) {
+            if (taken[i].equals(stop)) {
+                Node[] newTaken = new Node[taken.length - 1];
+                System.arraycopy(taken, 0, newTaken, 0, i);
+                System.arraycopy(taken, i + 1, newTaken, i, taken.length - i - 1);
+                return new LiftPlan(version, stops, next, newTaken);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return the next stop to visit, or null if there isn't one
+     */
+    public Node peek() {
+        return next < stops.length ? stops[next] : null;
+    }
+
+    /**
+     * @return true if there are no stops left
+     */
+    public boolean isEmpty() {
+        return next >= stops.length;
+    }
+
+    /**
+     * @return the number of stops left
+     */
+    public int size() {
+        return stops.length - next;
+    }
+
+    /**
+     * @return a read only view of the stops left
+     */
+    public List<Node> getStops() {
+        return new AbstractList<Node>() {
+            @Override
+            public Node get(int index) {
+                if (index < 0 || index >= size()) {
+                    throw new IndexOutOfBoundsException("Index: " + index);
+                }
+                return stops[next + index];
+            }
+
+            @Override
+            public int size() {
+                return LiftPlan.this.size();
+            }
+        };
+    }
+
+    /**
+     * Getter: the version of the plans this was published in
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return "v" + version + getStops();
+    }
+}
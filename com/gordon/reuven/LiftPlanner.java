@@ -0,0 +1,241 @@
+package com.gordon.reuven;
+/**
+ * LiftPlanner class
+ * Updates the lift node queues on a background thread, so that a button press on the GUI thread (or an arriving lift unselecting its call)
+ * only has to record the change rather than wait for the optimiser.
+ * The first change starts a batch, and any more that arrive within the planning window join it. The whole batch is then applied to the
+ * optimiser in one go (a single full re-match if the algorithm has no incremental version) and published to the lifts at once.
+ * The latency from each change being submitted to its plan being published is recorded.
+ */
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.TimeUnit;
+
+public class LiftPlanner implements Runnable {
+
+    //Instance variables
+    private static final long NANOMULTIPLIER = 1000000;    //ns per ms
+    private static final long IDLE_POLL_TIME = 100;       //how often an idle planner checks whether it has been stopped [ms]
+    private static final int LATENCY_BUCKETS = 64;        //latency histogram buckets: bucket n holds latencies < 2^n ns
+
+    /**
+     * The kinds of change to a call
+     */
+    public enum ChangeType { INSERT, CANCEL, SERVED }
+
+    /**
+     * A change to a call, waiting to be planned
+     */
+    public static class CallChange {
+
+        private Node call;
+        private int lift;           //the lift the call was made in or served by, or -1 for a floor call that hasn't been served
+        private ChangeType type;
+        private long submitTime;    //System.nanoTime() when the change was submitted
+
+        public CallChange(Node call, int lift, ChangeType type, long submitTime) {
+            this.call = call;
+            this.lift = lift;
+            this.type = type;
+            this.submitTime = submitTime;
+        }
+
+        public Node getCall() {
+            return call;
+        }
+
+        public int getLift() {
+            return lift;
+        }
+
+        public ChangeType getType() {
+            return type;
+        }
+
+        public long getSubmitTime() {
+            return submitTime;
+        }
+    }
+
+    private LiftController lc;
+    private long planningWindow;                    //how long to wait for more changes after the first one of a batch [ns]
+    private LinkedTransferQueue<CallChange> changes;
+    private volatile boolean running;
+    private volatile Thread thread;
+    private long failedBatches;                     //batches the LC failed to plan, even with a full re-match (guarded by this)
+
+    //latency metrics (guarded by this)
+    private long changesPlanned;
+    private long plansPublished;
+    private long totalLatency;
+    private long maxLatency;
+    private long[] latencyHistogram;
+
+    /**
+     * Constructor
+     * @param lc the Lift Controller whose plans this updates
+     * @param planningWindow how long to collect changes for after the first of a batch arrives [ms]. 0 -> just the ones already waiting
+     */
+    public LiftPlanner(LiftController lc, int planningWindow) {
+
+        //Input parameter validation
+        if (planningWindow < 0) {
+            System.out.printf("planningWindow = %d\n", planningWindow);
+            throw new IllegalArgumentException("planningWindow invalid");
+        }
+
+        this.lc = lc;
+        this.planningWindow = planningWindow * NANOMULTIPLIER;
+        changes = new LinkedTransferQueue<CallChange>();
+        latencyHistogram = new long[LATENCY_BUCKETS];
+        running = true;
+    }
+
+    /**
+     * Submit a change to a call to be planned. Returns straight away
+     */
+    public void submit(Node call, int lift, ChangeType type) {
+        changes.add(new CallChange(call, lift, type, System.nanoTime()));
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        List<CallChange> batch = new ArrayList<CallChange>();
+        try {
+            while (running) {
+                //wait for the first change of a batch
+                CallChange first = changes.poll(IDLE_POLL_TIME, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                //collect any more that arrive within the window
+                long deadline = first.getSubmitTime() + planningWindow;
+                long remaining;
+                while ((remaining = deadline - System.nanoTime()) > 0) {
+                    CallChange next = changes.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                changes.drainTo(batch);
+
+                //plan and publish them all at once. If that fails the LC falls back to a full re-match of the selections (see
+                //LiftController.applyCallChanges()). If the re-match fails too the batch is reported, and the planner keeps going for the next one
+                try {
+                    lc.applyCallChanges(batch);
+                    record(batch, System.nanoTime());
+                }
+                catch (RuntimeException ex) {
+                    fail(batch, ex);
+                }
+                batch.clear();
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stop the planner. Any changes still waiting are not planned
+     */
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * helper method: record the latency of each change in a published batch
+     */
+    private synchronized void record(List<CallChange> batch, long publishTime) {
+        plansPublished++;
+        for (CallChange change : batch) {
+            long latency = publishTime - change.getSubmitTime();
+            changesPlanned++;
+            totalLatency += latency;
+            maxLatency = Math.max(maxLatency, latency);
+            latencyHistogram[Math.min(LATENCY_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(Math.max(latency, 1)))]++;
+        }
+    }
+
+    /**
+     * helper method: report a batch the LC failed to plan, even with a full re-match
+     */
+    private synchronized void fail(List<CallChange> batch, RuntimeException ex) {
+        failedBatches++;
+        System.out.printf("planner: failed to plan a batch of %d changes, or to re-match: %s\n", batch.size(), ex);
+        ex.printStackTrace(System.out);
+    }
+
+    /**
+     * Getter: the number of batches the LC failed to plan, even with the full re-match it falls back to. The published plans may not
+     * include their changes until the selections are re-matched (see LiftController.doMatching())
+     */
+    public synchronized long getFailedBatches() {
+        return failedBatches;
+    }
+
+    /**
+     * Getter: the number of changes planned
+     */
+    public synchronized long getChangesPlanned() {
+        return changesPlanned;
+    }
+
+    /**
+     * Getter: the number of times new plans have been published (one per batch)
+     */
+    public synchronized long getPlansPublished() {
+        return plansPublished;
+    }
+
+    /**
+     * Getter: the number of changes waiting to be planned
+     */
+    public int getPending() {
+        return changes.size();
+    }
+
+    /**
+     * Getter: mean latency from a change being submitted to its plan being published [ns]
+     */
+    public synchronized long getMeanLatency() {
+        return changesPlanned == 0 ? 0 : totalLatency / changesPlanned;
+    }
+
+    /**
+     * Getter: maximum latency from a change being submitted to its plan being published [ns]
+     */
+    public synchronized long getMaxLatency() {
+        return maxLatency;
+    }
+
+    /**
+     * Getter: an upper bound on a percentile of the latency (to within a factor of 2) [ns]
+     * @param percentile eg 99
+     */
+    public synchronized long getLatencyPercentile(double percentile) {
+        long target = (long) Math.ceil(changesPlanned * percentile / 100);
+        long count = 0;
+        for (int n = 0; n < LATENCY_BUCKETS; n++) {
+            count += latencyHistogram[n];
+            if (count >= target && count > 0) {
+                return n < LATENCY_BUCKETS - 1 ? Math.min(1L << n, maxLatency) : maxLatency;
+            }
+        }
+        return maxLatency;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("planner: %d changes in %d plans (%d batches failed), latency mean %.2fms, p99 < %.2fms, max %.2fms", changesPlanned,
+                plansPublished, failedBatches, getMeanLatency() / 1e6, getLatencyPercentile(99) / 1e6, maxLatency / 1e6);
+    }
+}
@@ -82,4 +82,13 @@ public class LiftState {
         if (isGoingUp())    return UP;
         else                return DOWN;
     }
+    
+    /**
+     * @return the direction the lift is going in (NONE if stationary)
+     */
+    public Direction getDirection() {
+        if (isStationary()) return Direction.NONE;
+        if (isGoingUp())    return Direction.UP;
+        else                return Direction.DOWN;
+    }
 }
@@ -0,0 +1,88 @@
+package com.gordon.reuven;
+/**
+ * Benchmark comparing lift threads on platform threads with lift threads on virtual threads
+ * For each thread type it builds a building with the given number of lifts, gives every lift a lift call, runs the lifts
+ * for a while and reports how long the threads took to start, how much CPU and heap was used and how far the lifts got.
+ *
+ * java LiftThreadBenchmark [numberOfLifts] [seconds]
+ */
+import java.lang.management.ManagementFactory;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.Random;
+
+public class LiftThreadBenchmark {
+
+    //Instance variables
+    private static final int NUMBER_OF_FLOORS = 20;
+    private static final long SEED = 42;
+
+    public static void main(String[] args) throws InterruptedException {
+
+        int numberOfLifts = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        run(false, numberOfLifts, seconds);
+        if (LiftThreadFactory.isVirtualSupported()) {
+            run(true, numberOfLifts, seconds);
+        }
+        else {
+            System.out.printf("Virtual threads are not supported by Java %s, skipping\n", System.getProperty("java.version"));
+        }
+    }
+
+    /**
+     * Run the benchmark for one type of thread
+     */
+    private static void run(boolean virtual, int numberOfLifts, int seconds) throws InterruptedException {
+
+        Random random = new Random(SEED);
+
+        //the LC logs a lot, so it is built without a console
+        LiftController lc = new LiftController(NUMBER_OF_FLOORS, numberOfLifts, 3, 2, 1.5, 1, 0.25, 500, 1, new SystemClock(), null);
+        lc.setHeadless(true);
+        lc.setVerbose(false);
+        lc.setVirtualThreads(virtual);
+
+        //send every lift somewhere
+        Queue<Instruction> instructionLog = new LinkedList<Instruction>();
+        for (int i = 1; i <= numberOfLifts; i++) {
+            instructionLog.add(new Instruction("methodFromLift", "fromLift", 2 + random.nextInt(NUMBER_OF_FLOORS - 1), i, "", true));
+        }
+
+        System.gc();
+        long cpuStart = processCpuTime();
+        long start = System.nanoTime();
+        lc.StartLiftController(instructionLog);
+        long startTime = System.nanoTime() - start;
+        int threads = Thread.activeCount();
+
+        Thread.sleep(seconds * 1000L);
+
+        long cpuTime = processCpuTime() - cpuStart;
+        long heapUsed = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+        lc.stopLiftController();
+
+        double distance = 0;
+        long stops = 0;
+        for (int i = 1; i <= numberOfLifts; i++) {
+            distance += lc.getLift(i).getState().distanceTravelled();
+            stops += lc.getLift(i).getBellCount();
+        }
+
+        System.out.printf("%s threads, %d lifts, %ds\n", virtual ? "Virtual" : "Platform", numberOfLifts, seconds);
+        System.out.printf("  start (including instructions): %.1fms, live platform threads: %d\n", startTime / 1e6, threads);
+        System.out.printf("  CPU time: %.2fs, heap used: %.1fMB\n", cpuTime / 1e9, heapUsed / 1e6);
+        System.out.printf("  distance travelled: %.1fm, stops: %d\n", distance, stops);
+    }
+
+    /**
+     * helper method: CPU time used by the JVM so far in ns (-1 if not available)
+     */
+    private static long processCpuTime() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+        }
+        return -1;
+    }
+}
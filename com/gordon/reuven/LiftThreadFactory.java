@@ -0,0 +1,92 @@
+package com.gordon.reuven;
+/**
+ * Lift thread factory
+ * Makes the threads that the lifts (and anything producing instructions for them) run on: either platform threads
+ * or virtual threads. Virtual threads are cheap enough to give each of tens of thousands of lifts its own thread.
+ * Virtual threads need Java 21+. They are looked up by reflection so that this still compiles on older JDKs.
+ * On a JDK without them the factory prints a message and makes platform threads instead.
+ * Note that virtual threads are daemon threads, so something else (eg the GUI) has to keep the JVM alive.
+ */
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LiftThreadFactory implements ThreadFactory {
+
+    //Instance variables
+    private static final Object VIRTUAL_BUILDER = lookupVirtualBuilder();
+    private static final Method UNSTARTED = lookupUnstarted();
+
+    private boolean virtual;
+    private String namePrefix;
+    private AtomicInteger count;
+
+    /**
+     * Constructor
+     * @param virtual true to make virtual threads (if the JDK supports them), false for platform threads
+     * @param namePrefix threads are named namePrefix-1, namePrefix-2, ...
+     */
+    public LiftThreadFactory(boolean virtual, String namePrefix) {
+        if (virtual && !isVirtualSupported()) {
+            System.out.printf("Virtual threads are not supported by Java %s, using platform threads\n", System.getProperty("java.version"));
+            virtual = false;
+        }
+        this.virtual = virtual;
+        this.namePrefix = namePrefix;
+        count = new AtomicInteger();
+    }
+
+    /**
+     * Make a new (unstarted) thread for the given task
+     */
+    @Override
+    public Thread newThread(Runnable r) {
+        String name = namePrefix + "-" + count.incrementAndGet();
+        if (!virtual) {
+            return new Thread(r, name);
+        }
+        try {
+            Thread t = (Thread) UNSTARTED.invoke(VIRTUAL_BUILDER, r);
+            t.setName(name);
+            return t;
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("could not create a virtual thread", ex);
+        }
+    }
+
+    /**
+     * Getter: true if this factory makes virtual threads
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * @return true if the running JDK supports virtual threads
+     */
+    public static boolean isVirtualSupported() {
+        return VIRTUAL_BUILDER != null && UNSTARTED != null;
+    }
+
+    /**
+     * helper method: Thread.ofVirtual(), or null on a JDK without virtual threads
+     */
+    private static Object lookupVirtualBuilder() {
+        try {
+            return Thread.class.getMethod("ofVirtual").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * helper method: Thread.Builder.unstarted(Runnable), or null on a JDK without virtual threads
+     */
+    private static Method lookupUnstarted() {
+        try {
+            return Class.forName("java.lang.Thread$Builder").getMethod("unstarted", Runnable.class);
+        } catch (ReflectiveOperationException ex) {
+            return null;
+        }
+    }
+}
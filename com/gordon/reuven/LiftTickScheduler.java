@@ -0,0 +1,151 @@
+package com.gordon.reuven;
+/**
+ * Lift tick scheduler
+ * Instead of giving each lift its own thread spinning as fast as it can, run every lift's update/guide step
+ * at a fixed tick rate (eg 100Hz) on a small shared thread pool. CPU use then depends on the tick rate rather than on
+ * the number of lifts and cores.
+ * A tick overruns if a lift's step takes longer than the tick period. Overruns are counted for each lift.
+ */
+import java.io.PrintStream;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LiftTickScheduler {
+
+    //Instance variables
+    private static final long NANOMULTIPLIER = 1000000000;
+
+    private LiftController lc;
+    private int tickRate;           //ticks per second
+    private int poolSize;           //number of threads shared by all the lifts
+    private long tickPeriod;        //in ns
+    private ScheduledThreadPoolExecutor executor;
+    private AtomicLongArray ticks;        //number of ticks run for each lift
+    private AtomicLongArray overruns;     //number of ticks for each lift that took longer than the tick period
+    private AtomicLongArray maxTickTime;  //longest tick for each lift in ns
+
+    /**
+     * Constructor
+     * @param lc the Lift Controller whose lifts are to be run
+     * @param tickRate number of ticks per second
+     * @param poolSize number of threads in the shared pool
+     */
+    public LiftTickScheduler(LiftController lc, int tickRate, int poolSize) {
+
+        //Input checking
+        if (tickRate <= 0) {
+            System.out.printf("tickRate %d invalid\n", tickRate);
+            throw new IllegalArgumentException("tickRate <= 0");
+        }
+        if (poolSize <= 0) {
+            System.out.printf("poolSize %d invalid\n", poolSize);
+            throw new IllegalArgumentException("poolSize <= 0");
+        }
+
+        this.lc = lc;
+        this.tickRate = tickRate;
+        this.poolSize = poolSize;
+        tickPeriod = NANOMULTIPLIER / tickRate;
+        ticks = new AtomicLongArray(lc.getnumberOfLifts() + 1);
+        overruns = new AtomicLongArray(lc.getnumberOfLifts() + 1);
+        maxTickTime = new AtomicLongArray(lc.getnumberOfLifts() + 1);
+    }
+
+    /**
+     * Inner class for the step run for a lift on every tick
+     */
+    private class LiftTick implements Runnable {
+
+        //instance variable
+        private Lift l;
+
+        /**
+         * Constructor
+         */
+        public LiftTick(Lift l) {
+            this.l = l;
+        }
+
+        @Override
+        public void run() {
+            int liftNumber = l.getLiftNumber();
+            long start = System.nanoTime();
+
+            lc.runInEachLoop(l);
+
+            long tickTime = System.nanoTime() - start;
+            ticks.incrementAndGet(liftNumber);
+            if (tickTime > maxTickTime.get(liftNumber)) {
+                maxTickTime.set(liftNumber, tickTime);
+            }
+            if (tickTime > tickPeriod) {
+                overruns.incrementAndGet(liftNumber);
+                System.out.printf("Lift %d tick overran: %dms > tick period of %dms\n", liftNumber, tickTime / 1000000, tickPeriod / 1000000);
+            }
+        }
+    }
+
+    /**
+     * Inner class to update the observers once per tick
+     */
+    private class ObserverTick implements Runnable {
+        @Override
+        public void run() {
+            lc.notifyObservers();
+        }
+    }
+
+    /**
+     * Start ticking every lift
+     */
+    public void start() {
+        if (executor != null) {
+            throw new IllegalStateException("tick scheduler already started");
+        }
+        executor = new ScheduledThreadPoolExecutor(poolSize);
+        for (int i = 1; i <= lc.getnumberOfLifts(); i++) {
+            //a fixed rate task is never run concurrently with itself, so each lift is only ever stepped by one thread at a time
+            executor.scheduleAtFixedRate(new LiftTick(lc.getLift(i)), 0, tickPeriod, TimeUnit.NANOSECONDS);
+        }
+        executor.scheduleAtFixedRate(new ObserverTick(), 0, tickPeriod, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stop ticking
+     */
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Print the number of ticks and overruns for each lift
+     */
+    public void printReport(PrintStream out) {
+        out.printf("Tick rate %dHz on %d threads\n", tickRate, poolSize);
+        for (int i = 1; i <= lc.getnumberOfLifts(); i++) {
+            out.printf("Lift %d: %d ticks, %d overruns, longest tick %.3fms\n", i, ticks.get(i), overruns.get(i), maxTickTime.get(i) / 1e6);
+        }
+    }
+
+    /**
+     * Getters
+     */
+    public int getTickRate() {
+        return tickRate;
+    }
+
+    public long getTicks(int liftNumber) {
+        return ticks.get(liftNumber);
+    }
+
+    public long getOverruns(int liftNumber) {
+        return overruns.get(liftNumber);
+    }
+
+    public long getMaxTickTime(int liftNumber) {
+        return maxTickTime.get(liftNumber);
+    }
+}
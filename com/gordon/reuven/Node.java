@@ -33,4 +33,28 @@ public class Node {
     public boolean getfromFloorDOWN() {
         return fromFloorDOWN;
     }
+    
+    /**
+     * Two nodes are the same if they are for the same floor and came from the same selection
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Node)) return false;
+        Node n = (Node) o;
+        return floor == n.floor && fromLift == n.fromLift && fromFloorUP == n.fromFloorUP && fromFloorDOWN == n.fromFloorDOWN;
+    }
+    
+    @Override
+    public int hashCode() {
+        return floor * 8 + (fromLift ? 4 : 0) + (fromFloorUP ? 2 : 0) + (fromFloorDOWN ? 1 : 0);
+    }
+    
+    @Override
+    public String toString() {
+        if (fromLift) return floor + "L";
+        if (fromFloorUP) return floor + "U";
+        if (fromFloorDOWN) return floor + "D";
+        return Integer.toString(floor);
+    }
 }
@@ -3,6 +3,9 @@ import java.util.Queue;
 
 /**
  * Interface to define how a matching object must optimise a set of selections of lift and floor buttons
+ * The plans (the node queues) are kept between calls: optimise() recomputes them all from the selections, and the insert/cancel/served methods
+ * update them in place for a single call, which only touches the plan of the lift the call affects.
+ * In the incremental methods, lift is the lift a call was made in or served by, or -1 for a floor call that hasn't been served
  */
 
 public interface Optimise {
@@ -13,4 +16,13 @@ public interface Optimise {
 	//return an array of optimised node queues for all lifts to visit
 	public Queue<Node>[] getOptimisedNodesAll();
 	
+	//add a call that has just been selected to the plans
+	public void insertCall(Node call, int lift);
+	
+	//remove a call that has been unselected before a lift got to it
+	public void cancelCall(Node call, int lift);
+	
+	//remove a call that a lift has served
+	public void servedCall(Node call, int lift);
+	
 }
@@ -1,31 +1,79 @@
 package com.gordon.reuven;
+import java.io.PrintStream;
+import java.util.LinkedList;
 import java.util.Queue;
 
 /**
  * OptimiserAlgo object- Define all the details which we will use to perform the optimisation.
  * Implement subclasses of this class to actually perform various optimisation algorithms *
+ * A subclass computes the full plan in planAll(). By default the incremental methods just recompute the full plan- override them to update
+ * the plan of the affected lift in place
+ * Algorithms that plan from where the lifts are read their positions and directions from the LC's FleetState (see setFleetState()), and
+ * algorithms that weigh up routes by time are given the building's travel times (see setTravelTimeModel())
  */
 public class OptimiserAlgo implements Optimise {
 
 	//Instance variables
 	private int numberOfLifts;
 	private int numberOfFloors;
-	private boolean[][] selectionsFromLift;
-	private boolean[][] selectionsFromFloor;
+	private SelectionStore selections;
 	private int algoNumber;
+	private FleetState fleet;	//where the lifts are (null if not known: every lift is taken to be stationary at floor 1)
+	private TravelTimeModel travelTimes = TravelTimeModel.UNIT;	//how long the lifts take between floors and at each stop
+	private PrintStream console = System.out;	//where the algorithm prints its debugging (null to print nothing)
 	private Queue<Node>[] liftNopoll;
 	
 	/**
 	 * Constructor
 	 */
-	public OptimiserAlgo(int numberOfLifts, int numberOfFloors, boolean[][] selectionsFromLift, boolean[][] selectionsFromFloor, int algoNumber) {
+	public OptimiserAlgo(int numberOfLifts, int numberOfFloors, SelectionStore selections, int algoNumber) {
 		this.numberOfLifts = numberOfLifts;
 		this.numberOfFloors = numberOfFloors;
-		this.selectionsFromLift = selectionsFromLift;
-		this.selectionsFromFloor = selectionsFromFloor;
+		this.selections = selections;
 		this.algoNumber = algoNumber;
 	}
 	
+	/**
+	 * Build the optimiser for an algorithm
+	 * @param algoNumber 1 == OptimiserAlgo1, 2 == OptimiserAlgo2, 3 == OptimiserAlgo3, 4 == OptimiserAlgo4
+	 */
+	public static OptimiserAlgo create(int numberOfLifts, int numberOfFloors, SelectionStore selections, int algoNumber) {
+		return create(numberOfLifts, numberOfFloors, selections, null, algoNumber);
+	}
+	
+	/**
+	 * As above, for the lifts in a fleet
+	 */
+	public static OptimiserAlgo create(int numberOfLifts, int numberOfFloors, SelectionStore selections, FleetState fleet, int algoNumber) {
+		OptimiserAlgo o;
+		switch(algoNumber) {
+			case 1:
+				o = new OptimiserAlgo1(numberOfLifts, numberOfFloors, selections, algoNumber);
+				break;
+			case 2:
+				o = new OptimiserAlgo2(numberOfLifts, numberOfFloors, selections, algoNumber);
+				break;
+			case 3:
+				o = new OptimiserAlgo3(numberOfLifts, numberOfFloors, selections, algoNumber);
+				break;
+			case 4:
+				o = new OptimiserAlgo4(numberOfLifts, numberOfFloors, selections, algoNumber);
+				break;
+			default:
+				System.out.printf("matching algorithm %d is invalid\n", algoNumber);
+				throw new IllegalArgumentException("algoNumber invalid");
+		}
+		o.setFleetState(fleet);
+		return o;
+	}
+	
+	/**
+	 * Constructor: from the old selections arrays (copied into a SelectionStore)
+	 */
+	public OptimiserAlgo(int numberOfLifts, int numberOfFloors, boolean[][] selectionsFromLift, boolean[][] selectionsFromFloor, int algoNumber) {
+		this(numberOfLifts, numberOfFloors, SelectionStore.fromArrays(numberOfFloors, numberOfLifts, selectionsFromLift, selectionsFromFloor), algoNumber);
+	}
+	
 	public int getNumberOfLifts() {
 		return numberOfLifts;
 	}
@@ -34,35 +82,101 @@ public class OptimiserAlgo implements Optimise {
 		return numberOfFloors;
 	}
 
+	public SelectionStore getSelections() {
+		return selections;
+	}
+
+	/**
+	 * A copy of the lift selections as an array. Use getSelections() in the algorithms
+	 */
 	public boolean[][] getSelectionsFromLift() {
-		return selectionsFromLift;
+		return selections.toLiftArray();
 	}
 
+	/**
+	 * A copy of the floor selections as an array. Use getSelections() in the algorithms
+	 */
 	public boolean[][] getSelectionsFromFloor() {
-		return selectionsFromFloor;
+		return selections.toFloorArray();
 	}
 	
 	public int getAlgoNumber() {
 		return algoNumber;
 	}
+	
+	public FleetState getFleetState() {
+		return fleet;
+	}
+	
+	public void setFleetState(FleetState fleet) {
+		this.fleet = fleet;
+	}
+	
+	/**
+	 * Setter: how long the lifts take between floors and at each stop. Until this is called a lift takes 1s a floor and no time at a stop
+	 */
+	public void setTravelTimeModel(TravelTimeModel travelTimes) {
+		if (travelTimes == null) {
+			System.out.printf("travelTimes is null\n");
+			throw new IllegalArgumentException("travelTimes is null");
+		}
+		this.travelTimes = travelTimes;
+	}
+	
+	public TravelTimeModel getTravelTimeModel() {
+		return travelTimes;
+	}
+	
+	/**
+	 * Setter: where the algorithm prints its debugging, or null to print nothing
+	 */
+	public void setConsole(PrintStream console) {
+		this.console = console;
+	}
+	
+	public PrintStream getConsole() {
+		return console;
+	}
+	
+	/**
+	 * The position of a lift as a floor number (see FleetState.getPositionInFloors())
+	 */
+	protected double getLiftPosition(int lift) {
+		return fleet == null ? 1 : fleet.getPositionInFloors(lift);
+	}
+	
+	/**
+	 * The direction a lift is moving in
+	 */
+	protected Direction getLiftDirection(int lift) {
+		return fleet == null ? Direction.NONE : fleet.getDirection(lift);
+	}
+	
+	/**
+	 * The direction a lift last moved in (see FleetState.getHeading())
+	 */
+	protected Direction getLiftHeading(int lift) {
+		return fleet == null ? Direction.NONE : fleet.getHeading(lift);
+	}
 
 	/* (non-Javadoc)
 	 * @see Optimise#optimise()
 	 */
 	@Override
 	public void optimise() {
-		switch(algoNumber) {
-			//stupid matching algo
-			case 1: {
-				liftNopoll = new OptimiserAlgo1(getNumberOfLifts(), getNumberOfFloors(), getSelectionsFromLift(), getSelectionsFromFloor(), getAlgoNumber()).getOptimisedNodesAll();				
-				break;
-			}
-			//optimise just for lift buttons being pressed
-			case 2: {
-				liftNopoll = new OptimiserAlgo2(getNumberOfLifts(), getNumberOfFloors(), getSelectionsFromLift(), getSelectionsFromFloor(), getAlgoNumber()).getOptimisedNodesAll();				
-				break;
-			}
-		}
+		liftNopoll = planAll();
+	}
+
+	/**
+	 * Compute the full plan from the selections. Subclasses implement their algorithm here- this one hands over to the subclass for algoNumber:
+	 * 1 == stupid matching algo, 2 == optimise just for lift buttons being pressed, 3 == collective control (up/down sweeps),
+	 * 4 == collective control with the floor calls given to the lift that gets there soonest
+	 */
+	protected Queue<Node>[] planAll() {
+		OptimiserAlgo o = create(getNumberOfLifts(), getNumberOfFloors(), getSelections(), getFleetState(), getAlgoNumber());
+		o.setTravelTimeModel(travelTimes);
+		o.setConsole(console);
+		return o.planAll();
 	}
 
 	@Override
@@ -70,4 +184,55 @@ public class OptimiserAlgo implements Optimise {
 		return liftNopoll;
 	}
 
+	/**
+	 * Replace the plans, eg with ones computed by planAll() on a copy of the selections
+	 */
+	protected void setOptimisedNodesAll(Queue<Node>[] liftNopoll) {
+		this.liftNopoll = liftNopoll;
+	}
+
+	/**
+	 * @return true if the algorithm updates the plans for a single call in place, false if every change re-matches everything
+	 */
+	public boolean isIncremental() {
+		return false;
+	}
+
+	@Override
+	public void insertCall(Node call, int lift) {
+		optimise();
+	}
+
+	@Override
+	public void cancelCall(Node call, int lift) {
+		optimise();
+	}
+
+	@Override
+	public void servedCall(Node call, int lift) {
+		optimise();
+	}
+
+	/**
+	 * Consistency check: compare the current plan with a full recompute
+	 * The lifts don't take nodes off the queues (see LiftPlan), so a node stays in its queue until it is served and the plans should be the same.
+	 * An algorithm that isn't incremental recomputes the full plan for every change anyway (and may plan from where the lifts were at the time),
+	 * so there is nothing to check
+	 * @return true if the plans are the same
+	 */
+	public boolean verifyPlan() {
+		if (!isIncremental()) {
+			return true;
+		}
+		Queue<Node>[] full = planAll();
+		for (int i = 1; i <= numberOfLifts; i++) {
+			LinkedList<Node> expected = new LinkedList<Node>(full[i]);
+			if (!expected.equals(new LinkedList<Node>(liftNopoll[i]))) {
+				System.out.printf("Lift %d: plan %s != full plan %s\n", i, liftNopoll[i], expected);
+				return false;
+			}
+		}
+		return true;
+	}
+
 }
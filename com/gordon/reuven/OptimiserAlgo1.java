@@ -1,23 +1,30 @@
 package com.gordon.reuven;
+import java.io.PrintStream;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
 import java.util.Queue;
 
 /**
  * This is the stupid matching algorithm which gets lifts to go to floors selected from the lift in ascending order.
  * All floor buttons pressed from the floor are assigned to lift 1 *
+ * Each queue is the floors selected in the lift in ascending order, then (lift 1 only) the floors whose buttons are selected in ascending order,
+ * UP before DOWN. A single call only changes one queue, so the incremental methods insert/remove that node in place
  */
 public class OptimiserAlgo1 extends OptimiserAlgo {
 
-	public OptimiserAlgo1(int numberOfLifts, int numberOfFloors, boolean[][] selectionsFromLift, boolean[][] selectionsFromFloor, int algoNumber) {
-		super(numberOfLifts, numberOfFloors, selectionsFromLift, selectionsFromFloor, algoNumber);
+	public OptimiserAlgo1(int numberOfLifts, int numberOfFloors, SelectionStore selections, int algoNumber) {
+		super(numberOfLifts, numberOfFloors, selections, algoNumber);
 	}
 	
 	/**
 	 * Determine the optimized queue of nodes to visit for each lift
 	 */
-	public Queue<Node>[] getOptimisedNodesAll() {
+	@Override
+	protected Queue<Node>[] planAll() {
 		
 		Queue<Node>[] liftNopoll = new Queue[getNumberOfLifts() + 1];
+		SelectionStore selections = getSelections();
 		
 		//for each lift, check all floors selected by the lift. add to the node queue for that lift
         for(int i = 1; i <= getNumberOfLifts(); i++) {
@@ -25,27 +32,82 @@ public class OptimiserAlgo1 extends OptimiserAlgo {
             //Now remove the existing queue for this lift as we are going to recalculate it
             liftNopoll[i] = new LinkedList<Node>();
             
-            for (int j = 1; j <= getNumberOfFloors(); j++) {
-                if (getSelectionsFromLift()[j][i]) {
-                    //add a node: Node(int floor, boolean fromLift, boolean fromFloorUP, boolean fromFloorDOWN)
-                    liftNopoll[i].add(new Node(j, true, false, false));
-                }
+            //jump from one selected floor to the next
+            for (int j = selections.nextLiftSelection(i, 1); j != SelectionStore.NO_FLOOR; j = selections.nextLiftSelection(i, j + 1)) {
+                //add a node: Node(int floor, boolean fromLift, boolean fromFloorUP, boolean fromFloorDOWN)
+                liftNopoll[i].add(new Node(j, true, false, false));
             }
         }
         //all selections from floors to be assigned to lift #1
-        for (int j = 1; j <= getNumberOfFloors(); j++) {
-            if (getSelectionsFromFloor()[j][0]) {
+        for (int j = selections.nextFloorCall(1); j != SelectionStore.NO_FLOOR; j = selections.nextFloorCall(j + 1)) {
+            if (selections.isFromFloor(j, Direction.UP)) {
                 liftNopoll[1].add(new Node(j, false, true, false));
             }
-            if (getSelectionsFromFloor()[j][1]) {
+            if (selections.isFromFloor(j, Direction.DOWN)) {
                 liftNopoll[1].add(new Node(j, false, false, true));
             }
         }
         //Debugging
-        for(int i = 1; i <= getNumberOfLifts(); i++) {
-        	System.out.printf("Size of queue for lift %d = %d\n", i, liftNopoll[i].size());
+        PrintStream console = getConsole();
+        for(int i = 1; i <= getNumberOfLifts() && console != null; i++) {
+        	console.printf("Size of queue for lift %d = %d\n", i, liftNopoll[i].size());
         }
 		
         return liftNopoll;
 	}
+	
+	@Override
+	public boolean isIncremental() {
+		return true;
+	}
+	
+	/**
+	 * Insert the call into the queue of the lift it is assigned to, keeping the queue in order
+	 */
+	@Override
+	public void insertCall(Node call, int lift) {
+		List<Node> queue = (List<Node>) getOptimisedNodesAll()[assignedLift(call, lift)];
+		int rank = rank(call);
+		ListIterator<Node> it = queue.listIterator();
+		while (it.hasNext()) {
+			int r = rank(it.next());
+			if (r == rank) {
+				//already in the queue
+				return;
+			}
+			if (r > rank) {
+				it.previous();
+				break;
+			}
+		}
+		it.add(call);
+	}
+	
+	@Override
+	public void cancelCall(Node call, int lift) {
+		getOptimisedNodesAll()[assignedLift(call, lift)].remove(call);
+	}
+	
+	/**
+	 * The lift normally polls the node off its queue when it gets to the floor, so there is usually nothing left to remove
+	 */
+	@Override
+	public void servedCall(Node call, int lift) {
+		getOptimisedNodesAll()[assignedLift(call, lift)].remove(call);
+	}
+	
+	/**
+	 * helper method: the lift whose queue a call goes in- the lift it was made in, or lift 1 for a floor call
+	 */
+	private int assignedLift(Node call, int lift) {
+		return call.getFromLift() ? lift : 1;
+	}
+	
+	/**
+	 * helper method: the position of a node in the queue order- lift calls by floor, then floor calls by floor, UP before DOWN
+	 */
+	private int rank(Node n) {
+		int rank = 2 * n.getFloor() + (n.getfromFloorDOWN() ? 1 : 0);
+		return n.getFromLift() ? rank : rank + 2 * (getNumberOfFloors() + 1);
+	}
 }
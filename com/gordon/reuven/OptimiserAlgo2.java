@@ -1,18 +1,160 @@
 package com.gordon.reuven;
+import java.util.LinkedList;
 import java.util.Queue;
 
-// TODO OptimiserAlgo2
+/**
+ * This algorithm gives each lift the shortest route (in distance travelled) to visit all the floors selected in it, from where the lift is now.
+ * All floor buttons pressed from the floor are assigned to lift 1 (as in OptimiserAlgo1), and are part of its route like any other floor *
+ * The floors are all on a line, so the shortest route visits the floors on one side of the lift on the way out to the furthest of them, then
+ * turns and sweeps to the furthest floor on the other side. Going to the nearer end first costs
+ * 		(distance to the nearer end) + (distance between the ends)
+ * which is never more than going the other way first, and no route can do better: it has to cover both ends, and whichever it reaches first
+ * it has to get there from the lift and then go on to the other one. So the route is the near side first sweep, which takes one pass over the
+ * selected floors. If both ends are the same distance away the lift carries on in the direction it is going.
+ * The nodes on a floor are visited together: the lift's own call, then UP, then DOWN
+ */
 public class OptimiserAlgo2 extends OptimiserAlgo {
 
-	public OptimiserAlgo2(int numberOfLifts, int numberOfFloors, boolean[][] selectionsFromLift, boolean[][] selectionsFromFloor, int algoNumber) {
-		super(numberOfLifts, numberOfFloors, selectionsFromLift, selectionsFromFloor, algoNumber);
+	//Instance variables
+	private static final double AT_FLOOR = 1e-6;	//a lift this close to a floor (in floors) is at it
+
+	public OptimiserAlgo2(int numberOfLifts, int numberOfFloors, SelectionStore selections, int algoNumber) {
+		super(numberOfLifts, numberOfFloors, selections, algoNumber);
 	}
-	
+
 	/**
 	 * Determine the optimized queue of nodes to visit for each lift
 	 */
-	public Queue<Node>[] getOptimisedNodesAll() {
-		return null;
+	@Override
+	protected Queue<Node>[] planAll() {
+		@SuppressWarnings("unchecked")
+		Queue<Node>[] liftNopoll = (Queue<Node>[]) new Queue<?>[getNumberOfLifts() + 1];
+		for (int i = 1; i <= getNumberOfLifts(); i++) {
+			liftNopoll[i] = planLift(i);
+		}
+		return liftNopoll;
+	}
+
+	/**
+	 * The shortest route for one lift
+	 */
+	private Queue<Node> planLift(int lift) {
+
+		LinkedList<Node> queue = new LinkedList<Node>();
+		int lowest = nextStop(lift, 1);
+		if (lowest == SelectionStore.NO_FLOOR) {
+			//nowhere to go
+			return queue;
+		}
+		int highest = previousStop(lift, getNumberOfFloors());
+
+		//where the lift is: the floor it is at, or the floors either side of it
+		double position = getLiftPosition(lift);
+		int below;
+		int above;
+		int nearest = (int) Math.round(position);
+		if (Math.abs(position - nearest) < AT_FLOOR) {
+			//any calls on this floor first
+			addFloor(queue, lift, nearest);
+			below = nearest - 1;
+			above = nearest + 1;
+		}
+		else {
+			below = (int) Math.floor(position);
+			above = below + 1;
+		}
+
+		//which way first: the nearer end of the route (or carry on the way the lift is going)
+		boolean upFirst;
+		if (lowest > below) {
+			upFirst = true;
+		}
+		else if (highest < above) {
+			upFirst = false;
+		}
+		else {
+			double toHighest = highest - position;
+			double toLowest = position - lowest;
+			if (toHighest != toLowest) {
+				upFirst = toHighest < toLowest;
+			}
+			else upFirst = getLiftDirection(lift) != Direction.DOWN;
+		}
+
+		if (upFirst) {
+			addUp(queue, lift, above);
+			addDown(queue, lift, below);
+		}
+		else {
+			addDown(queue, lift, below);
+			addUp(queue, lift, above);
+		}
+		return queue;
+	}
+
+	/**
+	 * helper method: add the stops at or above a floor, going up
+	 */
+	private void addUp(LinkedList<Node> queue, int lift, int from) {
+		for (int j = nextStop(lift, from); j != SelectionStore.NO_FLOOR; j = nextStop(lift, j + 1)) {
+			addFloor(queue, lift, j);
+		}
 	}
-	
+
+	/**
+	 * helper method: add the stops at or below a floor, going down
+	 */
+	private void addDown(LinkedList<Node> queue, int lift, int from) {
+		for (int j = previousStop(lift, from); j != SelectionStore.NO_FLOOR; j = previousStop(lift, j - 1)) {
+			addFloor(queue, lift, j);
+		}
+	}
+
+	/**
+	 * helper method: add the nodes for a floor, if the lift has any calls there
+	 */
+	private void addFloor(LinkedList<Node> queue, int lift, int floor) {
+		SelectionStore selections = getSelections();
+		if (floor < 1 || floor > getNumberOfFloors()) {
+			return;
+		}
+		if (selections.isFromLift(floor, lift)) {
+			queue.add(new Node(floor, true, false, false));
+		}
+		if (lift == 1) {
+			if (selections.isFromFloor(floor, Direction.UP)) {
+				queue.add(new Node(floor, false, true, false));
+			}
+			if (selections.isFromFloor(floor, Direction.DOWN)) {
+				queue.add(new Node(floor, false, false, true));
+			}
+		}
+	}
+
+	/**
+	 * helper method: the first floor at or above a floor that the lift has a call for, or NO_FLOOR
+	 */
+	private int nextStop(int lift, int floor) {
+		if (floor > getNumberOfFloors()) {
+			return SelectionStore.NO_FLOOR;
+		}
+		if (lift == 1) {
+			return getSelections().nearestCallAbove(lift, floor - 1);
+		}
+		return getSelections().nextLiftSelection(lift, floor);
+	}
+
+	/**
+	 * helper method: the first floor at or below a floor that the lift has a call for, or NO_FLOOR
+	 */
+	private int previousStop(int lift, int floor) {
+		if (floor < 1) {
+			return SelectionStore.NO_FLOOR;
+		}
+		if (lift == 1) {
+			return getSelections().nearestCallBelow(lift, floor + 1);
+		}
+		return getSelections().previousLiftSelection(lift, floor);
+	}
+
 }
@@ -0,0 +1,176 @@
+package com.gordon.reuven;
+/**
+ * Check OptimiserAlgo2's routes against a brute force search
+ * For random buildings of up to maxFloors floors, with random calls and the lifts at random positions (at a floor or between floors) going
+ * in random directions, it plans every lift with OptimiserAlgo2 and tries every order of visiting the lift's floors. The check fails if
+ * - a route is longer than the shortest order
+ * - a route misses a call or visits one twice
+ * - a lift with its furthest floors the same distance away on both sides doesn't carry on in the direction it is going
+ * It exits with 1 if any route failed.
+ *
+ * java OptimiserAlgo2Check [buildings] [maxFloors]
+ */
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class OptimiserAlgo2Check {
+
+    //Instance variables
+    private static final long SEED = 7;
+    private static final double DISTANCE_BETWEEN_FLOORS = 3;
+    private static final int MAX_LIFTS = 3;
+    private static final double TOLERANCE = 1e-9;
+
+    public static void main(String[] args) {
+
+        int buildings = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int maxFloors = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        if (maxFloors < 2) {
+            System.out.printf("maxFloors = %d\n", maxFloors);
+            throw new IllegalArgumentException("maxFloors < 2");
+        }
+
+        Random random = new Random(SEED);
+        long routes = 0;
+        long longer = 0;
+        long wrongCalls = 0;
+        long wrongWay = 0;
+        for (int b = 0; b < buildings; b++) {
+            int numberOfFloors = 2 + random.nextInt(maxFloors - 1);
+            int numberOfLifts = 1 + random.nextInt(MAX_LIFTS);
+
+            //random calls. The floor calls all go to lift 1
+            SelectionStore selections = new SelectionStore(numberOfFloors, numberOfLifts);
+            int[] calls = new int[numberOfLifts + 1];
+            for (int j = 1; j <= numberOfFloors; j++) {
+                for (int i = 1; i <= numberOfLifts; i++) {
+                    if (random.nextInt(4) == 0) {
+                        selections.setFromLift(j, i, true);
+                        calls[i]++;
+                    }
+                }
+                if (j < numberOfFloors && random.nextInt(5) == 0) {
+                    selections.setFromFloor(j, Direction.UP, true);
+                    calls[1]++;
+                }
+                if (j > 1 && random.nextInt(5) == 0) {
+                    selections.setFromFloor(j, Direction.DOWN, true);
+                    calls[1]++;
+                }
+            }
+
+            //the lifts at a floor, half way between floors or just off a floor, going any way
+            FleetState fleet = new FleetState(numberOfLifts, 1, DISTANCE_BETWEEN_FLOORS);
+            for (int i = 1; i <= numberOfLifts; i++) {
+                double position;
+                if (random.nextBoolean()) {
+                    position = random.nextInt(numberOfFloors);
+                }
+                else {
+                    position = Math.min(random.nextInt(2 * (numberOfFloors - 1)) / 2.0 + (random.nextInt(3) == 0 ? 0.1 : 0), numberOfFloors - 1);
+                }
+                Direction direction = Direction.values()[random.nextInt(Direction.values().length)];
+                fleet.update(i, position * DISTANCE_BETWEEN_FLOORS, direction, 1, 1);
+            }
+
+            OptimiserAlgo o = OptimiserAlgo.create(numberOfLifts, numberOfFloors, selections, fleet, 2);
+            o.setConsole(null);
+            o.optimise();
+            Queue<Node>[] plan = o.getOptimisedNodesAll();
+
+            for (int i = 1; i <= numberOfLifts; i++) {
+                routes++;
+                double position = fleet.getPositionInFloors(i);
+
+                //every call once
+                if (plan[i].size() != calls[i] || new HashSet<Node>(plan[i]).size() != plan[i].size()) {
+                    wrongCalls++;
+                    report("calls", numberOfFloors, i, position, fleet.getDirection(i), plan[i]);
+                }
+
+                //the route against every order of its floors
+                TreeSet<Integer> floors = new TreeSet<Integer>();
+                double distance = 0;
+                double at = position;
+                for (Node n : plan[i]) {
+                    floors.add(n.getFloor());
+                    distance += Math.abs(n.getFloor() - at);
+                    at = n.getFloor();
+                }
+                int[] order = new int[floors.size()];
+                int k = 0;
+                for (int floor : floors) {
+                    order[k++] = floor;
+                }
+                double shortest = shortest(order, 0, position, 0, Double.MAX_VALUE);
+                if (distance > shortest + TOLERANCE) {
+                    longer++;
+                    report(String.format("%.2f floors, shortest %.2f:", distance, shortest), numberOfFloors, i, position, fleet.getDirection(i), plan[i]);
+                }
+
+                //a tie between the ends goes the way the lift is going (UP if it is stopped)
+                if (!floors.isEmpty() && floors.first() < position - TOLERANCE && floors.last() > position + TOLERANCE
+                        && Math.abs((floors.last() - position) - (position - floors.first())) < TOLERANCE) {
+                    boolean up = true;
+                    for (Node n : plan[i]) {
+                        if (Math.abs(n.getFloor() - position) > TOLERANCE) {
+                            up = n.getFloor() > position;
+                            break;
+                        }
+                    }
+                    if (up != (fleet.getDirection(i) != Direction.DOWN)) {
+                        wrongWay++;
+                        report("tie", numberOfFloors, i, position, fleet.getDirection(i), plan[i]);
+                    }
+                }
+            }
+        }
+
+        boolean passed = longer == 0 && wrongCalls == 0 && wrongWay == 0;
+        System.out.printf("%d routes: longer than the shortest %d, calls missed or repeated %d, ties against the lift's direction %d\n", routes,
+                longer, wrongCalls, wrongWay);
+        System.out.println(passed ? "PASSED" : "FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * helper method: the shortest distance to visit floors[k..] in any order, from a position, given the distance so far. Abandons an order
+     * once it is no shorter than the best found
+     * @return the shortest distance [floors], or best if none is shorter
+     */
+    private static double shortest(int[] floors, int k, double position, double distance, double best) {
+        if (distance >= best) {
+            return best;
+        }
+        if (k == floors.length) {
+            return distance;
+        }
+        for (int n = k; n < floors.length; n++) {
+            swap(floors, k, n);
+            best = shortest(floors, k + 1, floors[k], distance + Math.abs(floors[k] - position), best);
+            swap(floors, k, n);
+        }
+        return best;
+    }
+
+    /**
+     * helper method: swap two elements of an array
+     */
+    private static void swap(int[] floors, int a, int b) {
+        int t = floors[a];
+        floors[a] = floors[b];
+        floors[b] = t;
+    }
+
+    /**
+     * helper method: print a route that failed
+     */
+    private static void report(String failure, int numberOfFloors, int lift, double position, Direction direction, Queue<Node> route) {
+        List<Node> stops = new ArrayList<Node>(route);
+        System.out.printf("%s %d floors, lift %d at %.2f going %s: %s\n", failure, numberOfFloors, lift, position, direction, stops);
+    }
+}
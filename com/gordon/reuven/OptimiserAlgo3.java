@@ -0,0 +1,259 @@
+package com.gordon.reuven;
+import java.util.LinkedList;
+import java.util.Queue;
+
+/**
+ * Collective control (the LOOK version of the SCAN disk scheduling algorithm): each lift carries on in the direction it is heading, stopping
+ * at the floors selected in it and picking up the floor calls going the same way as it passes them, and only turns round at the last call
+ * ahead of it. Floor calls going the other way are picked up on the way back. So the lifts don't reverse in the middle of the shaft, as they
+ * do with OptimiserAlgo1 when a call comes in behind them.
+ * All floor buttons pressed from the floor are assigned to lift 1 (as in OptimiserAlgo1). Subclasses can hand them out differently by
+ * overriding hasFloorCall(), nextFloorCall() and previousFloorCall() *
+ * Heading up from floor s, a lift's queue is
+ * 		up to the highest call:		the floors selected in the lift and the UP calls from s up, and the DOWN call at the top
+ * 		down to the lowest call:	the floors selected in the lift below s and the DOWN calls, and the UP call at the bottom (if it is below s)
+ * 		up again:					the rest of the UP calls below s
+ * (and the other way round heading down). A lift that hasn't moved yet serves the calls where it is, then heads for the nearest call
+ */
+public class OptimiserAlgo3 extends OptimiserAlgo {
+
+	//Instance variables
+	private static final double AT_FLOOR = 1e-6;	//a lift this close to a floor (in floors) is at it
+	private static final int NO_SKIP = 0;
+
+	public OptimiserAlgo3(int numberOfLifts, int numberOfFloors, SelectionStore selections, int algoNumber) {
+		super(numberOfLifts, numberOfFloors, selections, algoNumber);
+	}
+
+	/**
+	 * Where the sweeps put the stops they make: a queue of nodes, or (see OptimiserAlgo4) the time it takes to get to a call.
+	 * Once a route is finished the sweeps stop
+	 */
+	protected static abstract class Route {
+
+		private boolean finished;
+
+		/**
+		 * The lift stops at a floor for a call
+		 * @param call the direction of a floor call, or NONE for a floor selected in the lift
+		 */
+		protected abstract void stop(int floor, Direction call);
+
+		protected void finish() {
+			finished = true;
+		}
+
+		public boolean isFinished() {
+			return finished;
+		}
+	}
+
+	/**
+	 * The route as the queue of nodes the lift visits
+	 */
+	private static class QueueRoute extends Route {
+
+		private LinkedList<Node> queue = new LinkedList<Node>();
+
+		@Override
+		protected void stop(int floor, Direction call) {
+			queue.add(new Node(floor, call == Direction.NONE, call == Direction.UP, call == Direction.DOWN));
+		}
+	}
+
+	/**
+	 * Determine the optimized queue of nodes to visit for each lift
+	 */
+	@Override
+	protected Queue<Node>[] planAll() {
+		@SuppressWarnings("unchecked")
+		Queue<Node>[] liftNopoll = (Queue<Node>[]) new Queue<?>[getNumberOfLifts() + 1];
+		for (int i = 1; i <= getNumberOfLifts(); i++) {
+			liftNopoll[i] = planQueue(i);
+		}
+		return liftNopoll;
+	}
+
+	/**
+	 * Determine the optimized queue of nodes to visit for one lift
+	 */
+	protected Queue<Node> planQueue(int lift) {
+		QueueRoute route = new QueueRoute();
+		planLift(lift, route);
+		return route.queue;
+	}
+
+	/**
+	 * The sweeps for one lift
+	 */
+	protected void planLift(int lift, Route route) {
+
+		if (nextStop(lift, 1) == SelectionStore.NO_FLOOR) {
+			//nowhere to go
+			return;
+		}
+
+		double position = getLiftPosition(lift);
+		int nearest = (int) Math.round(position);
+		boolean atFloor = Math.abs(position - nearest) < AT_FLOOR;
+		int floorAbove = atFloor ? nearest : (int) Math.ceil(position);
+		int floorBelow = atFloor ? nearest : (int) Math.floor(position);
+		Direction heading = getLiftHeading(lift);
+		int skip = NO_SKIP;
+		boolean up;
+
+		if (heading == Direction.NONE) {
+			//hasn't moved yet: serve the calls here, then head for the nearest call
+			if (atFloor) {
+				addFloor(route, lift, nearest, true, true, true);
+				skip = nearest;
+				floorAbove++;
+				floorBelow--;
+			}
+			int above = nextStop(lift, floorAbove);
+			int below = previousStop(lift, floorBelow);
+			if (above == SelectionStore.NO_FLOOR && below == SelectionStore.NO_FLOOR) {
+				return;
+			}
+			up = below == SelectionStore.NO_FLOOR || (above != SelectionStore.NO_FLOOR && above - position <= position - below);
+		}
+		else {
+			//carry on the way the lift is heading, unless there is nothing ahead
+			up = heading == Direction.UP;
+			if (up ? nextStop(lift, floorAbove) == SelectionStore.NO_FLOOR : previousStop(lift, floorBelow) == SelectionStore.NO_FLOOR) {
+				up = !up;
+			}
+		}
+
+		sweep(route, lift, up ? floorAbove : floorBelow, up, skip);
+	}
+
+	/**
+	 * helper method: add the stops for the sweeps, starting at a floor (inclusive) and going one way
+	 * @param skip a floor whose calls are already in the route, or NO_SKIP
+	 */
+	private void sweep(Route route, int lift, int start, boolean up, int skip) {
+
+		int step = up ? 1 : -1;
+		Direction same = up ? Direction.UP : Direction.DOWN;
+		Direction opposite = up ? Direction.DOWN : Direction.UP;
+
+		//out to the furthest call: the lift's calls and the floor calls going the same way, and the one going the other way at the turn
+		int turn = up ? previousStop(lift, getNumberOfFloors()) : nextStop(lift, 1);
+		for (int j = ahead(lift, start, up); j != SelectionStore.NO_FLOOR && !beyond(j, turn, up) && !route.isFinished(); j = ahead(lift, j + step, up)) {
+			if (j != skip) {
+				addFloor(route, lift, j, true, same == Direction.UP || j == turn, same == Direction.DOWN || j == turn);
+			}
+		}
+
+		//back to the furthest call the other way: the lift's calls behind where it started and the floor calls going the other way
+		int last = SelectionStore.NO_FLOOR;
+		for (int j = ahead(lift, turn - step, !up); j != SelectionStore.NO_FLOOR && !route.isFinished(); j = ahead(lift, j - step, !up)) {
+			if (j == skip) {
+				continue;
+			}
+			boolean fromLift = beyond(start, j, up) && getSelections().isFromLift(j, lift);
+			boolean fromFloor = hasFloorCall(lift, j, opposite);
+			if (fromLift || fromFloor) {
+				addFloor(route, lift, j, fromLift, fromFloor && opposite == Direction.UP, fromFloor && opposite == Direction.DOWN);
+				last = j;
+			}
+		}
+
+		//and out again for the floor calls going the same way behind where the lift started. The furthest is picked up at the turn
+		int furthest = up ? nextFloorCall(lift, same, 1) : previousFloorCall(lift, same, getNumberOfFloors());
+		while (furthest == skip) {
+			furthest = up ? nextFloorCall(lift, same, furthest + 1) : previousFloorCall(lift, same, furthest - 1);
+		}
+		if (furthest == SelectionStore.NO_FLOOR || !beyond(start, furthest, up)) {
+			return;
+		}
+		if (last == SelectionStore.NO_FLOOR || !beyond(furthest, last, up)) {
+			//the turn is at (or past) the last stop on the way back
+			addFloor(route, lift, furthest, false, same == Direction.UP, same == Direction.DOWN);
+		}
+		else furthest -= step;
+		for (int j = furthest + step; beyond(start, j, up) && !route.isFinished(); j += step) {
+			j = up ? nextFloorCall(lift, same, j) : previousFloorCall(lift, same, j);
+			if (j == SelectionStore.NO_FLOOR || !beyond(start, j, up)) {
+				break;
+			}
+			if (j != skip) {
+				addFloor(route, lift, j, false, same == Direction.UP, same == Direction.DOWN);
+			}
+		}
+	}
+
+	/**
+	 * helper method: true if floor a is past floor b going one way (above it going up, below it going down)
+	 */
+	private static boolean beyond(int a, int b, boolean up) {
+		return up ? a > b : a < b;
+	}
+
+	/**
+	 * helper method: the first floor from a floor (inclusive) going one way that the lift has a call for, or NO_FLOOR
+	 */
+	private int ahead(int lift, int floor, boolean up) {
+		return up ? nextStop(lift, floor) : previousStop(lift, floor);
+	}
+
+	/**
+	 * helper method: add the stops for a floor, for the kinds of call asked for that the lift has there
+	 */
+	private void addFloor(Route route, int lift, int floor, boolean fromLift, boolean fromFloorUP, boolean fromFloorDOWN) {
+		if (fromLift && getSelections().isFromLift(floor, lift) && !route.isFinished()) {
+			route.stop(floor, Direction.NONE);
+		}
+		if (fromFloorUP && hasFloorCall(lift, floor, Direction.UP) && !route.isFinished()) {
+			route.stop(floor, Direction.UP);
+		}
+		if (fromFloorDOWN && hasFloorCall(lift, floor, Direction.DOWN) && !route.isFinished()) {
+			route.stop(floor, Direction.DOWN);
+		}
+	}
+
+	/**
+	 * True if a lift has been given the floor call at a floor in a direction
+	 */
+	protected boolean hasFloorCall(int lift, int floor, Direction direction) {
+		return lift == 1 && getSelections().isFromFloor(floor, direction);
+	}
+
+	/**
+	 * The first floor at or above a floor with a call in a direction that a lift has been given, or NO_FLOOR
+	 */
+	protected int nextFloorCall(int lift, Direction direction, int floor) {
+		return lift == 1 ? getSelections().nextFloorCall(direction, floor) : SelectionStore.NO_FLOOR;
+	}
+
+	/**
+	 * The first floor at or below a floor with a call in a direction that a lift has been given, or NO_FLOOR
+	 */
+	protected int previousFloorCall(int lift, Direction direction, int floor) {
+		return lift == 1 ? getSelections().previousFloorCall(direction, floor) : SelectionStore.NO_FLOOR;
+	}
+
+	/**
+	 * helper method: the first floor at or above a floor that the lift has a call for, or NO_FLOOR
+	 */
+	private int nextStop(int lift, int floor) {
+		if (floor > getNumberOfFloors()) {
+			return SelectionStore.NO_FLOOR;
+		}
+		int next = SelectionStore.earliest(nextFloorCall(lift, Direction.UP, floor), nextFloorCall(lift, Direction.DOWN, floor));
+		return SelectionStore.earliest(getSelections().nextLiftSelection(lift, floor), next);
+	}
+
+	/**
+	 * helper method: the first floor at or below a floor that the lift has a call for, or NO_FLOOR
+	 */
+	private int previousStop(int lift, int floor) {
+		if (floor < 1) {
+			return SelectionStore.NO_FLOOR;
+		}
+		int previous = Math.max(previousFloorCall(lift, Direction.UP, floor), previousFloorCall(lift, Direction.DOWN, floor));
+		return Math.max(getSelections().previousLiftSelection(lift, floor), previous);
+	}
+
+}
@@ -0,0 +1,308 @@
+package com.gordon.reuven;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Queue;
+
+/**
+ * Collective control (as OptimiserAlgo3) with the floor calls shared out across the whole fleet: each floor call is given to the lift that
+ * would get to it soonest. The cost of giving a call to a lift is the time the lift would take to reach it on its collective control route with
+ * the call added, from where the lift is now and the way it is heading, stopping on the way at the floors selected in it and the floor calls
+ * it has already been given (each stop costs the door cycle: opening, dwelling and closing). See setTravelTimeModel() *
+ * The calls are given out one at a time (UP calls from the bottom, then DOWN calls from the bottom), so each one sees the stops given out
+ * before it. Each time a call is served they are all shared out again from where the lifts are at the time, so the calls follow the lifts as
+ * they move. A button pressed or cancelled in between only gives out (or takes back) that call and re-plans the lifts it moves between, so it
+ * doesn't cost a full plan however many lifts and floors there are.
+ * A lift can't get to a call faster than travelling straight there, so the lifts that can't beat the best so far are skipped without
+ * working out their routes, and a route is given up as soon as it takes longer than the best so far
+ */
+public class OptimiserAlgo4 extends OptimiserAlgo3 {
+
+	//Instance variables
+	private static final int UNASSIGNED = 0;
+	private int[] assignedUp;		//the lift each UP floor call has been given to (UNASSIGNED if none), by floor
+	private int[] assignedDown;
+	private BitSet[] liftCallsUp;	//the UP floor calls each lift has been given, by lift (bit n is floor n)
+	private BitSet[] liftCallsDown;
+
+	public OptimiserAlgo4(int numberOfLifts, int numberOfFloors, SelectionStore selections, int algoNumber) {
+		super(numberOfLifts, numberOfFloors, selections, algoNumber);
+		assignedUp = new int[numberOfFloors + 1];
+		assignedDown = new int[numberOfFloors + 1];
+		liftCallsUp = new BitSet[numberOfLifts + 1];
+		liftCallsDown = new BitSet[numberOfLifts + 1];
+		for (int i = 1; i <= numberOfLifts; i++) {
+			liftCallsUp[i] = new BitSet(numberOfFloors + 1);
+			liftCallsDown[i] = new BitSet(numberOfFloors + 1);
+		}
+	}
+
+	/**
+	 * The time a lift takes to reach a floor call on its route: the sweeps stop once they get there, or once it has taken longer than a limit
+	 */
+	private class CostRoute extends Route {
+
+		private TravelTimeModel times = getTravelTimeModel();
+		private int floor;
+		private Direction direction;
+		private double limit;
+		private double at;
+		private double time;
+		private boolean reached;
+
+		CostRoute(int lift, int floor, Direction direction, double limit) {
+			this.floor = floor;
+			this.direction = direction;
+			this.limit = limit;
+			at = getLiftPosition(lift);
+		}
+
+		@Override
+		protected void stop(int stopFloor, Direction call) {
+			time += times.getFlightTime(at, stopFloor);
+			at = stopFloor;
+			if (stopFloor == floor && call == direction) {
+				reached = true;
+				finish();
+				return;
+			}
+			time += times.getStopTime();
+			if (time >= limit) {
+				finish();
+			}
+		}
+
+		double getCost() {
+			return reached ? time : Double.POSITIVE_INFINITY;
+		}
+	}
+
+	/**
+	 * Share out the floor calls, then determine the optimized queue of nodes to visit for each lift
+	 */
+	@Override
+	protected Queue<Node>[] planAll() {
+		assignFloorCalls();
+		return super.planAll();
+	}
+
+	@Override
+	public boolean isIncremental() {
+		return true;
+	}
+
+	/**
+	 * Give a floor call pressed to the lift that would get to it soonest, or re-plan the lift a floor was selected in
+	 */
+	@Override
+	public void insertCall(Node call, int lift) {
+		updateCall(call, lift);
+	}
+
+	/**
+	 * Take a floor call cancelled back from the lift it was given to, or re-plan the lift a floor was deselected in
+	 */
+	@Override
+	public void cancelCall(Node call, int lift) {
+		updateCall(call, lift);
+	}
+
+	/**
+	 * Take the plans made from a copy of the selections, and the lifts they gave the floor calls to, so the calls made since are given out
+	 * on top of them
+	 */
+	@Override
+	protected void setOptimisedNodesAll(Queue<Node>[] liftNopoll) {
+		super.setOptimisedNodesAll(liftNopoll);
+		clearAssignments();
+		for (int i = 1; i <= getNumberOfLifts(); i++) {
+			for (Node n : liftNopoll[i]) {
+				if (n.getfromFloorUP()) {
+					assign(n.getFloor(), Direction.UP, i);
+				}
+				if (n.getfromFloorDOWN()) {
+					assign(n.getFloor(), Direction.DOWN, i);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The lifts not affected by a change keep the plans made from where they were at the time, and the calls are only shared out again when
+	 * one is served, so the plans aren't expected to match a full re-match: there is nothing to check
+	 */
+	@Override
+	public boolean verifyPlan() {
+		return true;
+	}
+
+	/**
+	 * Give every floor call selected to a lift, starting afresh
+	 */
+	public void assignFloorCalls() {
+		SelectionStore selections = getSelections();
+		clearAssignments();
+		for (int j = selections.nextFloorCall(Direction.UP, 1); j != SelectionStore.NO_FLOOR; j = selections.nextFloorCall(Direction.UP, j + 1)) {
+			assignFloorCall(j, Direction.UP);
+		}
+		for (int j = selections.nextFloorCall(Direction.DOWN, 1); j != SelectionStore.NO_FLOOR; j = selections.nextFloorCall(Direction.DOWN, j + 1)) {
+			assignFloorCall(j, Direction.DOWN);
+		}
+	}
+
+	/**
+	 * Give a floor call to the lift with the lowest cost (the lowest numbered one if there is a tie), taking the calls already given out into account
+	 * @return the lift the call was given to
+	 */
+	public int assignFloorCall(int floor, Direction direction) {
+		if (floor < 1 || floor > getNumberOfFloors() || direction == Direction.NONE) {
+			System.out.printf("floor call %d %s invalid\n", floor, direction);
+			throw new IllegalArgumentException("floor call invalid");
+		}
+		unassign(floor, direction);
+		TravelTimeModel times = getTravelTimeModel();
+		int best = 1;
+		double bestCost = Double.POSITIVE_INFINITY;
+		for (int i = 1; i <= getNumberOfLifts(); i++) {
+			//no route beats going straight there
+			if (times.getFlightTime(getLiftPosition(i), floor) >= bestCost) {
+				continue;
+			}
+			double cost = getCost(i, floor, direction, bestCost);
+			if (cost < bestCost) {
+				best = i;
+				bestCost = cost;
+			}
+		}
+		assign(floor, direction, best);
+		return best;
+	}
+
+	/**
+	 * The cost of giving a floor call to a lift: the time it would take the lift to get to it [s]
+	 * @param limit give up (and return infinity) once the route takes this long
+	 */
+	public double getCost(int lift, int floor, Direction direction, double limit) {
+		int previous = getAssignedLift(floor, direction);
+		if (previous != UNASSIGNED) {
+			calls(previous, direction).clear(floor);
+		}
+		calls(lift, direction).set(floor);
+		CostRoute route = new CostRoute(lift, floor, direction, limit);
+		planLift(lift, route);
+		calls(lift, direction).clear(floor);
+		if (previous != UNASSIGNED) {
+			calls(previous, direction).set(floor);
+		}
+		return route.getCost();
+	}
+
+	/**
+	 * @return the lift a floor call has been given to, or 0 if it hasn't been given to one
+	 */
+	public int getAssignedLift(int floor, Direction direction) {
+		return direction == Direction.UP ? assignedUp[floor] : assignedDown[floor];
+	}
+
+	@Override
+	protected boolean hasFloorCall(int lift, int floor, Direction direction) {
+		return calls(lift, direction).get(floor);
+	}
+
+	@Override
+	protected int nextFloorCall(int lift, Direction direction, int floor) {
+		return calls(lift, direction).nextSetBit(Math.max(floor, 1));
+	}
+
+	@Override
+	protected int previousFloorCall(int lift, Direction direction, int floor) {
+		if (floor < 1) {
+			return SelectionStore.NO_FLOOR;
+		}
+		return calls(lift, direction).previousSetBit(Math.min(floor, getNumberOfFloors()));
+	}
+
+	/**
+	 * helper method: bring the plans up to date with a change to a call: give a floor call selected to a lift (or take one deselected back)
+	 * and re-plan the lifts it moved between, or re-plan the lift a floor was selected or deselected in
+	 */
+	private void updateCall(Node call, int lift) {
+		if (getOptimisedNodesAll() == null) {
+			optimise();
+			return;
+		}
+		if (call.getFromLift()) {
+			getOptimisedNodesAll()[lift] = planQueue(lift);
+		}
+		if (call.getfromFloorUP()) {
+			updateFloorCall(call.getFloor(), Direction.UP);
+		}
+		if (call.getfromFloorDOWN()) {
+			updateFloorCall(call.getFloor(), Direction.DOWN);
+		}
+	}
+
+	/**
+	 * helper method: give a floor call to a lift if it is selected (or take it back if it isn't) and re-plan the lifts it moved between
+	 */
+	private void updateFloorCall(int floor, Direction direction) {
+		int previous = getAssignedLift(floor, direction);
+		int next = UNASSIGNED;
+		if (getSelections().isFromFloor(floor, direction)) {
+			next = assignFloorCall(floor, direction);
+		}
+		else unassign(floor, direction);
+		Queue<Node>[] liftNopoll = getOptimisedNodesAll();
+		if (previous != UNASSIGNED && previous != next) {
+			liftNopoll[previous] = planQueue(previous);
+		}
+		if (next != UNASSIGNED) {
+			liftNopoll[next] = planQueue(next);
+		}
+	}
+
+	/**
+	 * helper method: take every floor call back
+	 */
+	private void clearAssignments() {
+		for (int i = 1; i <= getNumberOfLifts(); i++) {
+			liftCallsUp[i].clear();
+			liftCallsDown[i].clear();
+		}
+		Arrays.fill(assignedUp, UNASSIGNED);
+		Arrays.fill(assignedDown, UNASSIGNED);
+	}
+
+	/**
+	 * helper method: the floor calls a lift has been given in a direction
+	 */
+	private BitSet calls(int lift, Direction direction) {
+		return direction == Direction.UP ? liftCallsUp[lift] : liftCallsDown[lift];
+	}
+
+	/**
+	 * helper method: give a floor call to a lift
+	 */
+	private void assign(int floor, Direction direction, int lift) {
+		calls(lift, direction).set(floor);
+		if (direction == Direction.UP) {
+			assignedUp[floor] = lift;
+		}
+		else assignedDown[floor] = lift;
+	}
+
+	/**
+	 * helper method: take a floor call back from the lift it was given to
+	 */
+	private void unassign(int floor, Direction direction) {
+		int lift = getAssignedLift(floor, direction);
+		if (lift == UNASSIGNED) {
+			return;
+		}
+		calls(lift, direction).clear(floor);
+		if (direction == Direction.UP) {
+			assignedUp[floor] = UNASSIGNED;
+		}
+		else assignedDown[floor] = UNASSIGNED;
+	}
+
+}
@@ -0,0 +1,138 @@
+package com.gordon.reuven;
+/**
+ * Benchmark of the time OptimiserAlgo4 takes to give out floor calls in a large building
+ * For light, busy and very busy loads it builds a building with the lifts spread along the shaft going either way, each with some floors
+ * selected in it, and a number of floor calls. It reports the time for a full plan (optimise(), made each time a call is served), the latency
+ * of giving out one floor call (assignFloorCall(), with the other calls already given out) and of a floor button being pressed (insertCall(),
+ * which also re-plans the lifts the call moves between): the mean, 99th and 99.9th percentiles and the worst, against a target of under a
+ * millisecond, and how many lifts were given calls.
+ * The calls are made over and over until the JIT has compiled the code before the latencies are recorded, so they don't include compiling it.
+ *
+ * java OptimiserAlgo4Benchmark [numberOfLifts] [numberOfFloors]
+ */
+import java.util.Arrays;
+import java.util.Random;
+
+public class OptimiserAlgo4Benchmark {
+
+    //Instance variables
+    private static final long SEED = 42;
+    private static final double DISTANCE_BETWEEN_FLOORS = 3;
+    private static final int[][] LOADS = {{5, 50}, {20, 200}, {50, 400}};  //floors selected in each lift, floor calls
+    private static final int PLAN_REPEATS = 200;
+    private static final int CALL_WARMUPS = 20000; //calls made before the latencies are recorded (at least one pass over the floor calls)
+    private static final int CALL_REPEATS = 15;    //passes over the floor calls that are recorded
+    private static final long TARGET = 1000000;    //the latency a call should stay under [ns]
+
+    public static void main(String[] args) {
+
+        int numberOfLifts = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int numberOfFloors = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        if (numberOfLifts <= 0 || numberOfFloors < 3) {
+            System.out.printf("numberOfLifts = %d, numberOfFloors = %d\n", numberOfLifts, numberOfFloors);
+            throw new IllegalArgumentException("numberOfLifts <= 0 OR numberOfFloors < 3");
+        }
+
+        for (int[] load : LOADS) {
+            run(numberOfLifts, numberOfFloors, load[0], load[1]);
+        }
+    }
+
+    /**
+     * Run the benchmark for one load
+     * @param liftCalls the number of floors to select in each lift (some may be the same floor)
+     * @param floorCalls the number of floor calls to make (some may be the same call)
+     */
+    private static void run(int numberOfLifts, int numberOfFloors, int liftCalls, int floorCalls) {
+
+        Random random = new Random(SEED);
+
+        //the lifts anywhere in the shaft, going either way, and the calls
+        SelectionStore selections = new SelectionStore(numberOfFloors, numberOfLifts);
+        FleetState fleet = new FleetState(numberOfLifts, 1, DISTANCE_BETWEEN_FLOORS);
+        for (int i = 1; i <= numberOfLifts; i++) {
+            double position = random.nextInt((int) (numberOfFloors * DISTANCE_BETWEEN_FLOORS));
+            int floor = (int) (position / DISTANCE_BETWEEN_FLOORS) + 1;
+            fleet.update(i, position, random.nextBoolean() ? Direction.UP : Direction.DOWN, floor, floor);
+            for (int k = 0; k < liftCalls; k++) {
+                selections.setFromLift(1 + random.nextInt(numberOfFloors), i, true);
+            }
+        }
+        for (int k = 0; k < floorCalls; k++) {
+            int floor = 2 + random.nextInt(numberOfFloors - 2);
+            selections.setFromFloor(floor, random.nextBoolean() ? Direction.UP : Direction.DOWN, true);
+        }
+
+        OptimiserAlgo4 o = (OptimiserAlgo4) OptimiserAlgo.create(numberOfLifts, numberOfFloors, selections, fleet, 4);
+        o.setTravelTimeModel(new TravelTimeModel(DISTANCE_BETWEEN_FLOORS, 2, 1000, 3000));
+        o.setConsole(null);
+
+        //full plans: warm up, then measure
+        for (int n = 0; n < PLAN_REPEATS; n++) {
+            o.optimise();
+        }
+        long start = System.nanoTime();
+        for (int n = 0; n < PLAN_REPEATS; n++) {
+            o.optimise();
+        }
+        double planTime = (System.nanoTime() - start) / 1e6 / PLAN_REPEATS;
+
+        //give each floor call out again with the others already given out, then press each one again
+        int calls = selections.countFromFloor(Direction.UP) + selections.countFromFloor(Direction.DOWN);
+        int warmups = (CALL_WARMUPS + calls - 1) / calls;
+        long[] assignLatencies = new long[calls * CALL_REPEATS];
+        long[] insertLatencies = new long[calls * CALL_REPEATS];
+        int recorded = 0;
+        for (int pass = 0; pass < warmups + CALL_REPEATS; pass++) {
+            for (Direction direction : new Direction[] {Direction.UP, Direction.DOWN}) {
+                for (int j = selections.nextFloorCall(direction, 1); j != SelectionStore.NO_FLOOR; j = selections.nextFloorCall(direction, j + 1)) {
+                    long t = System.nanoTime();
+                    o.assignFloorCall(j, direction);
+                    long assignLatency = System.nanoTime() - t;
+                    Node call = new Node(j, false, direction == Direction.UP, direction == Direction.DOWN);
+                    t = System.nanoTime();
+                    o.insertCall(call, 0);
+                    long insertLatency = System.nanoTime() - t;
+                    if (pass >= warmups) {
+                        assignLatencies[recorded] = assignLatency;
+                        insertLatencies[recorded++] = insertLatency;
+                    }
+                }
+            }
+        }
+
+        //how widely the calls were shared out
+        boolean[] given = new boolean[numberOfLifts + 1];
+        for (Direction direction : new Direction[] {Direction.UP, Direction.DOWN}) {
+            for (int j = selections.nextFloorCall(direction, 1); j != SelectionStore.NO_FLOOR; j = selections.nextFloorCall(direction, j + 1)) {
+                given[o.getAssignedLift(j, direction)] = true;
+            }
+        }
+        int liftsGiven = 0;
+        for (int i = 1; i <= numberOfLifts; i++) {
+            if (given[i]) liftsGiven++;
+        }
+
+        System.out.printf("%d lifts, %d floors, %d floors selected per lift, %d floor calls\n", numberOfLifts, numberOfFloors, liftCalls, calls);
+        System.out.printf("  full plan (a call served): %.2fms\n", planTime);
+        report("assignFloorCall", assignLatencies);
+        report("insertCall (a floor button pressed)", insertLatencies);
+        System.out.printf("  lifts given floor calls: %d\n", liftsGiven);
+    }
+
+    /**
+     * helper method: print the mean, percentiles and worst of a set of latencies, and whether the worst is under the target
+     * @param latencies [ns]
+     */
+    private static void report(String name, long[] latencies) {
+        Arrays.sort(latencies);
+        long total = 0;
+        for (long latency : latencies) {
+            total += latency;
+        }
+        long worst = latencies[latencies.length - 1];
+        System.out.printf("  %s: mean %.1fus, p99 %.1fus, p99.9 %.1fus, worst %.1fus (target under %.0fus %s)\n", name,
+                total / 1e3 / latencies.length, latencies[latencies.length * 99 / 100] / 1e3, latencies[latencies.length * 999 / 1000] / 1e3,
+                worst / 1e3, TARGET / 1e3, worst < TARGET ? "met" : "MISSED");
+    }
+}
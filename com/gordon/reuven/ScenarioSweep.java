@@ -0,0 +1,350 @@
+package com.gordon.reuven;
+/**
+ * Scenario sweep
+ * Runs the same traffic through many buildings: every combination of a grid of numberOfLifts, velocity, doorOpenCloseTime
+ * and matchingAlgorithm values, each with a number of random seeds. Every scenario is an isolated discrete event
+ * simulation of its own Lift Controller, which prints nothing (see LiftController.setConsole()), so the scenarios share no state
+ * and are run in parallel on a fork-join pool.
+ * The traffic is either synthetic, from a TrafficGenerator seeded with the scenario's seed (so each seed is a different day of the same
+ * pattern), or an instructions file, which the seed spreads randomly over the first callWindow ms of the run (with callWindow=0 every
+ * instruction is issued at t = 0 and the seeds all give the same result).
+ * The results table shows the wait time, journey time and distance travelled for each grid point, averaged over the seeds.
+ *
+ * java ScenarioSweep paramsX.txt instructionsY.txt sweepZ.txt [threads]
+ * java ScenarioSweep paramsX.txt -traffic PATTERN callsPerSecond durationSeconds sweepZ.txt [threads]
+ *
+ * The sweep file has one line per swept value, with a comma separated list of values, eg
+ * numberOfLifts=2,3,4
+ * velocity=1.5,2
+ * seeds=10
+ * callWindow=60000
+ * Anything not in the sweep file is taken from the params file.
+ */
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class ScenarioSweep {
+
+    //Instance variables
+    private static final String NUMBER_OF_LIFTS = "numberOfLifts";
+    private static final String VELOCITY = "velocity";
+    private static final String DOOR_OPEN_CLOSE_TIME = "doorOpenCloseTime";
+    private static final String MATCHING_ALGORITHM = "matchingAlgorithm";
+    private static final String SEEDS = "seeds";
+    private static final String CALL_WINDOW = "callWindow";
+    private static final String TRAFFIC = "-traffic";
+
+    private LiftParams baseParams;
+    private List<Instruction> instructions;
+    private TrafficGenerator.Pattern pattern;    //the synthetic traffic pattern (null to run the instructions)
+    private double callsPerSecond;
+    private long duration;                       //how long the synthetic traffic lasts [ms]
+    private double[] numberOfLiftsValues;
+    private double[] velocityValues;
+    private double[] doorOpenCloseTimeValues;
+    private double[] matchingAlgorithmValues;
+    private int seeds;
+    private long callWindow;          //instructions are spread over the first callWindow ms of each run
+    private Scenario[] scenarios;
+    private long wallTime;            //time the last sweep took in ns
+    private int parallelism;          //number of threads the last sweep ran on
+
+    /**
+     * Inner class for a single simulation in the sweep and its results
+     */
+    public static class Scenario {
+
+        //instance variables
+        private LiftParams params;
+        private long seed;
+        private double meanWait;
+        private double maxWait;
+        private double meanJourney;
+        private double distanceTravelled;
+        private double simulatedTime;
+        private String error;         //null unless the simulation failed
+
+        /**
+         * Constructor
+         */
+        public Scenario(LiftParams params, long seed) {
+            this.params = params;
+            this.seed = seed;
+        }
+
+        /**
+         * Getters
+         */
+        public LiftParams getParams() {
+            return params;
+        }
+        public long getSeed() {
+            return seed;
+        }
+        public double getMeanWait() {
+            return meanWait;
+        }
+        public double getMaxWait() {
+            return maxWait;
+        }
+        public double getMeanJourney() {
+            return meanJourney;
+        }
+        public double getDistanceTravelled() {
+            return distanceTravelled;
+        }
+        public double getSimulatedTime() {
+            return simulatedTime;
+        }
+        public String getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Inner class to run a range of scenarios, splitting the range in half until there is one scenario left
+     */
+    private class SweepTask extends RecursiveAction {
+
+        //instance variables
+        private static final long serialVersionUID = 1L;
+        private int from;
+        private int to;   //exclusive
+
+        /**
+         * Constructor
+         */
+        public SweepTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                runScenario(scenarios[from]);
+                return;
+            }
+            int middle = (from + to) / 2;
+            invokeAll(new SweepTask(from, middle), new SweepTask(middle, to));
+        }
+    }
+
+    /**
+     * Constructor: by default the sweep is just the base params with a single seed and every instruction issued at t = 0
+     * @param baseParams the building to vary
+     * @param instructions the traffic to run through every scenario
+     */
+    public ScenarioSweep(LiftParams baseParams, Iterable<Instruction> instructions) {
+        this.baseParams = baseParams;
+        this.instructions = new ArrayList<Instruction>();
+        for (Instruction ins : instructions) {
+            this.instructions.add(ins);
+        }
+        setDefaults();
+    }
+
+    /**
+     * Constructor: synthetic traffic (see TrafficGenerator), generated afresh for every scenario from its seed
+     * @param baseParams the building to vary
+     * @param pattern the traffic pattern
+     * @param callsPerSecond the total number of calls per second in the building
+     * @param duration how long to generate calls for [ms]
+     */
+    public ScenarioSweep(LiftParams baseParams, TrafficGenerator.Pattern pattern, double callsPerSecond, long duration) {
+        this.baseParams = baseParams;
+        this.pattern = pattern;
+        this.callsPerSecond = callsPerSecond;
+        this.duration = duration;
+        setDefaults();
+    }
+
+    /**
+     * helper method: the sweep is just the base params with a single seed and every instruction issued at t = 0
+     */
+    private void setDefaults() {
+        numberOfLiftsValues = new double[] {baseParams.getNumberOfLifts()};
+        velocityValues = new double[] {baseParams.getVelocity()};
+        doorOpenCloseTimeValues = new double[] {baseParams.getDoorOpenCloseTime()};
+        matchingAlgorithmValues = new double[] {baseParams.getMatchingAlgorithm()};
+        seeds = 1;
+        callWindow = 0;
+    }
+
+    /**
+     * Read the values to sweep from a sweep file
+     * @param sweepInputs the name of the sweep file
+     */
+    public void readSweepFile(String sweepInputs) throws IOException {
+        try (BufferedReader br = new BufferedReader(new FileReader(sweepInputs))) {
+            String line = null;
+            while ((line = br.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                String[] field = line.split("=");
+                String name = field[0].trim();
+                String[] valueFields = field[1].split(",");
+                double[] values = new double[valueFields.length];
+                for (int i = 0; i < valueFields.length; i++) {
+                    values[i] = Double.parseDouble(valueFields[i].trim());
+                }
+
+                if (name.equals(NUMBER_OF_LIFTS)) numberOfLiftsValues = values;
+                else if (name.equals(VELOCITY)) velocityValues = values;
+                else if (name.equals(DOOR_OPEN_CLOSE_TIME)) doorOpenCloseTimeValues = values;
+                else if (name.equals(MATCHING_ALGORITHM)) matchingAlgorithmValues = values;
+                else if (name.equals(SEEDS)) seeds = (int) values[0];
+                else if (name.equals(CALL_WINDOW)) callWindow = (long) values[0];
+                else {
+                    System.out.printf("%s cannot be swept\n", name);
+                    throw new IllegalArgumentException("unknown sweep value");
+                }
+            }
+        }
+    }
+
+    /**
+     * Run every scenario in the sweep
+     * @param parallelism the number of threads to run the scenarios on
+     * @return the scenarios, with their results
+     */
+    public Scenario[] run(int parallelism) {
+
+        //build every combination of the grid, for every seed
+        List<Scenario> scenarioList = new ArrayList<Scenario>();
+        for (double lifts : numberOfLiftsValues) {
+            for (double velocity : velocityValues) {
+                for (double doorTime : doorOpenCloseTimeValues) {
+                    for (double algo : matchingAlgorithmValues) {
+                        LiftParams params = new LiftParams(baseParams);
+                        params.setNumberOfLifts((int) lifts);
+                        params.setVelocity(velocity);
+                        params.setDoorOpenCloseTime((int) doorTime);
+                        params.setMatchingAlgorithm((int) algo);
+                        for (int seed = 0; seed < seeds; seed++) {
+                            scenarioList.add(new Scenario(params, seed));
+                        }
+                    }
+                }
+            }
+        }
+        scenarios = scenarioList.toArray(new Scenario[0]);
+        this.parallelism = parallelism;
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new SweepTask(0, scenarios.length));
+        }
+        finally {
+            pool.shutdown();
+        }
+        wallTime = System.nanoTime() - start;
+        return scenarios;
+    }
+
+    /**
+     * Run a single scenario and store its results. A scenario that fails (eg an instruction for a lift that the building doesn't have)
+     * records the error rather than stopping the sweep
+     */
+    private void runScenario(Scenario scenario) {
+        try {
+            LiftController lc = scenario.params.buildLiftController(new VirtualClock(), null);
+            lc.setHeadless(true);
+            lc.setVerbose(false);
+            DiscreteEventSimulator sim = new DiscreteEventSimulator(lc);
+
+            if (pattern != null) {
+                //a day of the traffic pattern for this seed
+                sim.scheduleTraffic(new TrafficGenerator(pattern, scenario.params.getNumberOfFloors(), callsPerSecond, duration, scenario.seed));
+            }
+            else {
+                //spread the instructions over the call window
+                Random random = new Random(scenario.seed);
+                for (Instruction ins : instructions) {
+                    sim.scheduleInstruction(callWindow == 0 ? 0 : (long) (random.nextDouble() * callWindow), ins);
+                }
+            }
+            sim.run();
+            sim.stop();
+
+            SimulationStatistics stats = sim.getStatistics();
+            scenario.meanWait = stats.getMeanWait();
+            scenario.maxWait = stats.getMaxWait();
+            scenario.meanJourney = stats.getMeanJourney();
+            scenario.simulatedTime = sim.getTime() / 1e9;
+            for (int i = 1; i <= lc.getnumberOfLifts(); i++) {
+                scenario.distanceTravelled += lc.getLift(i).getState().distanceTravelled();
+            }
+        } catch (RuntimeException ex) {
+            scenario.error = ex.toString();
+        }
+    }
+
+    /**
+     * Print the results table: one row per grid point, averaged over the seeds
+     */
+    public void printResults(PrintStream out) {
+        out.printf("%d scenarios on %d threads in %.2fs\n", scenarios.length, parallelism, wallTime / 1e9);
+        out.printf("%6s %9s %9s %5s | %5s %10s %10s %12s %12s\n", "lifts", "velocity", "doorTime", "algo", "runs", "meanWait", "maxWait", "meanJourney", "distance");
+
+        for (int i = 0; i < scenarios.length; i += seeds) {
+            LiftParams params = scenarios[i].params;
+            double meanWait = 0, maxWait = 0, meanJourney = 0, distance = 0;
+            int runs = 0;
+            String error = null;
+            for (int j = i; j < i + seeds; j++) {
+                if (scenarios[j].error != null) {
+                    error = scenarios[j].error;
+                    continue;
+                }
+                meanWait += scenarios[j].meanWait;
+                maxWait = Math.max(maxWait, scenarios[j].maxWait);
+                meanJourney += scenarios[j].meanJourney;
+                distance += scenarios[j].distanceTravelled;
+                runs++;
+            }
+
+            out.printf("%6d %9.2f %9d %5d | %5d ", params.getNumberOfLifts(), params.getVelocity(), params.getDoorOpenCloseTime(), params.getMatchingAlgorithm(), runs);
+            if (runs == 0) {
+                out.printf("failed: %s\n", error);
+                continue;
+            }
+            out.printf("%10.1f %10.1f %12.1f %12.1f\n", meanWait / runs, maxWait, meanJourney / runs, distance / runs);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+
+        if (args.length < 3 || (args[1].equals(TRAFFIC) && args.length < 6)) {
+            System.out.printf("usage: java ScenarioSweep paramsX.txt instructionsY.txt sweepZ.txt [threads]\n");
+            System.out.printf("       java ScenarioSweep paramsX.txt %s PATTERN callsPerSecond durationSeconds sweepZ.txt [threads]\n", TRAFFIC);
+            return;
+        }
+
+        LiftParams params = LiftParams.fromFile(args[0]);
+        ScenarioSweep sweep;
+        int next;
+        if (args[1].equals(TRAFFIC)) {
+            sweep = new ScenarioSweep(params, TrafficGenerator.Pattern.valueOf(args[2]), Double.parseDouble(args[3]), (long) (Double.parseDouble(args[4]) * 1000));
+            next = 5;
+        }
+        else {
+            sweep = new ScenarioSweep(params, ExecuteLift2.readInstructions(args[1]));
+            next = 2;
+        }
+        sweep.readSweepFile(args[next]);
+        int threads = args.length > next + 1 ? Integer.parseInt(args[next + 1]) : Runtime.getRuntime().availableProcessors();
+
+        sweep.run(threads);
+        sweep.printResults(System.out);
+    }
+}
@@ -0,0 +1,345 @@
+package com.gordon.reuven;
+/**
+ * SelectionStore class
+ * The buttons selected on the floors and in the lifts, as bitsets indexed by floor number: one for the UP buttons, one for the DOWN buttons
+ * and one per lift for its floor buttons. The optimisers read it directly, and the queries for the next selection above or below a floor
+ * (nextSetBit/previousSetBit) skip 64 unselected floors at a time, so finding the calls in a tall building only touches a few words.
+ * The bits are kept in atomic words (see Bits), so buttons can be pressed on any thread at the same time without losing a selection,
+ * and the optimisers can read the store whilst it changes. Each change to a button is seen by the readers as a whole.
+ */
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class SelectionStore {
+
+    //Instance variables
+    public static final int NO_FLOOR = -1;
+
+    private int numberOfFloors;
+    private int numberOfLifts;
+    private Bits fromFloorUp;         //floors whose UP button is selected
+    private Bits fromFloorDown;       //floors whose DOWN button is selected
+    private Bits[] fromLift;          //for each lift, the floors selected in it (element 0 unused)
+
+    /**
+     * Constructor: nothing selected
+     */
+    public SelectionStore(int numberOfFloors, int numberOfLifts) {
+
+        //Input parameter validation
+        if (numberOfFloors <= 0) {
+            System.out.printf("numberOfFloors = %d\n", numberOfFloors);
+            throw new IllegalArgumentException("numberOfFloors invalid");
+        }
+        if (numberOfLifts <= 0) {
+            System.out.printf("numberOfLifts = %d\n", numberOfLifts);
+            throw new IllegalArgumentException("numberOfLifts invalid");
+        }
+
+        this.numberOfFloors = numberOfFloors;
+        this.numberOfLifts = numberOfLifts;
+        fromFloorUp = new Bits(numberOfFloors);
+        fromFloorDown = new Bits(numberOfFloors);
+        fromLift = new Bits[numberOfLifts + 1];
+        for (int i = 1; i <= numberOfLifts; i++) {
+            fromLift[i] = new Bits(numberOfFloors);
+        }
+    }
+
+    /**
+     * Build a store from the old selections arrays
+     * @param selectionsFromLift numberOfFloors + 1 rows x numberOfLifts + 1 cols
+     * @param selectionsFromFloor numberOfFloors + 1 rows x 2 cols (UP/DOWN)
+     */
+    public static SelectionStore fromArrays(int numberOfFloors, int numberOfLifts, boolean[][] selectionsFromLift, boolean[][] selectionsFromFloor) {
+        SelectionStore store = new SelectionStore(numberOfFloors, numberOfLifts);
+        for (int j = 1; j <= numberOfFloors; j++) {
+            for (int i = 1; i <= numberOfLifts; i++) {
+                store.setFromLift(j, i, selectionsFromLift[j][i]);
+            }
+            store.setFromFloor(j, Direction.UP, selectionsFromFloor[j][0]);
+            store.setFromFloor(j, Direction.DOWN, selectionsFromFloor[j][1]);
+        }
+        return store;
+    }
+
+    /**
+     * @return a copy of the store, eg for planning on another thread whilst this one keeps changing
+     */
+    public SelectionStore copy() {
+        SelectionStore store = new SelectionStore(numberOfFloors, numberOfLifts);
+        store.fromFloorUp.or(fromFloorUp);
+        store.fromFloorDown.or(fromFloorDown);
+        for (int i = 1; i <= numberOfLifts; i++) {
+            store.fromLift[i].or(fromLift[i]);
+        }
+        return store;
+    }
+
+    /**
+     * (Un)select the UP or DOWN button on a floor
+     */
+    public void setFromFloor(int floor, Direction direction, boolean selection) {
+        floorCalls(direction).set(floor, selection);
+    }
+
+    /**
+     * (Un)select a floor in a lift
+     */
+    public void setFromLift(int floor, int lift, boolean selection) {
+        fromLift[lift].set(floor, selection);
+    }
+
+    /**
+     * @return true if the UP or DOWN button on a floor is selected
+     */
+    public boolean isFromFloor(int floor, Direction direction) {
+        return floorCalls(direction).get(floor);
+    }
+
+    /**
+     * @return true if a floor is selected in a lift
+     */
+    public boolean isFromLift(int floor, int lift) {
+        return fromLift[lift].get(floor);
+    }
+
+    /**
+     * @return the first floor at or above a given floor whose button in a direction is selected, or NO_FLOOR
+     */
+    public int nextFloorCall(Direction direction, int floor) {
+        return floorCalls(direction).nextSetBit(Math.max(floor, 1));
+    }
+
+    /**
+     * @return the first floor at or below a given floor whose button in a direction is selected, or NO_FLOOR
+     */
+    public int previousFloorCall(Direction direction, int floor) {
+        return floorCalls(direction).previousSetBit(Math.min(floor, numberOfFloors));
+    }
+
+    /**
+     * @return the first floor at or above a given floor with either of its buttons selected, or NO_FLOOR
+     */
+    public int nextFloorCall(int floor) {
+        return earliest(nextFloorCall(Direction.UP, floor), nextFloorCall(Direction.DOWN, floor));
+    }
+
+    /**
+     * @return the first floor at or below a given floor with either of its buttons selected, or NO_FLOOR
+     */
+    public int previousFloorCall(int floor) {
+        return Math.max(previousFloorCall(Direction.UP, floor), previousFloorCall(Direction.DOWN, floor));
+    }
+
+    /**
+     * @return the first floor at or above a given floor selected in a lift, or NO_FLOOR
+     */
+    public int nextLiftSelection(int lift, int floor) {
+        return fromLift[lift].nextSetBit(Math.max(floor, 1));
+    }
+
+    /**
+     * @return the first floor at or below a given floor selected in a lift, or NO_FLOOR
+     */
+    public int previousLiftSelection(int lift, int floor) {
+        return fromLift[lift].previousSetBit(Math.min(floor, numberOfFloors));
+    }
+
+    /**
+     * @return the nearest call strictly above a floor for a lift: a floor selected in the lift or a floor with either button selected. NO_FLOOR if there isn't one
+     */
+    public int nearestCallAbove(int lift, int floor) {
+        return earliest(nextLiftSelection(lift, floor + 1), nextFloorCall(floor + 1));
+    }
+
+    /**
+     * @return the nearest call strictly below a floor for a lift: a floor selected in the lift or a floor with either button selected. NO_FLOOR if there isn't one
+     */
+    public int nearestCallBelow(int lift, int floor) {
+        return Math.max(previousLiftSelection(lift, floor - 1), previousFloorCall(floor - 1));
+    }
+
+    /**
+     * @return the number of floors selected in a lift
+     */
+    public int countFromLift(int lift) {
+        return fromLift[lift].cardinality();
+    }
+
+    /**
+     * @return the number of floor buttons selected in a direction
+     */
+    public int countFromFloor(Direction direction) {
+        return floorCalls(direction).cardinality();
+    }
+
+    /**
+     * @return true if nothing is selected anywhere
+     */
+    public boolean isEmpty() {
+        if (!fromFloorUp.isEmpty() || !fromFloorDown.isEmpty()) return false;
+        for (int i = 1; i <= numberOfLifts; i++) {
+            if (!fromLift[i].isEmpty()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return a copy of the floor selections as the old array: numberOfFloors + 1 rows x 2 cols (UP/DOWN)
+     */
+    public boolean[][] toFloorArray() {
+        boolean[][] selectionsFromFloor = new boolean[numberOfFloors + 1][2];
+        for (int j = fromFloorUp.nextSetBit(0); j >= 0; j = fromFloorUp.nextSetBit(j + 1)) {
+            selectionsFromFloor[j][0] = true;
+        }
+        for (int j = fromFloorDown.nextSetBit(0); j >= 0; j = fromFloorDown.nextSetBit(j + 1)) {
+            selectionsFromFloor[j][1] = true;
+        }
+        return selectionsFromFloor;
+    }
+
+    /**
+     * @return a copy of the lift selections as the old array: numberOfFloors + 1 rows x numberOfLifts + 1 cols
+     */
+    public boolean[][] toLiftArray() {
+        boolean[][] selectionsFromLift = new boolean[numberOfFloors + 1][numberOfLifts + 1];
+        for (int i = 1; i <= numberOfLifts; i++) {
+            for (int j = fromLift[i].nextSetBit(0); j >= 0; j = fromLift[i].nextSetBit(j + 1)) {
+                selectionsFromLift[j][i] = true;
+            }
+        }
+        return selectionsFromLift;
+    }
+
+    /**
+     * Getters
+     */
+    public int getnumberOfFloors() {
+        return numberOfFloors;
+    }
+
+    public int getnumberOfLifts() {
+        return numberOfLifts;
+    }
+
+    /**
+     * helper method: the bitset for the buttons in a direction
+     */
+    private Bits floorCalls(Direction direction) {
+        if (direction == Direction.UP) return fromFloorUp;
+        if (direction == Direction.DOWN) return fromFloorDown;
+        System.out.printf("Direction: %s is invalid\n", direction);
+        throw new IllegalArgumentException("direction invalid");
+    }
+
+    /**
+     * A fixed size set of bits (floors 0 to numberOfFloors) in atomic words, with the BitSet queries the store uses.
+     * A bit is changed by compare and set on its word, so changing bits in the same word on different threads can't lose either change
+     */
+    private static class Bits {
+
+        private final AtomicLongArray words;
+
+        Bits(int maxBit) {
+            words = new AtomicLongArray((maxBit >> 6) + 1);
+        }
+
+        /**
+         * @return true if the bit changed
+         */
+        boolean set(int bit, boolean value) {
+            int w = bit >> 6;
+            long mask = 1L << bit;
+            long old;
+            long updated;
+            do {
+                old = words.get(w);
+                updated = value ? old | mask : old & ~mask;
+                if (updated == old) {
+                    return false;
+                }
+            } while (!words.compareAndSet(w, old, updated));
+            return true;
+        }
+
+        boolean get(int bit) {
+            return (words.get(bit >> 6) & (1L << bit)) != 0;
+        }
+
+        /**
+         * @return the first set bit at or after from, or -1
+         */
+        int nextSetBit(int from) {
+            int w = from >> 6;
+            if (w >= words.length()) {
+                return -1;
+            }
+            long word = words.get(w) & (-1L << from);
+            while (true) {
+                if (word != 0) {
+                    return (w << 6) + Long.numberOfTrailingZeros(word);
+                }
+                if (++w == words.length()) {
+                    return -1;
+                }
+                word = words.get(w);
+            }
+        }
+
+        /**
+         * @return the last set bit at or before from, or -1
+         */
+        int previousSetBit(int from) {
+            if (from < 0) {
+                return -1;
+            }
+            int w = Math.min(from >> 6, words.length() - 1);
+            long word = words.get(w);
+            if (w == from >> 6) {
+                word &= -1L >>> (63 - (from & 63));
+            }
+            while (true) {
+                if (word != 0) {
+                    return (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+                }
+                if (w-- == 0) {
+                    return -1;
+                }
+                word = words.get(w);
+            }
+        }
+
+        int cardinality() {
+            int count = 0;
+            for (int w = 0; w < words.length(); w++) {
+                count += Long.bitCount(words.get(w));
+            }
+            return count;
+        }
+
+        boolean isEmpty() {
+            for (int w = 0; w < words.length(); w++) {
+                if (words.get(w) != 0) return false;
+            }
+            return true;
+        }
+
+        /**
+         * Set the bits that are set in another (the same size)
+         */
+        void or(Bits other) {
+            for (int w = 0; w < words.length(); w++) {
+                words.set(w, words.get(w) | other.words.get(w));
+            }
+        }
+    }
+
+    /**
+     * helper method: the lower of two floors, either of which may be NO_FLOOR
+     */
+    static int earliest(int floor1, int floor2) {
+        if (floor1 == NO_FLOOR) return floor2;
+        if (floor2 == NO_FLOOR) return floor1;
+        return Math.min(floor1, floor2);
+    }
+}
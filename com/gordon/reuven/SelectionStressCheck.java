@@ -0,0 +1,159 @@
+package com.gordon.reuven;
+/**
+ * Check that button presses made on many threads at once are neither lost nor planned wrongly
+ * Each thread presses and unpresses buttons at random, as fast as it can, with the lifts standing still. Once they have all finished (and
+ * the background planner, if there is one, has caught up) the check fails if
+ * - a thread that had its own lift and floors doesn't find its last press on each of their buttons in the selections (a lost update)
+ * - the instruction log doesn't hold every press
+ * - a lift's plan differs from a full re-match of the selections
+ * It runs with and without the background planner, with each thread pressing its own buttons and with them all pressing the same ones,
+ * for an incremental matching algorithm (1) and one that re-matches everything (3). It exits with 1 if any run failed.
+ *
+ * java SelectionStressCheck [threads] [pressesPerThread]
+ */
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+public class SelectionStressCheck {
+
+    //Instance variables
+    private static final int NUMBER_OF_FLOORS = 40;
+    private static final int[] ALGOS = {1, 3};
+    private static final int[] PLANNING_WINDOWS = {-1, 0};
+    private static final long SETTLE_TIME = 10;     //how often to check whether the planner has caught up [ms]
+
+    public static void main(String[] args) throws InterruptedException {
+
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int presses = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+
+        boolean passed = true;
+        for (int algo : ALGOS) {
+            for (int planningWindow : PLANNING_WINDOWS) {
+                passed &= run(algo, planningWindow, false, threads, presses);
+                passed &= run(algo, planningWindow, true, threads, presses);
+            }
+        }
+        System.out.println(passed ? "PASSED" : "FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Run the check once
+     * @param shared true if every thread presses any button, false if each has its own lift and floors
+     * @return true if it passed
+     */
+    private static boolean run(int algo, int planningWindow, boolean shared, int threads, int presses) throws InterruptedException {
+
+        //a lift for each thread, and the lifts never start: they stay at the ground floor
+        LiftController lc = new LiftController(NUMBER_OF_FLOORS, threads, 3, 2, 1.5, 1, 0.25, 500, algo, new SystemClock(), null);
+        lc.setHeadless(true);
+        lc.setVerbose(false);
+        InstructionLog log = new InstructionLog(threads * presses);
+        lc.setInstructionLog(log);
+        lc.setPlanningWindow(planningWindow);
+        lc.startPlanner();
+
+        //what each thread last did to its own buttons
+        boolean[][] fromLift = new boolean[threads + 1][NUMBER_OF_FLOORS + 1];
+        boolean[][] fromFloorUp = new boolean[threads][NUMBER_OF_FLOORS + 1];
+        boolean[][] fromFloorDown = new boolean[threads][NUMBER_OF_FLOORS + 1];
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> pressers = new ArrayList<Thread>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread presser = new Thread(() -> {
+                Random random = new Random(thread);
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                for (int n = 0; n < presses; n++) {
+                    boolean selection = random.nextBoolean();
+                    if (random.nextBoolean()) {
+                        int lift = shared ? 1 + random.nextInt(threads) : 1 + thread;
+                        int floor = 1 + random.nextInt(NUMBER_OF_FLOORS);
+                        lc.selectFromLift(lift, floor, selection);
+                        if (!shared) fromLift[lift][floor] = selection;
+                    }
+                    else {
+                        //the floors between the top and the bottom, taking turns between the threads if they have their own
+                        int floor = 2 + random.nextInt(NUMBER_OF_FLOORS - 2);
+                        if (!shared) {
+                            floor -= (floor - 2) % threads - thread;
+                            if (floor >= NUMBER_OF_FLOORS) floor -= threads;
+                        }
+                        Direction direction = random.nextBoolean() ? Direction.UP : Direction.DOWN;
+                        lc.selectFromFloor(floor, direction, selection);
+                        if (!shared) {
+                            if (direction == Direction.UP) fromFloorUp[thread][floor] = selection;
+                            else fromFloorDown[thread][floor] = selection;
+                        }
+                    }
+                }
+            });
+            presser.start();
+            pressers.add(presser);
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread presser : pressers) {
+            presser.join();
+        }
+        long pressTime = System.nanoTime() - begin;
+
+        //let the planner catch up
+        while (!lc.isPlanned()) {
+            Thread.sleep(SETTLE_TIME);
+        }
+        LiftPlanner planner = lc.getPlanner();
+        if (planner != null) {
+            planner.stop();
+        }
+
+        //lost updates
+        SelectionStore selections = lc.getSelections();
+        int lost = 0;
+        if (!shared) {
+            for (int t = 0; t < threads; t++) {
+                for (int floor = 1; floor <= NUMBER_OF_FLOORS; floor++) {
+                    if (selections.isFromLift(floor, t + 1) != fromLift[t + 1][floor]) lost++;
+                    if (floor > 1 && floor < NUMBER_OF_FLOORS && (floor - 2) % threads == t) {
+                        if (selections.isFromFloor(floor, Direction.UP) != fromFloorUp[t][floor]) lost++;
+                        if (selections.isFromFloor(floor, Direction.DOWN) != fromFloorDown[t][floor]) lost++;
+                    }
+                }
+            }
+        }
+
+        //every press logged
+        long logged = 0;
+        for (Instruction ins : log) {
+            logged++;
+        }
+        long pressed = (long) threads * presses;
+
+        //the plans against a full re-match
+        OptimiserAlgo o = OptimiserAlgo.create(threads, NUMBER_OF_FLOORS, selections.copy(), lc.getFleetState(), algo);
+        o.setTravelTimeModel(lc.getTravelTimeModel());
+        o.setConsole(null);
+        o.optimise();
+        Queue<Node>[] full = o.getOptimisedNodesAll();
+        int differing = 0;
+        for (int i = 1; i <= threads; i++) {
+            if (!new ArrayList<Node>(full[i]).equals(lc.getPlan(i).getStops())) differing++;
+        }
+
+        boolean passed = lost == 0 && logged == pressed && differing == 0;
+        System.out.printf("algo %d, %s, %s: %d threads x %d presses in %.1fms. lost updates %d, logged %d, plans differing %d %s\n", algo,
+                planningWindow < 0 ? "no planner" : "planner", shared ? "shared buttons" : "own buttons", threads, presses, pressTime / 1e6,
+                lost, logged, differing, passed ? "" : "FAILED");
+        return passed;
+    }
+}
@@ -0,0 +1,12 @@
+package com.gordon.reuven;
+/**
+ * Interface to define the clock that the lifts use to measure time
+ * The lifts and doors ask the clock for the time rather than calling System.nanoTime() directly, so that the same
+ * Lift Controller can be run against the wall clock (GUI) or against a virtual clock (discrete event simulation)
+ */
+public interface SimulationClock {
+    
+    //return the current time in ns
+    public long nanoTime();
+    
+}
@@ -0,0 +1,181 @@
+package com.gordon.reuven;
+/**
+ * SimulationStatistics class
+ * Collects the KPIs of a simulation run: how long floor calls wait for a lift, how long lift calls take to reach
+ * their floor, and how far each lift travels
+ */
+import java.io.PrintStream;
+import java.util.Arrays;
+
+public class SimulationStatistics {
+
+    //Instance variables
+    private static final double NANOMULTIPLIER = 1e9;
+    private static final long NOT_PENDING = -1;
+
+    private int numberOfFloors;
+    private int numberOfLifts;
+    private long[][] floorCallTimes;   //numberOfFloors rows x 2 cols (UP/DOWN): when the floor call was made (NOT_PENDING if no call is waiting)
+    private long[][] liftCallTimes;    //numberOfFloors rows x numberOfLifts cols: when the lift call was made (NOT_PENDING if no call is waiting)
+    private long[] stops;              //number of stops made by each lift
+    private long floorCallsServed;
+    private long totalWait;
+    private long maxWait;
+    private long liftCallsServed;
+    private long totalJourney;
+    private long maxJourney;
+
+    /**
+     * Constructor
+     */
+    public SimulationStatistics(int numberOfFloors, int numberOfLifts) {
+        this.numberOfFloors = numberOfFloors;
+        this.numberOfLifts = numberOfLifts;
+        floorCallTimes = new long[numberOfFloors + 1][2];
+        liftCallTimes = new long[numberOfFloors + 1][numberOfLifts + 1];
+        for (int j = 1; j <= numberOfFloors; j++) {
+            Arrays.fill(floorCallTimes[j], NOT_PENDING);
+            Arrays.fill(liftCallTimes[j], NOT_PENDING);
+        }
+        stops = new long[numberOfLifts + 1];
+    }
+
+    /**
+     * Record an instruction being issued
+     * A call that is already waiting keeps its original time. Unselecting a call stops it being timed.
+     * @param ins the instruction
+     * @param time when the instruction was issued in ns
+     */
+    public void instructionIssued(Instruction ins, long time) {
+        instructionIssued(ins.pack(), time);
+    }
+
+    /**
+     * As above, for a packed instruction (see Instruction.pack())
+     */
+    public void instructionIssued(long packed, long time) {
+        int floor = Instruction.packedFloorNumber(packed);
+        if (floor <= 0 || floor > numberOfFloors) {
+            return;
+        }
+
+        long[] times;
+        int index;
+        int liftNumber = Instruction.packedLiftNumber(packed);
+        if (Instruction.packedMethodOrigin(packed) == Instruction.MethodOrigin.FROM_FLOOR) {
+            times = floorCallTimes[floor];
+            index = Instruction.packedDirection(packed) == Direction.UP ? 0 : 1;
+        }
+        else {
+            if (liftNumber <= 0 || liftNumber > numberOfLifts) {
+                return;
+            }
+            times = liftCallTimes[floor];
+            index = liftNumber;
+        }
+
+        if (!Instruction.packedSelection(packed)) {
+            times[index] = NOT_PENDING;
+        }
+        else if (times[index] == NOT_PENDING) {
+            times[index] = time;
+        }
+    }
+
+    /**
+     * Record a lift arriving at a node in its queue
+     * @param liftNumber the lift
+     * @param nodeVisited the node the lift has arrived at
+     * @param time when the lift arrived in ns
+     */
+    public void nodeVisited(int liftNumber, Node nodeVisited, long time) {
+        int floor = nodeVisited.getFloor();
+        stops[liftNumber]++;
+
+        if (nodeVisited.getFromLift()) {
+            long journey = served(liftCallTimes[floor], liftNumber, time);
+            if (journey >= 0) {
+                liftCallsServed++;
+                totalJourney += journey;
+                maxJourney = Math.max(maxJourney, journey);
+            }
+        }
+        else {
+            long wait = served(floorCallTimes[floor], nodeVisited.getfromFloorUP() ? 0 : 1, time);
+            if (wait >= 0) {
+                floorCallsServed++;
+                totalWait += wait;
+                maxWait = Math.max(maxWait, wait);
+            }
+        }
+    }
+
+    /**
+     * helper method: clear a waiting call and return how long it waited (-1 if it wasn't waiting)
+     */
+    private static long served(long[] times, int index, long time) {
+        if (times[index] == NOT_PENDING) {
+            return -1;
+        }
+        long waited = time - times[index];
+        times[index] = NOT_PENDING;
+        return waited;
+    }
+
+    /**
+     * Print a KPI summary of the run
+     * @param out where to print the summary
+     * @param lc the Lift Controller that was simulated
+     * @param simulatedTime the simulation time at the end of the run in ns
+     * @param wallTime the real time the run took in ns
+     * @param events the number of events handled
+     */
+    public void printSummary(PrintStream out, LiftController lc, long simulatedTime, long wallTime, long events) {
+        double totalDistance = 0;
+
+        out.printf("Simulated time: %.1fs (wall clock %.3fs, %d events)\n", simulatedTime / NANOMULTIPLIER, wallTime / NANOMULTIPLIER, events);
+        out.printf("Floor calls served: %d, mean wait %.1fs, max wait %.1fs\n", floorCallsServed, getMeanWait(), maxWait / NANOMULTIPLIER);
+        out.printf("Lift calls served: %d, mean journey %.1fs, max journey %.1fs\n", liftCallsServed, getMeanJourney(), maxJourney / NANOMULTIPLIER);
+        for (int i = 1; i <= numberOfLifts; i++) {
+            Lift l = lc.getLift(i);
+            totalDistance += l.getState().distanceTravelled();
+            out.printf("Lift %d: distance travelled %.2fm, stops %d, bell pings %d\n", i, l.getState().distanceTravelled(), stops[i], l.getBellCount());
+        }
+        out.printf("Total distance travelled: %.2fm\n", totalDistance);
+    }
+
+    /**
+     * Getters
+     */
+    public long getFloorCallsServed() {
+        return floorCallsServed;
+    }
+
+    public long getLiftCallsServed() {
+        return liftCallsServed;
+    }
+
+    //mean time from a floor call to a lift arriving in s
+    public double getMeanWait() {
+        return floorCallsServed == 0 ? 0 : totalWait / NANOMULTIPLIER / floorCallsServed;
+    }
+
+    //longest time from a floor call to a lift arriving in s
+    public double getMaxWait() {
+        return maxWait / NANOMULTIPLIER;
+    }
+
+    //mean time from a lift call to the lift arriving at that floor in s
+    public double getMeanJourney() {
+        return liftCallsServed == 0 ? 0 : totalJourney / NANOMULTIPLIER / liftCallsServed;
+    }
+
+    //longest time from a lift call to the lift arriving at that floor in s
+    public double getMaxJourney() {
+        return maxJourney / NANOMULTIPLIER;
+    }
+
+    public long getStops(int liftNumber) {
+        return stops[liftNumber];
+    }
+}
@@ -0,0 +1,12 @@
+package com.gordon.reuven;
+/**
+ * System clock class
+ * The real wall clock
+ */
+public class SystemClock implements SimulationClock {
+    
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+}
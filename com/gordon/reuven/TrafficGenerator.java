@@ -0,0 +1,280 @@
+package com.gordon.reuven;
+/**
+ * Traffic generator
+ * Produces a stream of timestamped floor call instructions for one of the standard traffic patterns:
+ * - UP_PEAK: the morning rush. Most people arrive at the lobby (floor 1) and go up
+ * - LUNCH: two-way traffic. People go down to the lobby and come back up
+ * - DOWN_PEAK: the evening rush. Most people go down to the lobby
+ * - INTERFLOOR: people go between random floors
+ * Each floor has its own arrival rate (calls per second). The arrivals on each floor are a Poisson process, and each call comes from a
+ * passenger going to a destination chosen according to the pattern.
+ * The passengers wait at their floor until a lift stops for their call, then get in and select their destination (see board(), which
+ * DiscreteEventSimulator.scheduleTraffic() calls as the lifts stop), so the runs have lift calls and journeys as well as floor calls.
+ * The instructions are generated lazily as the stream is iterated, so millions of calls take no more memory than the passengers waiting
+ * at the time, and the same seed always gives the same stream.
+ */
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+public class TrafficGenerator implements Iterator<Instruction>, Iterable<Instruction> {
+
+    //Instance variables
+    private static final int LOBBY = 1;
+    private static final double LOBBY_SHARE_UP_PEAK = 0.85;    //share of the calls made at the lobby by default
+    private static final double LOBBY_SHARE_LUNCH = 0.4;
+    private static final double LOBBY_SHARE_DOWN_PEAK = 0.05;
+    private static final double LUNCH_TO_LOBBY = 0.5;          //chance that someone on an upper floor at lunch is going to the lobby
+
+    /**
+     * The standard traffic patterns
+     */
+    public enum Pattern { UP_PEAK, LUNCH, DOWN_PEAK, INTERFLOOR }
+
+    private Pattern pattern;
+    private int numberOfFloors;
+    private double[] cumulativeRates;  //cumulativeRates[f] is the total arrival rate of floors 1..f [calls/s]
+    private double totalRate;          //[calls/s]
+    private long duration;             //no calls are generated after this time [ms]
+    private Random random;
+    private double nextTime;           //time of the next call [ms]
+    private ArrayDeque<Passenger>[] waitingUp;  //the passengers waiting at each floor to go up, by floor, in the order they called
+    private ArrayDeque<Passenger>[] waitingDown;
+    private long passengersWaiting;
+
+    /**
+     * Someone who has called a lift (or is about to: the stream is read ahead of the simulation) and is waiting to get in
+     */
+    private static class Passenger {
+
+        private final long time;            //when they call the lift [ms]
+        private final int destination;
+
+        private Passenger(long time, int destination) {
+            this.time = time;
+            this.destination = destination;
+        }
+    }
+
+    /**
+     * Constructor: the default arrival rates for the pattern
+     * @param pattern the traffic pattern
+     * @param numberOfFloors number of floors in the building
+     * @param totalRate the total number of calls per second in the building
+     * @param duration how long to generate calls for [ms]
+     * @param seed the random seed
+     */
+    public TrafficGenerator(Pattern pattern, int numberOfFloors, double totalRate, long duration, long seed) {
+        this(pattern, defaultArrivalRates(pattern, numberOfFloors, totalRate), duration, seed);
+    }
+
+    /**
+     * Constructor
+     * @param pattern the traffic pattern
+     * @param arrivalRates the arrival rate of each floor [calls/s]. Element 0 is ignored so that floor 1 is element 1
+     * @param duration how long to generate calls for [ms]
+     * @param seed the random seed
+     */
+    public TrafficGenerator(Pattern pattern, double[] arrivalRates, long duration, long seed) {
+
+        numberOfFloors = arrivalRates.length - 1;
+
+        //Input checking
+        if (numberOfFloors <= 1) {
+            System.out.printf("numberOfFloors %d invalid\n", numberOfFloors);
+            throw new IllegalArgumentException("numberOfFloors <= 1");
+        }
+        if (duration < 0) {
+            System.out.printf("duration %d invalid\n", duration);
+            throw new IllegalArgumentException("duration < 0");
+        }
+
+        this.pattern = pattern;
+        this.duration = duration;
+        random = new Random(seed);
+
+        //The calls from all the floors together are a single Poisson process with the total rate.
+        //Each call comes from a floor with probability proportional to the floor's rate
+        cumulativeRates = new double[numberOfFloors + 1];
+        for (int j = 1; j <= numberOfFloors; j++) {
+            if (arrivalRates[j] < 0) {
+                System.out.printf("arrival rate %g for floor %d invalid\n", arrivalRates[j], j);
+                throw new IllegalArgumentException("arrival rate < 0");
+            }
+            cumulativeRates[j] = cumulativeRates[j - 1] + arrivalRates[j];
+        }
+        totalRate = cumulativeRates[numberOfFloors];
+
+        nextTime = totalRate > 0 ? nextInterval() : Double.POSITIVE_INFINITY;
+
+        waitingUp = newQueues(numberOfFloors + 1);
+        waitingDown = newQueues(numberOfFloors + 1);
+        for (int j = 1; j <= numberOfFloors; j++) {
+            waitingUp[j] = new ArrayDeque<Passenger>();
+            waitingDown[j] = new ArrayDeque<Passenger>();
+        }
+    }
+
+    /**
+     * The default arrival rates of each floor for a pattern: a share of the calls at the lobby and the rest split evenly between the other floors
+     * @return the arrival rate of each floor [calls/s], element 0 unused
+     */
+    public static double[] defaultArrivalRates(Pattern pattern, int numberOfFloors, double totalRate) {
+
+        double lobbyShare;
+        switch (pattern) {
+            case UP_PEAK:   lobbyShare = LOBBY_SHARE_UP_PEAK; break;
+            case LUNCH:     lobbyShare = LOBBY_SHARE_LUNCH; break;
+            case DOWN_PEAK: lobbyShare = LOBBY_SHARE_DOWN_PEAK; break;
+            default:        lobbyShare = 1.0 / numberOfFloors; break;
+        }
+
+        double[] arrivalRates = new double[numberOfFloors + 1];
+        arrivalRates[LOBBY] = totalRate * lobbyShare;
+        for (int j = LOBBY + 1; j <= numberOfFloors; j++) {
+            arrivalRates[j] = totalRate * (1 - lobbyShare) / (numberOfFloors - 1);
+        }
+        return arrivalRates;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return nextTime <= duration;
+    }
+
+    @Override
+    public Instruction next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        long time = (long) nextTime;
+        nextTime += nextInterval();
+
+        int origin = chooseOrigin();
+        int destination = chooseDestination(origin);
+        Direction direction = destination > origin ? Direction.UP : Direction.DOWN;
+        waiting(origin, direction).add(new Passenger(time, destination));
+        passengersWaiting++;
+        return new Instruction(Instruction.MethodOrigin.FROM_FLOOR, Instruction.Origin.FROM_FLOOR, origin, -1, direction, true, time);
+    }
+
+    /**
+     * The passengers waiting at a floor to go one way get in a lift that has stopped for their call, and each selects their destination.
+     * Only the ones who have called by then get in
+     * @param liftNumber the lift
+     * @param floor the floor it has stopped at
+     * @param direction the floor call it has stopped for
+     * @param time when they get in [ms]
+     * @param calls where to put the lift call instructions of the passengers
+     */
+    public void board(int liftNumber, int floor, Direction direction, long time, List<Instruction> calls) {
+        if (floor < 1 || floor > numberOfFloors || direction == Direction.NONE) {
+            System.out.printf("floor call %d %s invalid\n", floor, direction);
+            throw new IllegalArgumentException("floor call invalid");
+        }
+        ArrayDeque<Passenger> passengers = waiting(floor, direction);
+        while (!passengers.isEmpty() && passengers.peek().time <= time) {
+            Passenger passenger = passengers.poll();
+            passengersWaiting--;
+            calls.add(new Instruction(Instruction.MethodOrigin.FROM_LIFT, Instruction.Origin.FROM_LIFT, passenger.destination, liftNumber, Direction.NONE, true, time));
+        }
+    }
+
+    /**
+     * helper method: an array of queues of passengers (Java can't create a generic array directly)
+     */
+    @SuppressWarnings("unchecked")
+    private static ArrayDeque<Passenger>[] newQueues(int size) {
+        return (ArrayDeque<Passenger>[]) new ArrayDeque<?>[size];
+    }
+
+    /**
+     * helper method: the passengers waiting at a floor to go one way
+     */
+    private ArrayDeque<Passenger> waiting(int floor, Direction direction) {
+        return direction == Direction.UP ? waitingUp[floor] : waitingDown[floor];
+    }
+
+    /**
+     * The generator is its own (single use) iterator, so that it can be used in a for-each loop
+     */
+    @Override
+    public Iterator<Instruction> iterator() {
+        return this;
+    }
+
+    /**
+     * helper method: time to the next call, exponentially distributed [ms]
+     */
+    private double nextInterval() {
+        return -Math.log(1 - random.nextDouble()) / totalRate * 1000;
+    }
+
+    /**
+     * helper method: choose the floor the next call comes from, in proportion to the floor arrival rates
+     */
+    private int chooseOrigin() {
+        double r = random.nextDouble() * totalRate;
+        int low = 1;
+        int high = numberOfFloors;
+        //binary search for the first floor whose cumulative rate is above r
+        while (low < high) {
+            int middle = (low + high) / 2;
+            if (cumulativeRates[middle] > r) high = middle;
+            else low = middle + 1;
+        }
+        return low;
+    }
+
+    /**
+     * helper method: choose where someone calling from the origin floor is going, according to the pattern
+     */
+    private int chooseDestination(int origin) {
+
+        //from the lobby, everyone goes up
+        if (origin == LOBBY) {
+            return otherFloor(origin, LOBBY + 1);
+        }
+
+        switch (pattern) {
+            case DOWN_PEAK: return LOBBY;
+            case LUNCH:     return random.nextDouble() < LUNCH_TO_LOBBY ? LOBBY : otherFloor(origin, LOBBY);
+            case UP_PEAK:   return otherFloor(origin, LOBBY + 1);
+            default:        return otherFloor(origin, LOBBY);
+        }
+    }
+
+    /**
+     * helper method: a random floor from lowest to the top floor, that isn't the origin
+     */
+    private int otherFloor(int origin, int lowest) {
+        //there is only one floor to choose from and it's the origin (eg the top floor during an up peak). go to the lobby
+        if (lowest == numberOfFloors && origin == lowest) {
+            return LOBBY;
+        }
+        int floor;
+        do {
+            floor = lowest + random.nextInt(numberOfFloors - lowest + 1);
+        } while (floor == origin);
+        return floor;
+    }
+
+    /**
+     * Getters
+     */
+    public Pattern getPattern() {
+        return pattern;
+    }
+
+    public double getTotalRate() {
+        return totalRate;
+    }
+
+    //passengers who have called a lift (or are about to) but not got in one yet
+    public long getPassengersWaiting() {
+        return passengersWaiting;
+    }
+}
@@ -0,0 +1,71 @@
+package com.gordon.reuven;
+/**
+ * TravelTimeModel class
+ * How long the lifts take to get about the building: the flight time from one floor (or a position between floors) to another, and the time
+ * a lift spends at each stop (the door cycle: opening, dwelling and closing).
+ * It is built once for a building configuration (see LiftController) and shared by the optimisers (see OptimiserAlgo.setTravelTimeModel())
+ * and the EtaEngine, so their cost evaluations are lookups rather than the lifts' physics worked out again.
+ * The lifts move at a constant velocity and start and stop instantly (see Lift), so the flight time is linear in the distance and comes from
+ * the time per floor in O(1): a floor-to-floor table would hold nothing more. The model is immutable: a change to the configuration
+ * (eg the door dwell time) builds a new one
+ */
+public final class TravelTimeModel {
+
+    //Instance variables
+    public static final TravelTimeModel UNIT = new TravelTimeModel(1, 0);    //1s a floor and no time at a stop: for optimisers that aren't given one
+    private static final double MILLIMULTIPLIER = 1e-3;
+
+    private final double floorTime;    //time for a lift to travel one floor [s]
+    private final double stopTime;     //time a lift spends at each stop: doors opening, dwelling and closing [s]
+
+    /**
+     * Constructor: the model for a building configuration (a lift that can't move takes Double.MAX_VALUE a floor)
+     * @param distanceBetweenFloors [m]
+     * @param velocity of the lifts [m/s]
+     * @param doorOpenCloseTime time for the doors to open (or close) [ms]
+     * @param doorDwellTime time the doors stay fully open [ms]
+     */
+    public TravelTimeModel(double distanceBetweenFloors, double velocity, int doorOpenCloseTime, int doorDwellTime) {
+
+        //Input parameter validation
+        if (distanceBetweenFloors <= 0 || velocity < 0) {
+            System.out.printf("distanceBetweenFloors = %g, velocity = %g\n", distanceBetweenFloors, velocity);
+            throw new IllegalArgumentException("distanceBetweenFloors <= 0 OR velocity < 0");
+        }
+        if (doorOpenCloseTime < 0 || doorDwellTime < 0) {
+            System.out.printf("doorOpenCloseTime = %d, doorDwellTime = %d\n", doorOpenCloseTime, doorDwellTime);
+            throw new IllegalArgumentException("doorOpenCloseTime < 0 OR doorDwellTime < 0");
+        }
+
+        this.floorTime = velocity > 0 ? distanceBetweenFloors / velocity : Double.MAX_VALUE;
+        this.stopTime = (2 * doorOpenCloseTime + doorDwellTime) * MILLIMULTIPLIER;
+    }
+
+    /**
+     * Constructor: the model from the times themselves
+     */
+    private TravelTimeModel(double floorTime, double stopTime) {
+        this.floorTime = floorTime;
+        this.stopTime = stopTime;
+    }
+
+    /**
+     * @return the time to travel between two positions without stopping [s]
+     * @param from where the lift is, as a floor number (see FleetState.getPositionInFloors())
+     * @param to where it is going, as a floor number
+     */
+    public double getFlightTime(double from, double to) {
+        return Math.abs(to - from) * floorTime;
+    }
+
+    /**
+     * Getters
+     */
+    public double getFloorTime() {
+        return floorTime;
+    }
+
+    public double getStopTime() {
+        return stopTime;
+    }
+}
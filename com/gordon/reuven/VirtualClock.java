@@ -0,0 +1,34 @@
+package com.gordon.reuven;
+/**
+ * Virtual clock class
+ * Time only moves on when the owner of the clock (eg the DiscreteEventSimulator) advances it.
+ */
+public class VirtualClock implements SimulationClock {
+    
+    //Instance variables
+    private volatile long now;   //current virtual time in ns
+    
+    /**
+     * Constructor: the clock starts at t = 0
+     */
+    public VirtualClock() {
+        now = 0;
+    }
+    
+    /**
+     * Move the clock forward to the given time
+     * @param time in ns. cannot be earlier than the current time
+     */
+    public void advanceTo(long time) {
+        if (time < now) {
+            System.out.printf("cannot move the virtual clock back from %d to %d\n", now, time);
+            throw new IllegalArgumentException("time is before the current time");
+        }
+        now = time;
+    }
+    
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+}